@@ -0,0 +1,423 @@
+package Controller;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.VirtualThreads;
+
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageEvent;
+import Service.MessageService;
+import Util.Config;
+import Util.EventRing;
+import Util.Metrics;
+import io.javalin.http.Context;
+import io.javalin.http.sse.SseClient;
+
+/**
+ * The live message feed behind GET /messages/stream: pushes every post, update and deletion to its subscribers as
+ * Server-Sent Events, so that clients need not poll GET /messages for new posts.
+ *
+ * Events come from the message service's event ring. Each subscriber reads the ring at its own pace, on a small shared
+ * pool of fan-out threads; a publish only marks the subscribers as having work, so posting never waits for slow
+ * subscribers. The fan-out threads never write to a connection: they move each subscriber's events into the
+ * subscriber's own bounded queue, and the subscriber's writer, on one of WRITER_THREADS writer threads while it has
+ * anything to write, sends them. A client that reads slowly therefore holds up only its own writer, and the other
+ * subscribers only once as many slow clients hold every writer thread. In virtual-thread mode each writer runs on a
+ * virtual thread instead, which a slow client holds without holding a platform thread.
+ *
+ * A subscriber whose queue is full, or that falls more than the ring's capacity behind, has lost events, and is either
+ * disconnected (so that it reconnects and resumes) or, with socialmedia.stream.slowConsumers=drop, has its queue
+ * emptied, is skipped ahead to the oldest event the ring still holds, and is told how many events it missed.
+ *
+ * Post events carry the message_id as their event id, so a reconnecting EventSource sends it back as Last-Event-ID (or a
+ * client can pass ?after=message_id) and is first sent, from the database, every message posted after it.
+ */
+class MessageFeed {
+    static final int THREADS = Config.getInt("socialmedia.stream.threads", 4);
+    /**
+     * The most events that may wait to be written to one subscriber; by default as many as the event ring holds, so that
+     * the queue does not cut a subscriber off sooner than the ring would
+     */
+    static final int QUEUE_SIZE = Config.getInt("socialmedia.stream.queueSize", MessageService.EVENT_RING_SIZE);
+    /**
+     * The most subscribers written to at once, outside virtual-thread mode
+     */
+    static final int WRITER_THREADS = Config.getInt("socialmedia.stream.writerThreads", 32);
+    static final long HEARTBEAT_MILLIS = Config.getLong("socialmedia.stream.heartbeatMillis", 15000);
+    /**
+     * The most messages sent from the database to a resuming subscriber; one that has missed more should page through
+     * GET /messages instead
+     */
+    static final int MAX_REPLAY = Config.getInt("socialmedia.stream.maxReplay", 10000);
+    static final boolean DROP_SLOW_CONSUMERS = Config.getString("socialmedia.stream.slowConsumers", "disconnect").equals("drop");
+
+    private final MessageService messageService;
+    private final EventRing<MessageEvent> ring;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService fanOut;
+    /**
+     * null in virtual-thread mode
+     */
+    private final ExecutorService writers;
+    private final ScheduledExecutorService heartbeat;
+    private final Runnable onPublish = this::wakeAll;
+
+    private final LongAdder eventsSent;
+    private final LongAdder slowConsumers;
+
+    MessageFeed(MessageService messageService) {
+        this.messageService = messageService;
+        this.ring = messageService.getEvents();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "message-feed-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if(SocialMediaController.VIRTUAL_THREADS && VirtualThreads.areSupported()) {
+            this.writers = null;
+        } else {
+            AtomicInteger writerNumber = new AtomicInteger();
+            ThreadPoolExecutor writerPool = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "message-feed-writer-" + writerNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            // threads are only kept while there is something to write, so idle subscribers hold none
+            writerPool.allowCoreThreadTimeOut(true);
+            this.writers = writerPool;
+        }
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-feed-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat.scheduleWithFixedDelay(this::heartbeatAll, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        this.ring.addListener(onPublish);
+
+        this.eventsSent = Metrics.counter("stream_events_sent", "message events sent to live feed subscribers");
+        this.slowConsumers = Metrics.counter("stream_slow_consumers",
+                "live feed subscribers that fell so far behind, or whose queue filled up, that they lost events");
+        Metrics.gauge("stream_subscribers", "live feed subscribers connected", subscribers::size);
+    }
+
+    /**
+     * Handles a new connection to GET /messages/stream
+     * @param client the connection
+     */
+    void subscribe(SseClient client) {
+        Subscriber subscriber = new Subscriber(client, ring.reader());
+        client.onClose(() -> {
+            subscriber.closed = true;
+            subscribers.remove(subscriber);
+        });
+        client.keepAlive();
+
+        Integer after = resumeFrom(client.ctx);
+
+        if(after != null && !subscriber.replay(after)) {
+            return;
+        }
+
+        subscribers.add(subscriber);
+        // send whatever was published while the subscriber was replaying
+        subscriber.schedule();
+    }
+
+    /**
+     * @return the message_id to resume after, from ?after or else the Last-Event-ID header, or null to send only new
+     * events
+     */
+    private static Integer resumeFrom(Context context) {
+        String after = context.queryParam("after");
+
+        if(after == null) {
+            after = context.header("Last-Event-ID");
+        }
+
+        try {
+            return (after == null) ? null : Math.max(0, Integer.parseInt(after.trim()));
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void wakeAll() {
+        for(Subscriber subscriber : subscribers) {
+            subscriber.schedule();
+        }
+    }
+
+    private void heartbeatAll() {
+        for(Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue = true;
+            subscriber.schedule();
+        }
+    }
+
+    /**
+     * Stops the fan-out and closes every subscriber's connection
+     */
+    void shutdown() {
+        ring.removeListener(onPublish);
+        heartbeat.shutdownNow();
+        fanOut.shutdownNow();
+
+        if(writers != null) {
+            writers.shutdownNow();
+        }
+
+        for(Subscriber subscriber : subscribers) {
+            subscriber.client.close();
+        }
+    }
+
+    private class Subscriber {
+        private final SseClient client;
+        private final EventRing<MessageEvent>.Reader reader;
+        /**
+         * Events taken from the ring that the writer has not sent yet
+         */
+        private final BlockingQueue<Outgoing> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        /**
+         * Work-in-progress count: drain runs on one fan-out thread at a time, and runs again if it was scheduled while
+         * it ran
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        /**
+         * The same for write, on the writers' threads
+         */
+        private final AtomicInteger writing = new AtomicInteger();
+        private volatile boolean heartbeatDue;
+        private volatile boolean closed;
+        /**
+         * The last message_id sent from the database when resuming; post events up to it are not sent again
+         */
+        private int replayedUpTo;
+
+        Subscriber(SseClient client, EventRing<MessageEvent>.Reader reader) {
+            this.client = client;
+            this.reader = reader;
+        }
+
+        /**
+         * Sends the messages posted after a message_id, from the database, on the connecting thread
+         * @return false if the connection was closed meanwhile
+         */
+        boolean replay(int after) {
+            int sent = 0;
+
+            while(sent < MAX_REPLAY) {
+                MessagePage page = messageService.getMessagesPage(after, Math.min(MessageService.MAX_PAGE_SIZE, MAX_REPLAY - sent));
+
+                if(page == null) {
+                    break;
+                }
+
+                for(Message message : page.getMessages()) {
+                    client.sendEvent(MessageEvent.Type.POSTED.getName(), message, String.valueOf(message.getMessage_id()));
+                    replayedUpTo = message.getMessage_id();
+                    sent++;
+                }
+
+                eventsSent.add(page.getMessages().size());
+
+                if(page.getNext_cursor() == null) {
+                    break;
+                }
+
+                after = page.getNext_cursor();
+            }
+
+            return !closed;
+        }
+
+        void schedule() {
+            if(wip.getAndIncrement() == 0) {
+                try {
+                    fanOut.execute(this::drain);
+                } catch(RejectedExecutionException e) {
+                    // the feed is shutting down
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+
+            do {
+                boolean queuedAny = queueAvailable();
+
+                if(heartbeatDue && !closed) {
+                    heartbeatDue = false;
+
+                    // writing is the only way to find out that a client has gone away
+                    if(!queuedAny && queue.isEmpty() && queue.offer(Outgoing.HEARTBEAT)) {
+                        queuedAny = true;
+                    }
+                }
+
+                if(queuedAny && !closed) {
+                    startWriter();
+                }
+
+                if(closed) {
+                    // never scheduled again, since wip stays above 0
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while(missed != 0);
+        }
+
+        /**
+         * Moves every event the ring holds for this subscriber into its queue, dealing with it falling behind
+         * @return true if anything was queued
+         */
+        private boolean queueAvailable() {
+            boolean queuedAny = false;
+
+            while(!closed) {
+                for(MessageEvent event = reader.poll(); event != null && !closed; event = reader.poll()) {
+                    Outgoing outgoing = toOutgoing(event);
+
+                    if(outgoing == null) {
+                        continue;
+                    }
+
+                    if(!queue.offer(outgoing) && !fellBehind(1)) {
+                        return false;
+                    }
+
+                    queuedAny = true;
+                }
+
+                if(!reader.isLapped()) {
+                    break;
+                }
+
+                if(!fellBehind(reader.skipToOldest())) {
+                    return false;
+                }
+
+                queuedAny = true;
+            }
+
+            return queuedAny;
+        }
+
+        /**
+         * Deals with the subscriber having lost events: disconnects it, or empties its queue and queues a "dropped" event
+         * with the number of events it missed in their place
+         * @param missed the events lost besides any still in the queue
+         * @return false if the subscriber was disconnected
+         */
+        private boolean fellBehind(long missed) {
+            slowConsumers.increment();
+
+            if(!DROP_SLOW_CONSUMERS) {
+                closed = true;
+                client.close();
+                return false;
+            }
+
+            for(Outgoing lost = queue.poll(); lost != null; lost = queue.poll()) {
+                if(lost != Outgoing.HEARTBEAT) {
+                    missed++;
+                }
+            }
+
+            // the writer may have taken one more event meanwhile, but nothing else adds to the queue
+            queue.offer(new Outgoing("dropped", String.valueOf(missed), null));
+            return true;
+        }
+
+        private Outgoing toOutgoing(MessageEvent event) {
+            Message message = event.getMessage();
+
+            if(event.getType() != MessageEvent.Type.POSTED) {
+                // no id, so that Last-Event-ID keeps pointing at the last post
+                return new Outgoing(event.getType().getName(), message, null);
+            }
+
+            if(message.getMessage_id() <= replayedUpTo) {
+                return null;
+            }
+
+            return new Outgoing(event.getType().getName(), message, String.valueOf(message.getMessage_id()));
+        }
+
+        private void startWriter() {
+            if(writing.getAndIncrement() == 0) {
+                try {
+                    if(writers == null) {
+                        VirtualThreads.executeOnVirtualThread(this::write);
+                    } else {
+                        writers.execute(this::write);
+                    }
+                } catch(RejectedExecutionException e) {
+                    // the feed is shutting down
+                }
+            }
+        }
+
+        /**
+         * Sends everything in the queue; may block on a slow client, but only this subscriber's writer waits for it
+         */
+        private void write() {
+            int missed = 1;
+
+            do {
+                for(Outgoing outgoing = queue.poll(); outgoing != null && !closed; outgoing = queue.poll()) {
+                    if(outgoing == Outgoing.HEARTBEAT) {
+                        client.sendComment("heartbeat");
+                    } else {
+                        client.sendEvent(outgoing.name, outgoing.data, outgoing.id);
+
+                        if(outgoing.data instanceof Message) {
+                            eventsSent.increment();
+                        }
+                    }
+                }
+
+                if(closed) {
+                    return;
+                }
+
+                missed = writing.addAndGet(-missed);
+            } while(missed != 0);
+        }
+    }
+
+    /**
+     * An event waiting in a subscriber's queue
+     */
+    private static class Outgoing {
+        static final Outgoing HEARTBEAT = new Outgoing(null, null, null);
+
+        final String name;
+        final Object data;
+        final String id;
+
+        Outgoing(String name, Object data, String id) {
+            this.name = name;
+            this.data = data;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package Controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import DAO.MessageRowHandler;
+import Util.WireFormat;
+
+/**
+ * Writes message rows straight to a response stream as they come out of the database, as one JSON array, as
+ * newline-delimited JSON (one message object per line) or as one CBOR array. Only the row being written is ever held in
+ * memory.
+ *
+ * The first row is flushed as soon as it is written so the client gets the headers and the start of the body without
+ * waiting for the query to finish. After that the generator and servlet buffers decide when bytes go out.
+ */
+class MessageStreamWriter implements MessageRowHandler {
+    static final String JSON = "application/json";
+    static final String NDJSON = "application/x-ndjson";
+    static final String CBOR = WireFormat.CBOR.getMediaType();
+
+    /**
+     * The factories are thread-safe and relatively expensive to build, so one of each is shared. Open arrays are not
+     * closed automatically, so a stream cut short by a failed query is not mistaken for a complete list. A CBOR array
+     * is written with indefinite length, since the number of rows is not known up front.
+     */
+    private static final JsonFactory jsonFactory = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    private static final JsonFactory cborFactory = new CBORFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
+    private final JsonGenerator generator;
+    private final boolean ndjson;
+    private long rowsWritten;
+
+    /**
+     * @param out the response stream
+     * @param mediaType JSON, NDJSON or CBOR
+     */
+    MessageStreamWriter(OutputStream out, String mediaType) throws IOException {
+        this.generator = (CBOR.equals(mediaType) ? cborFactory : jsonFactory).createGenerator(out);
+        this.ndjson = NDJSON.equals(mediaType);
+
+        if(ndjson) {
+            // lines are ended by hand below; the default separator would put a space before every line after the first
+            generator.setRootValueSeparator(null);
+        } else {
+            generator.writeStartArray();
+        }
+    }
+
+    /**
+     * @param accept the request's Accept header, may be null
+     * @return the media type to stream in: NDJSON or CBOR if the client asked for it, JSON otherwise
+     */
+    static String negotiate(String accept) {
+        if(accept != null && accept.contains(NDJSON)) {
+            return NDJSON;
+        }
+
+        return (WireFormat.forAccept(accept) == WireFormat.CBOR) ? CBOR : JSON;
+    }
+
+    @Override
+    public void row(int message_id, int posted_by, String message_text, long time_posted_epoch) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("message_id", message_id);
+        generator.writeNumberField("posted_by", posted_by);
+        generator.writeStringField("message_text", message_text);
+        generator.writeNumberField("time_posted_epoch", time_posted_epoch);
+        generator.writeEndObject();
+
+        if(ndjson) {
+            generator.writeRaw('\n');
+        }
+
+        if(++rowsWritten == 1) {
+            generator.flush();
+        }
+    }
+
+    /**
+     * @return the number of rows written so far
+     */
+    long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Ends the array (for JSON and CBOR) and closes the response stream
+     */
+    void finish() throws IOException {
+        if(!ndjson) {
+            generator.writeEndArray();
+        }
+
+        generator.close();
+    }
+
+    /**
+     * Closes the response stream after a failure part way through, leaving the array unterminated
+     */
+    void abort() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,149 @@
+package Controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import Util.Config;
+import Util.TinyLfuCache;
+
+/**
+ * A cache of encoded response bodies for the message list endpoints, so that a hot list is encoded (and compressed)
+ * once and then sent as a plain copy of bytes.
+ *
+ * Entries are keyed by the request path and everything else the body depends on (media type, accepted compression,
+ * page), and each holds the version tag of the messages it was encoded from and the Content-Encoding it was sent with,
+ * so a compressed body is compressed once rather than on every request. A body is only served while that version tag is
+ * still current; posting, updating or deleting a message changes the tag, so the next request misses and replaces the
+ * entry. A body is only stored if the version tag did not change while it was being produced, since it may otherwise
+ * mix rows from before and after a write.
+ *
+ * The cache is bounded by total bytes and uses the same W-TinyLFU policy as the message cache.
+ */
+class ResponseCache {
+    /**
+     * Bounds on the cache: the total bytes of the bodies it holds, the number of bodies, and the largest single body.
+     * Setting the total bytes to 0 turns the cache off.
+     */
+    static final long MAX_BYTES = Config.getLong("socialmedia.cache.responses.maxBytes", 32L * 1024 * 1024);
+    static final long MAX_ENTRIES = Config.getLong("socialmedia.cache.responses.maxEntries", 10000);
+    static final int MAX_ENTRY_BYTES = Config.getInt("socialmedia.cache.responses.maxEntryBytes", 1024 * 1024);
+
+    /**
+     * A rough estimate of the heap an entry takes besides its bytes: the key, the version tag and the cache's own entry
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final TinyLfuCache<String, Body> cache = new TinyLfuCache<>("responses", MAX_ENTRIES, MAX_BYTES,
+            body -> ENTRY_OVERHEAD_BYTES + body.bytes.length);
+
+    /**
+     * @param key the request path and representation
+     * @param version the current version tag of the messages behind the response, or null while a write is in flight
+     * @return the cached body, or null if there is none for this version
+     */
+    Body get(String key, String version) {
+        if(version == null) {
+            return null;
+        }
+
+        Body body = cache.getIfPresent(key);
+
+        if(body == null) {
+            return null;
+        }
+
+        if(!body.version.equals(version)) {
+            // the messages have changed since; free the space now rather than when the entry is evicted
+            cache.invalidate(key);
+            return null;
+        }
+
+        return body;
+    }
+
+    /**
+     * Stores a body, unless the messages changed while it was being produced or it is too large
+     * @param key the request path and representation
+     * @param versionAfter the version tag read after the body was produced
+     * @param body the body, with the version tag read before it was produced
+     */
+    void put(String key, String versionAfter, Body body) {
+        if(body.version != null && body.version.equals(versionAfter) && body.bytes != null && body.bytes.length <= MAX_ENTRY_BYTES) {
+            cache.put(key, body);
+        }
+    }
+
+    /**
+     * @param out the stream a body is written to
+     * @return a stream that writes through to out and keeps a copy of what was written, up to MAX_ENTRY_BYTES
+     */
+    Recorder record(OutputStream out) {
+        return new Recorder(out, MAX_BYTES > 0);
+    }
+
+    /**
+     * Writes through to the response stream and keeps a copy of the bytes for the cache
+     */
+    static class Recorder extends FilterOutputStream {
+        private ByteArrayOutputStream copy;
+
+        Recorder(OutputStream out, boolean enabled) {
+            super(out);
+            this.copy = enabled ? new ByteArrayOutputStream(8192) : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            keep(b, off, len);
+        }
+
+        private void keep(byte[] b, int off, int len) {
+            if(copy == null) {
+                return;
+            }
+
+            // a body too large to cache is not worth holding on to
+            if(copy.size() + len > MAX_ENTRY_BYTES) {
+                copy = null;
+                return;
+            }
+
+            copy.write(b, off, len);
+        }
+
+        /**
+         * @return the bytes written, or null if there were too many to keep
+         */
+        byte[] getBytes() {
+            return (copy == null) ? null : copy.toByteArray();
+        }
+    }
+
+    /**
+     * A body as sent: its bytes, its Content-Encoding, and the version tag of the messages it holds
+     */
+    static class Body {
+        final String version;
+        final byte[] bytes;
+        final String contentEncoding;
+
+        /**
+         * @param version the version tag read before the body was produced
+         * @param bytes the body as sent, or null if it was too large to keep
+         * @param contentEncoding the Content-Encoding it was sent with, or null if uncompressed
+         */
+        Body(String version, byte[] bytes, String contentEncoding) {
+            this.version = version;
+            this.bytes = bytes;
+            this.contentEncoding = contentEncoding;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package Controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import Util.Config;
+import Util.Metrics;
+
+/**
+ * Compresses response bodies in place of Javalin's own compression, which is turned off. It picks an encoding from the
+ * request's Accept-Encoding header (brotli if the JVM has the native brotli library and the client accepts it, else
+ * gzip) and leaves bodies under a size threshold alone, since compressing a single message costs more CPU than the few
+ * bytes it saves.
+ *
+ * For each endpoint it exports the bytes in and out, the compression ratio, and the CPU time spent compressing.
+ */
+class ResponseCompressor {
+    /**
+     * Bodies smaller than this many bytes are sent uncompressed. Setting it to -1 turns compression off.
+     */
+    static final int MIN_BYTES = Config.getInt("socialmedia.compression.minBytes", 1024);
+    static final int GZIP_LEVEL = Config.getInt("socialmedia.compression.gzipLevel", 6);
+    static final int BROTLI_LEVEL = Config.getInt("socialmedia.compression.brotliLevel", 4);
+    static final boolean BROTLI_ENABLED = Config.getBoolean("socialmedia.compression.brotli", true);
+
+    /**
+     * The constructor of Javalin's brotli stream, or null if the brotli library it needs is not on the class path or
+     * has no native build for this platform
+     */
+    private static final Constructor<?> BROTLI_STREAM = loadBrotli();
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * A content coding this class can produce
+     */
+    enum Encoding {
+        IDENTITY(null), GZIP("gzip"), BROTLI("br");
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        /**
+         * @return the Content-Encoding value, or null for an uncompressed body
+         */
+        String getToken() {
+            return token;
+        }
+    }
+
+    private static Constructor<?> loadBrotli() {
+        if(!BROTLI_ENABLED) {
+            return null;
+        }
+
+        try {
+            Class<?> loader = Class.forName("com.nixxcode.jvmbrotli.common.BrotliLoader");
+
+            if(!(Boolean) loader.getMethod("isBrotliAvailable").invoke(null)) {
+                return null;
+            }
+
+            return Class.forName("io.javalin.compression.LeveledBrotliStream").getConstructor(OutputStream.class, int.class);
+        } catch(ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if brotli can be used on this JVM
+     */
+    static boolean isBrotliAvailable() {
+        return BROTLI_STREAM != null;
+    }
+
+    /**
+     * Picks the encoding for a response. A coding the client gives a q-value of 0 is never used.
+     * @param acceptEncoding the request's Accept-Encoding header, may be null
+     * @return brotli if available and accepted, else gzip if accepted, else IDENTITY
+     */
+    Encoding negotiate(String acceptEncoding) {
+        if(acceptEncoding == null || MIN_BYTES < 0) {
+            return Encoding.IDENTITY;
+        }
+
+        boolean gzip = false;
+        boolean brotli = false;
+
+        for(String item : acceptEncoding.split(",")) {
+            String[] parts = item.split(";");
+            String coding = parts[0].trim().toLowerCase();
+
+            if(parts.length > 1 && parts[1].trim().matches("q\\s*=\\s*0(\\.0*)?")) {
+                continue;
+            }
+
+            gzip |= coding.equals("gzip") || coding.equals("*");
+            brotli |= coding.equals("br") || coding.equals("*");
+        }
+
+        if(brotli && isBrotliAvailable()) {
+            return Encoding.BROTLI;
+        }
+
+        return gzip ? Encoding.GZIP : Encoding.IDENTITY;
+    }
+
+    /**
+     * @param size the size of a body
+     * @return true if a body of that size is worth compressing
+     */
+    boolean worthCompressing(int size) {
+        return MIN_BYTES >= 0 && size >= MIN_BYTES;
+    }
+
+    /**
+     * Compresses a whole body at once
+     * @param endpoint the endpoint the body is for, such as "/messages/{message_id}", used in metric names
+     * @param body the body to compress
+     * @param encoding the encoding to use, not IDENTITY
+     * @return the compressed body
+     */
+    byte[] compress(String endpoint, byte[] body, Encoding encoding) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        long cpuBefore = THREADS.getCurrentThreadCpuTime();
+
+        try(OutputStream out = open(compressed, encoding)) {
+            out.write(body);
+        }
+
+        statsFor(endpoint).record(body.length, compressed.size(), THREADS.getCurrentThreadCpuTime() - cpuBefore);
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Wraps a response stream for a body whose size is not known up front. Nothing is written to out until either
+     * MIN_BYTES have been written, at which point onCompress is run (so that the Content-Encoding header can still be
+     * set) and the body is compressed from then on, or the stream is closed first, in which case the body is written as
+     * it is. Flushing before that point is put off.
+     * @param endpoint the endpoint the body is for, used in metric names
+     * @param out the raw response stream
+     * @param encoding the encoding to use if the body turns out to be large enough
+     * @param onCompress run once, just before the first compressed byte, if the body is compressed
+     * @return the stream to write the body to
+     */
+    CompressingOutputStream open(String endpoint, OutputStream out, Encoding encoding, Runnable onCompress) {
+        return new CompressingOutputStream(statsFor(endpoint), out, encoding, onCompress);
+    }
+
+    private static OutputStream open(OutputStream out, Encoding encoding) throws IOException {
+        if(encoding == Encoding.BROTLI) {
+            try {
+                return (OutputStream) BROTLI_STREAM.newInstance(out, BROTLI_LEVEL);
+            } catch(ReflectiveOperationException e) {
+                throw new IOException(e);
+            }
+        }
+
+        return new LeveledGzipStream(out);
+    }
+
+    private Stats statsFor(String endpoint) {
+        return stats.computeIfAbsent(endpoint, Stats::new);
+    }
+
+    /**
+     * A gzip stream at GZIP_LEVEL that flushes whatever it has compressed so far when flushed
+     */
+    private static class LeveledGzipStream extends GZIPOutputStream {
+        LeveledGzipStream(OutputStream out) throws IOException {
+            super(out, 8192, true);
+            def.setLevel(GZIP_LEVEL);
+        }
+    }
+
+    /**
+     * See ResponseCompressor.open
+     */
+    static class CompressingOutputStream extends FilterOutputStream {
+        private final Stats stats;
+        private final Encoding encoding;
+        private final Runnable onCompress;
+        private ByteArrayOutputStream pending;
+        private OutputStream compressor;
+        private CountingOutputStream counter;
+        private long bytesIn;
+        private long cpuNanos;
+
+        CompressingOutputStream(Stats stats, OutputStream out, Encoding encoding, Runnable onCompress) {
+            super(out);
+            this.stats = stats;
+            this.encoding = encoding;
+            this.onCompress = onCompress;
+            this.pending = (encoding == Encoding.IDENTITY || MIN_BYTES < 0) ? null : new ByteArrayOutputStream(Math.max(MIN_BYTES, 256));
+        }
+
+        /**
+         * @return the Content-Encoding the body was sent with so far, or null if it is uncompressed or not yet decided
+         */
+        String getContentEncoding() {
+            return (compressor == null) ? null : encoding.getToken();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(pending != null) {
+                pending.write(b, off, len);
+
+                if(pending.size() >= MIN_BYTES) {
+                    startCompressing();
+                }
+            } else if(compressor != null) {
+                long cpuBefore = THREADS.getCurrentThreadCpuTime();
+                compressor.write(b, off, len);
+                cpuNanos += THREADS.getCurrentThreadCpuTime() - cpuBefore;
+                bytesIn += len;
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        private void startCompressing() throws IOException {
+            byte[] buffered = pending.toByteArray();
+            pending = null;
+            onCompress.run();
+
+            counter = new CountingOutputStream(out);
+            compressor = open(counter, encoding);
+            write(buffered, 0, buffered.length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if(pending != null) {
+                return;
+            }
+
+            (compressor != null ? compressor : out).flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(pending != null) {
+                // too small to be worth compressing
+                pending.writeTo(out);
+                pending = null;
+            }
+
+            if(compressor == null) {
+                out.close();
+                return;
+            }
+
+            long cpuBefore = THREADS.getCurrentThreadCpuTime();
+            compressor.close();
+            cpuNanos += THREADS.getCurrentThreadCpuTime() - cpuBefore;
+            stats.record(bytesIn, counter.count, cpuNanos);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * The compression metrics of one endpoint
+     */
+    static class Stats {
+        private final LongAdder bytesIn;
+        private final LongAdder bytesOut;
+        private final Metrics.Timer cpu;
+
+        Stats(String endpoint) {
+            String name = "compression_" + endpoint.replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_|_$", "");
+            bytesIn = Metrics.counter(name + "_in_bytes", "bytes of " + endpoint + " response bodies before compression");
+            bytesOut = Metrics.counter(name + "_out_bytes", "bytes of " + endpoint + " response bodies after compression");
+            cpu = Metrics.timer(name + "_cpu", "CPU time spent compressing one " + endpoint + " response body");
+            Metrics.gauge(name + "_ratio", "bytes in per byte out of compressed " + endpoint + " response bodies",
+                    () -> (bytesOut.sum() == 0) ? 0 : (double) bytesIn.sum() / bytesOut.sum());
+        }
+
+        void record(long in, long out, long cpuNanos) {
+            bytesIn.add(in);
+            bytesOut.add(out);
+            cpu.record(cpuNanos);
+        }
+    }
+}
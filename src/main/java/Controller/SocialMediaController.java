@@ -1,17 +1,40 @@
 package Controller;
 
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import DAO.AccountStore;
+import DAO.MessageRowHandler;
+import DAO.Stores;
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageCount;
+import Model.MessagePage;
 import Service.AccountService;
 import Service.MessageService;
+import Util.Bulkhead;
+import Util.Config;
+import Util.JsonCodec;
+import Util.Metrics;
+import Util.SchemaMigrator;
+import Util.WireFormat;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -19,12 +42,66 @@ import io.javalin.http.Context;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    /**
+     * Virtual-thread mode: when enabled and the JVM supports virtual threads (Java 21 or later), each request is handled on
+     * its own virtual thread instead of on one of the server's platform threads, so requests blocked on the database do not
+     * hold a thread. Concurrent database access is then bounded by the connection pools' semaphores (socialmedia.pool.maxSize,
+     * or the bulkheads' connections), rather than by the size of a thread pool.
+     */
+    public static final boolean VIRTUAL_THREADS = Config.getBoolean("socialmedia.server.virtualThreads", false);
+
+    /**
+     * Bulkheads: when enabled, reads (GET, and logins) and writes (POST, PATCH, DELETE) run on separate bulkheads, each
+     * with its own threads, queue bound and database connections, so a burst of writes cannot hold up reads. Reads get
+     * the larger share. A request that finds its bulkhead's threads busy and queue full is answered 503 at once. In
+     * virtual-thread mode the bulkheads run each request on a virtual thread too, with their thread counts bounding how
+     * many run at once. With group commit on, the write bulkhead gets at least a full batch of threads, since each post
+     * holds its thread until its batch commits and batches could otherwise never grow past the write threads.
+     */
+    public static final boolean BULKHEADS_ENABLED = Config.getBoolean("socialmedia.bulkheads.enabled", true);
+    public static final int READ_THREADS = Config.getInt("socialmedia.bulkheads.read.threads", 16);
+    public static final int READ_QUEUE = Config.getInt("socialmedia.bulkheads.read.queue", 256);
+    public static final int READ_CONNECTIONS = Config.getInt("socialmedia.bulkheads.read.connections", 8);
+    public static final int WRITE_THREADS = Config.getInt("socialmedia.bulkheads.write.threads", 4);
+    public static final int WRITE_QUEUE = Config.getInt("socialmedia.bulkheads.write.queue", 128);
+    public static final int WRITE_CONNECTIONS = Config.getInt("socialmedia.bulkheads.write.connections", 4);
+
     MessageService messageService;
     AccountService accountService;
+    ResponseCache responseCache = new ResponseCache();
+    ResponseCompressor compressor = new ResponseCompressor();
+    Bulkhead readBulkhead;
+    Bulkhead writeBulkhead;
+    MessageFeed messageFeed;
+
+    private static final LongAdder notModified = Metrics.counter("conditional_get_not_modified",
+            "message list requests answered with 304 Not Modified");
 
     public SocialMediaController() {
-        this.messageService = new MessageService();
-        this.accountService = new AccountService();
+        SchemaMigrator.migrate();
+        AccountStore accountStore = Stores.newAccountStore();
+        init(new MessageService(Stores.newMessageStore(accountStore), accountStore), new AccountService(accountStore));
+    }
+
+    /**
+     * Builds a controller around services that were made elsewhere, once the database schema has been migrated
+     * @param messageService the service behind the message endpoints
+     * @param accountService the service behind the account endpoints
+     */
+    public SocialMediaController(MessageService messageService, AccountService accountService) {
+        init(messageService, accountService);
+    }
+
+    private void init(MessageService messageService, AccountService accountService) {
+        this.messageService = messageService;
+        this.accountService = accountService;
+        this.messageFeed = new MessageFeed(messageService);
+
+        if(BULKHEADS_ENABLED) {
+            this.readBulkhead = new Bulkhead("read", READ_THREADS, READ_QUEUE, READ_CONNECTIONS, VIRTUAL_THREADS);
+            int writeThreads = Math.max(WRITE_THREADS, messageService.getGroupCommitMaxBatch());
+            this.writeBulkhead = new Bulkhead("write", writeThreads, WRITE_QUEUE, WRITE_CONNECTIONS, VIRTUAL_THREADS);
+        }
     }
 
     /**
@@ -33,33 +110,112 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::createAccountHandler);
-        app.post("/login", this::accountLoginHandler);
-        app.post("/messages", this::postMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/accounts/{account_id}/messages", this::getMessagesFromSenderHandler);
-        app.get("/messages/{message_id}", this::getMessageByIdHandler);
-        app.patch("/messages/{message_id}", this::updateMessageHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageHandler);
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(JsonCodec.JAVALIN);
+            // bodies are compressed by ResponseCompressor, which skips small ones and can reuse cached compressed ones
+            config.compression.none();
+
+            if(VIRTUAL_THREADS) {
+                config.jetty.server(SocialMediaController::virtualThreadServer);
+            }
+        });
+        app.post("/register", inBulkhead(writeBulkhead, this::createAccountHandler));
+        app.post("/login", inBulkhead(readBulkhead, this::accountLoginHandler));
+        app.post("/messages", inBulkhead(writeBulkhead, this::postMessageHandler));
+        app.post("/messages/batch", inBulkhead(writeBulkhead, this::postMessageBatchHandler));
+        app.get("/messages", inBulkhead(readBulkhead, this::getAllMessagesHandler));
+        app.get("/accounts/{account_id}/messages", inBulkhead(readBulkhead, this::getMessagesFromSenderHandler));
+        // answered from memory without touching the database, so kept off the bulkheads to stay fast while they are busy
+        app.get("/accounts/search", this::searchAccountsHandler);
+        app.get("/messages/search", inBulkhead(readBulkhead, this::searchMessagesHandler));
+        // the live feed holds its connection open, so it is kept off the bulkheads; both are registered before the route below
+        app.sse("/messages/stream", messageFeed::subscribe);
+        app.get("/messages/{message_id}", inBulkhead(readBulkhead, this::getMessageByIdHandler));
+        app.patch("/messages/{message_id}", inBulkhead(writeBulkhead, this::updateMessageHandler));
+        app.delete("/messages/{message_id}", inBulkhead(writeBulkhead, this::deleteMessageHandler));
+        // statistics are kept in memory, so like the username search they stay off the bulkheads
+        app.get("/stats/messages", this::messageStatsHandler);
+        app.get("/stats/messages/minutes", context -> messageVolumeHandler(context, Math.min(60, MessageService.STATS_MINUTES), messageService::getMessageCountsPerMinute));
+        app.get("/stats/messages/hours", context -> messageVolumeHandler(context, Math.min(24, MessageService.STATS_HOURS), messageService::getMessageCountsPerHour));
+        app.get("/stats/accounts/{account_id}", this::accountStatsHandler);
+        // metrics stay on the server's own threads so that they can still be read while the bulkheads are full
+        app.get("/metrics", this::metricsHandler);
+        app.events(event -> event.serverStopped(this::shutdown));
 
         return app;
     }
 
+    /**
+     * Stops the live feed, the bulkheads' threads and the service's background work
+     */
+    private void shutdown() {
+        messageFeed.shutdown();
+
+        if(readBulkhead != null) {
+            readBulkhead.shutdown();
+            writeBulkhead.shutdown();
+        }
+
+        messageService.shutdown();
+    }
+
+    /**
+     * Wraps a handler so that it runs on a bulkhead's threads as an asynchronous request, leaving the server's thread free
+     * at once. If the bulkhead is full, the request is answered 503 (Service Unavailable) with a Retry-After header instead.
+     * @param bulkhead the bulkhead to run on, or null to run on the server's thread as usual
+     * @param handler the handler to wrap
+     * @return the wrapped handler
+     */
+    private static Handler inBulkhead(Bulkhead bulkhead, Handler handler) {
+        if(bulkhead == null) {
+            return handler;
+        }
+
+        return context -> context.future(() -> {
+            CompletableFuture<Void> done = bulkhead.submit(() -> handler.handle(context));
+
+            if(done == null) {
+                context.status(503);
+                context.header("Retry-After", "1");
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return done;
+        });
+    }
+
+    /**
+     * Builds a Jetty server like Javalin's default one, but whose thread pool hands each request to a new virtual thread. Its
+     * platform threads are then only used for accepting connections and selecting ready ones. If the JVM has no virtual
+     * threads, the server is left as it would be without this mode.
+     * @return the server for Javalin to use
+     */
+    private static Server virtualThreadServer() {
+        QueuedThreadPool threadPool = new QueuedThreadPool(250, 8, 60_000);
+        threadPool.setName("JettyServerThreadPool");
+
+        if(VirtualThreads.areSupported()) {
+            threadPool.setUseVirtualThreads(true);
+        } else {
+            System.out.println("socialmedia.server.virtualThreads is set, but this JVM has no virtual threads; using platform threads");
+        }
+
+        return new Server(threadPool);
+    }
+
     /**
      * Uses the service class to create a new account. Specifically, maps the request body to the Account class and passes it in
      * to the createAccount method. If the createAccount method returns null, sets status to 400 (client error)
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void createAccountHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void createAccountHandler(Context context) throws IOException {
+        Account account = readBody(context, Account.class);
         Account addedAccount = accountService.createAccount(account);
 
         if(addedAccount == null) {
             context.status(400);
         } else {
-            context.json(mapper.writeValueAsString(addedAccount));
+            respond(context, addedAccount);
         }
     }
 
@@ -68,56 +224,179 @@ public class SocialMediaController {
      * passes it into the accountLogin method. If the account cannot be logged in, sets the status to 401 (Unauthorized)
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void accountLoginHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void accountLoginHandler(Context context) throws IOException {
+        Account account = readBody(context, Account.class);
         Account addedAccount = accountService.accountLogin(account);
         
         if(addedAccount == null) {
             context.status(401);
         } else {
-            context.json(mapper.writeValueAsString(addedAccount));
+            respond(context, addedAccount);
         }
     }
 
 
+    /**
+     * A handler for username typeahead. Responds with the accounts whose username starts with the "prefix" query parameter,
+     * ordered by username and without their passwords, up to "limit" of them. A missing or empty prefix, or a malformed or
+     * out of range limit, sets the status to 400.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void searchAccountsHandler(Context context) throws IOException {
+        try {
+            String limit = context.queryParam("limit");
+            List<Account> accounts = accountService.searchAccounts(context.queryParam("prefix"),
+                    (limit == null) ? AccountService.SEARCH_DEFAULT_LIMIT : Integer.parseInt(limit));
+
+            if(accounts == null) {
+                context.status(400);
+            } else {
+                respond(context, accounts);
+            }
+
+        } catch(NumberFormatException e) {
+            System.out.println(e.getMessage());
+            context.status(400);
+        }
+    }
+
     /**
      * A handler for posting a new message to the client. The handler maps the request body to a Message and passes it
      * to the postMessage method to save it in the database. If a message cannot be posted, sets status to 400 (client error)
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void postMessageHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(context.body(), Message.class);
+    private void postMessageHandler(Context context) throws IOException {
+        Message message = readBody(context, Message.class);
         Message addedMessage = messageService.postMessage(message);
 
         if(addedMessage == null) {
             context.status(400);
         } else {
-            context.json(mapper.writeValueAsString(addedMessage));
+            respond(context, addedMessage);
         }
     }
 
     /**
-     * A handler for getting all of the messages from the server. Uses the getAllMessages method to grab the list of Message objects
+     * A handler for posting many messages in one request. The body is either a JSON array of messages or NDJSON (one message
+     * per line), or their CBOR equivalents; Jackson reads each as a sequence of values straight from the request stream. The response is a JSON array
+     * with one MessageBatchResult per message, in request order, and a status of 200 even if some messages were rejected.
+     * A body that is not valid JSON, or has more messages than the service allows, gets a 400; a failure to check the
+     * senders gets a 500.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getAllMessagesHandler(Context context) {
-        List<Message> messages = messageService.getAllMessages();
-        context.json(messages);
-        context.status(200);
+    private void postMessageBatchHandler(Context context) throws IOException {
+        List<Message> messages;
+
+        ObjectMapper mapper = WireFormat.forContentType(context.contentType()).getMapper();
+
+        try(MappingIterator<Message> values = mapper.readerFor(Message.class).readValues(context.bodyInputStream())) {
+            messages = values.readAll();
+        } catch(IOException | RuntimeException e) {
+            context.status(400);
+            return;
+        }
+
+        if(messages.size() > MessageService.BATCH_MAX_MESSAGES) {
+            context.status(400);
+            return;
+        }
+
+        List<MessageBatchResult> results = messageService.postMessages(messages);
+
+        if(results == null) {
+            context.status(500);
+        } else {
+            respond(context, results);
+        }
+    }
+
+    /**
+     * A handler for getting all of the messages from the server. The messages are streamed from the database straight into the
+     * response body, as a JSON array or, if the Accept header asks for application/x-ndjson, as one JSON object per line. If the request has an "after" or "limit" query parameter, responds with a single MessagePage instead, and the client pages
+     * through the table by passing each page's next_cursor back as "after". An "ids" or "posted_by" query parameter holding a
+     * comma-separated list fetches those messages, or those senders' messages, in one go instead (see multiGetHandler). A malformed
+     * parameter sets the status to 400 (client error). Full lists and pages carry an ETag, and a request whose If-None-Match names
+     * the current one gets a 304 (not modified) without the database being asked.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getAllMessagesHandler(Context context) throws IOException {
+        try {
+            if(context.queryParam("since") != null || context.queryParam("until") != null) {
+                timeRangeHandler(context);
+                return;
+            }
+
+            if(context.queryParam("ids") != null || context.queryParam("posted_by") != null) {
+                multiGetHandler(context);
+                return;
+            }
+
+            if(isPageRequest(context)) {
+                int after = afterParam(context);
+                int limit = limitParam(context);
+
+                respondPage(context, messageService::getAllMessagesVersion, pageRepresentation(context, after, limit),
+                        () -> messageService.getMessagesPage(after, limit));
+                return;
+            }
+
+            streamMessages(context, messageService::getAllMessagesVersion, "", messageService::streamAllMessages);
+
+        } catch(NumberFormatException e) {
+            System.out.println(e.getMessage());
+            context.status(400);
+        }
     }
 
     /**
      * A handler for getting all messages from a single sender. Passes in the account_id from the request body as an argument
-     * to the getMessagesFromSender method. If there's an incorrect number formatting from the request, status is set to 400 (client error)
+     * to the streamMessagesFromSender method, which streams the messages into the response body. Like getAllMessagesHandler, an "after" or "limit" query parameter switches the response
+     * to a single MessagePage, and as there, a current If-None-Match gets a 304. If there's an incorrect number formatting from the request, status is set to 400 (client error)
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getMessagesFromSenderHandler(Context context) {
+    private void getMessagesFromSenderHandler(Context context) throws IOException {
         try {
-            List<Message> messages = messageService.getMessagesFromSender(Integer.parseInt(context.pathParam("account_id")));
-            context.json(messages);
-            context.status(200);
+            int account_id = Integer.parseInt(context.pathParam("account_id"));
+
+            if(isPageRequest(context)) {
+                int after = afterParam(context);
+                int limit = limitParam(context);
+
+                respondPage(context, () -> messageService.getMessagesFromSenderVersion(account_id), pageRepresentation(context, after, limit),
+                        () -> messageService.getMessagesFromSenderPage(account_id, after, limit));
+                return;
+            }
+
+            streamMessages(context, () -> messageService.getMessagesFromSenderVersion(account_id), "",
+                    handler -> messageService.streamMessagesFromSender(account_id, handler));
+
+        } catch(NumberFormatException e) {
+            System.out.println(e.getMessage());
+            context.status(400);
+        }
+    }
+
+    /**
+     * A handler for searching message text. The "q" query parameter holds the words to search for, all of which must appear
+     * in a message; a word ending in * also matches longer words that start with it. Responds with a MessagePage of matches,
+     * newest first, of "limit" messages; the next page is fetched by passing its next_cursor back as "before". Like a page of
+     * GET /messages, the response carries an ETag. A missing or empty query or a malformed parameter sets the status to 400.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void searchMessagesHandler(Context context) throws IOException {
+        try {
+            String q = context.queryParam("q");
+            String beforeParam = context.queryParam("before");
+            int before = (beforeParam == null) ? 0 : Integer.parseInt(beforeParam);
+            int limit = limitParam(context);
+            String representation = (q == null) ? null : pageRepresentation(context, before, limit);
+
+            if(representation != null) {
+                representation += "q" + URLEncoder.encode(q.trim(), StandardCharsets.UTF_8);
+            }
+
+            respondPage(context, messageService::getAllMessagesVersion, representation,
+                    () -> messageService.searchMessages(q, before, limit));
 
         } catch(NumberFormatException e) {
             System.out.println(e.getMessage());
@@ -130,12 +409,12 @@ public class SocialMediaController {
      * and sets status to 200
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getMessageByIdHandler(Context context) {
+    private void getMessageByIdHandler(Context context) throws IOException {
         try {
             Message message = messageService.getMessageByIdentificationNumber(Integer.parseInt(context.pathParam("message_id")));
             
             if(message != null)
-                context.json(message);
+                respond(context, message);
 
             context.status(200);
         } catch(NumberFormatException e) {
@@ -145,21 +424,19 @@ public class SocialMediaController {
     }
 
     /**
-     * A handler for updating a message based on it's id. Because the message body contains a JSON string to access the updated
-     * message text, a JsonNode is needed to extract the specific message from the Json string output. If there is no message with
-     * the specified id, sets the context to 400 (client error)
+     * A handler for updating a message based on it's id. The request body is read as a Message, of which only message_text
+     * is used. If there is no message with the specified id, sets the context to 400 (client error)
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void updateMessageHandler(Context context) throws JsonProcessingException {
+    private void updateMessageHandler(Context context) throws IOException {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode node = mapper.readTree(context.body());
-            Message message = messageService.updateMessage(Integer.parseInt(context.pathParam("message_id")), node.get("message_text").asText());
+            Message update = readBody(context, Message.class);
+            Message message = messageService.updateMessage(Integer.parseInt(context.pathParam("message_id")), update.getMessage_text());
 
             if(message == null) {
                 context.status(400);
             } else {
-                context.json(message);
+                respond(context, message);
             }
         } catch(NumberFormatException e) {
             System.out.println(e.getMessage());
@@ -171,12 +448,12 @@ public class SocialMediaController {
      * A handler for deleting a message from the server using it's id. If a message cannot be found, sets the status to 400 (client error)
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void deleteMessageHandler(Context context) {
+    private void deleteMessageHandler(Context context) throws IOException {
         try {
             Message message = messageService.deleteMessage(Integer.parseInt(context.pathParam("message_id")));
         
             if(message != null)
-                context.json(message);
+                respond(context, message);
 
             context.status(200);
         } catch(NumberFormatException e) {
@@ -184,4 +461,398 @@ public class SocialMediaController {
             context.status(400);
         }
     }
+
+    /**
+     * A query that hands its rows to a MessageRowHandler, such as MessageService::streamAllMessages
+     */
+    @FunctionalInterface
+    private interface MessageQuery {
+        boolean run(MessageRowHandler handler) throws IOException;
+    }
+
+    /**
+     * Runs a message query and writes its rows into the response body as they arrive. If the query fails before anything has been
+     * written, sets the status to 500 (server error). If it fails part way through, the body is cut short so the client can tell.
+     * A complete body is kept in the response cache, exactly as sent (compressed or not), and the next request for the same list
+     * in the same representation is sent that copy for as long as the version tag is unchanged, without running the query.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param version reads the version tag of the messages the query returns
+     * @param variant what else, besides the path, picks the rows the query returns, such as a time range, or ""
+     * @param query the query to stream
+     */
+    private void streamMessages(Context context, Supplier<String> version, String variant, MessageQuery query) {
+        String representation = streamRepresentation(context) + variant;
+        String versionBefore = version.get();
+
+        if(answerIfNotModified(context, versionBefore, representation)) {
+            return;
+        }
+
+        String mediaType = MessageStreamWriter.negotiate(context.header("Accept"));
+        ResponseCompressor.Encoding encoding = compressor.negotiate(context.header("Accept-Encoding"));
+        String key = context.path() + " " + representation;
+        ResponseCache.Body cached = responseCache.get(key, versionBefore);
+        context.status(200);
+        context.contentType(mediaType);
+        context.header("Vary", "Accept, Accept-Encoding");
+
+        try {
+            if(cached != null) {
+                if(cached.contentEncoding != null) {
+                    context.header("Content-Encoding", cached.contentEncoding);
+                }
+
+                context.res().setContentLength(cached.bytes.length);
+                context.res().getOutputStream().write(cached.bytes);
+                return;
+            }
+
+            ResponseCache.Recorder recorder = responseCache.record(context.res().getOutputStream());
+            ResponseCompressor.CompressingOutputStream body = compressor.open(context.endpointHandlerPath(), recorder, encoding,
+                    () -> context.header("Content-Encoding", encoding.getToken()));
+            MessageStreamWriter writer = new MessageStreamWriter(body, mediaType);
+
+            if(query.run(writer)) {
+                writer.finish();
+                responseCache.put(key, version.get(), new ResponseCache.Body(versionBefore, recorder.getBytes(), body.getContentEncoding()));
+            } else if(writer.getRowsWritten() == 0) {
+                context.status(500);
+            } else {
+                writer.abort();
+            }
+        } catch(IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Answers a page request: with a 304 if the client's copy is current, else with the encoded page from the response cache
+     * if it is current, else with a page from the service, which is then cached. An invalid page sets the status to 400.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param version reads the version tag of the messages the page is taken from
+     * @param representation the page's representation, or null if it is invalid
+     * @param query gets the page, or null if it is invalid
+     */
+    private void respondPage(Context context, Supplier<String> version, String representation, Supplier<MessagePage> query) throws IOException {
+        String versionBefore = version.get();
+
+        if(answerIfNotModified(context, versionBefore, representation)) {
+            return;
+        }
+
+        WireFormat format = WireFormat.forAccept(context.header("Accept"));
+        String key = context.path() + " " + representation;
+        ResponseCache.Body body = (representation == null) ? null : responseCache.get(key, versionBefore);
+
+        if(body == null) {
+            MessagePage page = query.get();
+
+            if(page == null) {
+                context.status(400);
+                return;
+            }
+
+            body = compress(context, versionBefore, format.write(page));
+
+            if(representation != null) {
+                responseCache.put(key, version.get(), body);
+            }
+        }
+
+        context.contentType(format.getMediaType());
+        send(context, body);
+    }
+
+    /**
+     * Answers GET /messages?since=&until=, optionally with a single posted_by, by streaming the messages posted from since
+     * (included) until until (excluded) in time_posted_epoch order, from a range scan on a time index. Either bound may be
+     * left out. Like the full list, the response carries an ETag. A bound after the other, or an "ids", "after" or "limit"
+     * parameter alongside, sets the status to 400.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @throws NumberFormatException if a parameter is not a number
+     */
+    private void timeRangeHandler(Context context) {
+        String sinceParam = context.queryParam("since");
+        String untilParam = context.queryParam("until");
+        String postedByParam = context.queryParam("posted_by");
+        long since = (sinceParam == null) ? Long.MIN_VALUE : Long.parseLong(sinceParam);
+        long until = (untilParam == null) ? Long.MAX_VALUE : Long.parseLong(untilParam);
+        Integer posted_by = (postedByParam == null) ? null : Integer.valueOf(postedByParam.trim());
+
+        if(since > until || context.queryParam("ids") != null || isPageRequest(context)) {
+            context.status(400);
+            return;
+        }
+
+        Supplier<String> version = (posted_by == null) ? messageService::getAllMessagesVersion
+                : () -> messageService.getMessagesFromSenderVersion(posted_by);
+
+        streamMessages(context, version, "-t" + since + "," + until + ((posted_by == null) ? "" : "s" + posted_by),
+                handler -> messageService.streamMessagesPostedBetween(posted_by, since, until, handler));
+    }
+
+    /**
+     * Answers GET /messages?ids=1,2,3 with a JSON array holding, in request order, each message or null where there is no
+     * message with that id, and GET /messages?posted_by=4,5,6 with a JSON array holding, in request order, the list of each
+     * sender's messages (empty for a sender with none). Each form takes one query however many ids are listed. More than
+     * MessageService.MULTI_GET_MAX_KEYS ids, or both parameters at once, sets the status to 400.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void multiGetHandler(Context context) throws IOException {
+        String ids = context.queryParam("ids");
+        List<Integer> keys = idListParam((ids != null) ? ids : context.queryParam("posted_by"));
+
+        if((ids != null && context.queryParam("posted_by") != null) || keys.isEmpty() || keys.size() > MessageService.MULTI_GET_MAX_KEYS) {
+            context.status(400);
+            return;
+        }
+
+        List<?> results = (ids != null) ? messageService.getMessagesByIdentificationNumbers(keys) : messageService.getMessagesFromSenders(keys);
+
+        if(results == null) {
+            context.status(500);
+        } else {
+            respond(context, results);
+        }
+    }
+
+    /**
+     * Sets a strong ETag made of a version tag of the messages behind a response and the representation the response would
+     * take, and answers 304 (not modified) with no body if the request's If-None-Match already names that ETag. The version tag
+     * comes from counters kept in memory, so neither the database nor the encoder is touched. While a write is in flight there
+     * is no version tag, and the response is sent in full without an ETag.
+     * @param context the current request
+     * @param version the version tag from the service, or null
+     * @param representation what else the response body depends on, such as its media type and paging parameters, or null
+     * if the request is going to be refused
+     * @return true if the request has been answered with a 304 and the handler should stop
+     */
+    private boolean answerIfNotModified(Context context, String version, String representation) {
+        if(version == null || representation == null) {
+            return false;
+        }
+
+        String etag = "\"" + version + "-" + representation + "\"";
+        context.header("ETag", etag);
+
+        if(!ifNoneMatch(context.header("If-None-Match"), etag)) {
+            return false;
+        }
+
+        context.header("Vary", "Accept, Accept-Encoding");
+        context.status(304);
+        notModified.increment();
+        return true;
+    }
+
+    /**
+     * @param header the If-None-Match header, may be null
+     * @param etag the current ETag
+     * @return true if the header is "*" or lists the ETag; weak comparison is used, as RFC 9110 asks for If-None-Match
+     */
+    private boolean ifNoneMatch(String header, String etag) {
+        if(header == null) {
+            return false;
+        }
+
+        for(String tag : header.split(",")) {
+            tag = tag.trim();
+
+            if(tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+
+            if(tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param context the current request
+     * @return the part of a streamed list's ETag that depends on how it is encoded
+     */
+    private String streamRepresentation(Context context) {
+        return MessageStreamWriter.negotiate(context.header("Accept")) + encodingRepresentation(context);
+    }
+
+    /**
+     * @param context the current request
+     * @param after the page's cursor
+     * @param limit the page's size
+     * @return the part of a page's ETag that depends on how it is encoded and which page it is, or null if the service
+     * will refuse the page, so that the 400 carries no ETag
+     */
+    private String pageRepresentation(Context context, int after, int limit) {
+        if(after < 0 || limit < 1 || limit > MessageService.MAX_PAGE_SIZE) {
+            return null;
+        }
+
+        return WireFormat.forAccept(context.header("Accept")).getMediaType() + encodingRepresentation(context) + "-a" + after + "l" + limit;
+    }
+
+    private String encodingRepresentation(Context context) {
+        String token = compressor.negotiate(context.header("Accept-Encoding")).getToken();
+        return (token == null) ? "" : "+" + token;
+    }
+
+    /**
+     * @param value a comma-separated list of ints, such as "1,2,3"
+     * @return the ints, in order
+     * @throws NumberFormatException if an item is not an int
+     */
+    private List<Integer> idListParam(String value) {
+        List<Integer> ids = new ArrayList<>();
+
+        for(String item : value.split(",")) {
+            if(!item.isBlank()) {
+                ids.add(Integer.parseInt(item.trim()));
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Reads the request body straight from the request stream, as CBOR if the Content-Type says so and as JSON otherwise
+     * @param context the current request
+     * @param type the class to read
+     * @return the value read
+     */
+    private <T> T readBody(Context context, Class<T> type) throws IOException {
+        return WireFormat.forContentType(context.contentType()).read(context.bodyInputStream(), type);
+    }
+
+    /**
+     * Writes a value as the response body, as CBOR if the Accept header asks for it and as JSON otherwise. The value is
+     * encoded straight to bytes with the shared mapper, once. Bodies of at least ResponseCompressor.MIN_BYTES are
+     * compressed if the client accepts it.
+     * @param context the current request
+     * @param value the value to send
+     */
+    private void respond(Context context, Object value) throws IOException {
+        WireFormat format = WireFormat.forAccept(context.header("Accept"));
+        context.contentType(format.getMediaType());
+        send(context, compress(context, null, format.write(value)));
+    }
+
+    /**
+     * Compresses an encoded body with the encoding the client prefers, if it is large enough to be worth it
+     * @param context the current request
+     * @param version the version tag of the messages in the body, if it is to be cached
+     * @param bytes the encoded body
+     * @return the body to send
+     */
+    private ResponseCache.Body compress(Context context, String version, byte[] bytes) throws IOException {
+        ResponseCompressor.Encoding encoding = compressor.negotiate(context.header("Accept-Encoding"));
+
+        if(encoding == ResponseCompressor.Encoding.IDENTITY || !compressor.worthCompressing(bytes.length)) {
+            return new ResponseCache.Body(version, bytes, null);
+        }
+
+        return new ResponseCache.Body(version, compressor.compress(context.endpointHandlerPath(), bytes, encoding), encoding.getToken());
+    }
+
+    /**
+     * Sends a body, already encoded and compressed, as the response body
+     * @param context the current request
+     * @param body the body to send
+     */
+    private void send(Context context, ResponseCache.Body body) {
+        context.header("Vary", "Accept, Accept-Encoding");
+
+        if(body.contentEncoding != null) {
+            context.header("Content-Encoding", body.contentEncoding);
+        }
+
+        context.result(body.bytes);
+    }
+
+    /**
+     * @param context the current request
+     * @return true if the client asked for a single page rather than the whole list
+     */
+    private boolean isPageRequest(Context context) {
+        return context.queryParam("after") != null || context.queryParam("limit") != null;
+    }
+
+    /**
+     * @param context the current request
+     * @return the "after" cursor query parameter, or 0 (the start of the list) if it is absent
+     */
+    private int afterParam(Context context) {
+        String after = context.queryParam("after");
+        return (after == null) ? 0 : Integer.parseInt(after);
+    }
+
+    /**
+     * @param context the current request
+     * @return the "limit" query parameter, or the default page size if it is absent
+     */
+    private int limitParam(Context context) {
+        String limit = context.queryParam("limit");
+        return (limit == null) ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+    }
+
+    /**
+     * A handler for the total number of messages. Responds with a MessageCount, answered from the in-memory statistics.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void messageStatsHandler(Context context) throws IOException {
+        respond(context, new MessageCount(null, null, messageService.getMessageCount()));
+    }
+
+    /**
+     * A handler for the number of messages an account has posted. Responds with a MessageCount, answered from the in-memory
+     * statistics; an account with no messages, or no account at all, has a count of 0. A malformed account_id sets the
+     * status to 400.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void accountStatsHandler(Context context) throws IOException {
+        try {
+            int account_id = Integer.parseInt(context.pathParam("account_id"));
+            respond(context, new MessageCount(account_id, null, messageService.getMessageCountFromSender(account_id)));
+
+        } catch(NumberFormatException e) {
+            System.out.println(e.getMessage());
+            context.status(400);
+        }
+    }
+
+    /**
+     * A handler for the number of messages posted in each of the last few minutes or hours. Responds with a JSON array of
+     * MessageCounts, oldest first, one for each of the "last" minutes or hours up to and including the current one. A
+     * malformed "last", or one outside the span the statistics keep, sets the status to 400.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param defaultLast the number of buckets when the request has no "last"
+     * @param counts gets the counts for a number of buckets, or null if the number is out of range
+     */
+    private void messageVolumeHandler(Context context, int defaultLast, IntFunction<List<MessageCount>> counts) throws IOException {
+        try {
+            String last = context.queryParam("last");
+            List<MessageCount> volume = counts.apply((last == null) ? defaultLast : Integer.parseInt(last));
+
+            if(volume == null) {
+                context.status(400);
+            } else {
+                respond(context, volume);
+            }
+
+        } catch(NumberFormatException e) {
+            System.out.println(e.getMessage());
+            context.status(400);
+        }
+    }
+
+    /**
+     * A handler for exporting the application's operational metrics (connection pool gauges, timers and counters) in the
+     * Prometheus text format.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void metricsHandler(Context context) {
+        context.contentType("text/plain; version=0.0.4; charset=utf-8");
+        context.result(Metrics.render());
+    }
 }
\ No newline at end of file
@@ -5,14 +5,145 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import Model.Account;
+import org.h2.api.ErrorCode;
+
+import Util.ConcurrentBitSet;
+import Util.Config;
 import Util.ConnectionUtil;
+import Util.Metrics;
+import Util.PrefixIndex;
+import Util.ScalableBloomFilter;
 
 /***
  * class for managing access to the Account table in the database
  */
-public class AccountDAO {
+public class AccountDAO implements AccountStore {
+    /***
+     * The SQL run by each method. Kept together, and public, so the query plans can be checked against the indexes
+     * created by the schema migrations.
+     */
+    public static final String USERNAME_COUNT_SQL = "SELECT COUNT(username) FROM account WHERE username = ?";
+    public static final String LOGIN_SQL = "SELECT account_id, username, password FROM account WHERE username = ? AND password = ?";
+    public static final String INSERT_ACCOUNT_SQL = "INSERT INTO account (username, password) VALUES (?, ?)";
+    public static final String LOAD_ACCOUNTS_SQL = "SELECT account_id, username FROM account ORDER BY username";
+
+    /***
+     * Every account id known to exist. Accounts are never deleted, so an id in this set always exists in the database;
+     * an id missing from it may still exist if another process registered it, so a miss has to be checked against the
+     * database before it is trusted.
+     */
+    private final ConcurrentBitSet accountIds = new ConcurrentBitSet();
+    /***
+     * Every username that exists, as a Bloom filter: a username it has never seen is definitely free, so registration can
+     * skip the uniqueness query for it.
+     */
+    private final ScalableBloomFilter usernames = new ScalableBloomFilter(
+            Config.getInt("socialmedia.usernames.bloom.initialCapacity", 10_000),
+            Config.getDouble("socialmedia.usernames.bloom.fpp", 0.01));
+    /***
+     * Every username with its account id, sorted, for finding usernames by prefix without asking the database
+     */
+    private final PrefixIndex usernameIndex = new PrefixIndex(Config.getInt("socialmedia.usernames.index.mergeThreshold", 4096));
+    private final LongAdder accountIdHits = Metrics.counter("account_id_index_hits", "account existence checks answered from memory");
+    private final LongAdder accountIdMisses = Metrics.counter("account_id_index_misses", "account existence checks that had to go to the database");
+
+    /***
+     * Creates the DAO and loads the id and username of every existing account into memory
+     */
+    public AccountDAO() {
+        loadAccounts();
+
+        Metrics.gauge("account_id_index_size", "account ids held in memory", accountIds::size);
+        Metrics.gauge("account_id_index_bytes", "memory used by the in-memory account id index", accountIds::sizeInBytes);
+        Metrics.gauge("username_bloom_target_fpp", "configured false-positive rate of the username Bloom filter", usernames::getTargetFalsePositiveRate);
+        Metrics.gauge("username_bloom_expected_fpp", "false-positive rate of the username Bloom filter estimated from its fill", usernames::getExpectedFalsePositiveRate);
+        Metrics.gauge("username_bloom_stages", "filters in the scalable username Bloom filter", usernames::getStageCount);
+        Metrics.gauge("username_bloom_bytes", "memory used by the username Bloom filter", usernames::sizeInBytes);
+        Metrics.gauge("username_index_size", "usernames held in the username prefix index", usernameIndex::size);
+        Metrics.gauge("username_index_bytes", "memory used by the packed part of the username prefix index", usernameIndex::sizeInBytes);
+    }
+
+    /***
+     * Reads the id and username of every account into the in-memory account id index, username filter and username
+     * prefix index
+     */
+    private void loadAccounts() {
+        // read in username order, off the unique index, so the prefix index has next to no sorting to do
+        Map<String, Integer> loaded = new LinkedHashMap<>();
+
+        try(Connection connection = ConnectionUtil.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultRows = statement.executeQuery(LOAD_ACCOUNTS_SQL)) {
+            while(resultRows.next()) { // iterate over the rows
+                accountIds.add(resultRows.getInt(1));
+                usernames.add(resultRows.getString(2));
+                loaded.put(resultRows.getString(2), resultRows.getInt(1));
+            }
+
+            // built in one go rather than one username at a time
+            usernameIndex.addAll(loaded);
+
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /***
+     * Checks the in-memory account id index. Never touches the database.
+     * @param account_id the id to look for
+     * @return true if the account is known to exist, false if it is not in the index
+     */
+    public boolean isKnownAccountId(int account_id) {
+        boolean known = accountIds.contains(account_id);
+
+        if(known) {
+            accountIdHits.increment();
+        } else {
+            accountIdMisses.increment();
+        }
+
+        return known;
+    }
+
+    /***
+     * Checks the username Bloom filter. Never touches the database.
+     * @param username the username to look for
+     * @return false if no account has the username, true if one may have it
+     */
+    public boolean mightHaveUsername(String username) {
+        return usernames.mightContain(username);
+    }
+
+    /***
+     * Finds accounts by the start of their username, from the in-memory username prefix index. Never touches the database.
+     * @param prefix the start of the username, matched case-sensitively
+     * @param limit the most accounts to return
+     * @return the accounts, ordered by username, with no password
+     */
+    public List<Account> getAccountsByUsernamePrefix(String prefix, int limit) {
+        List<Account> accounts = new ArrayList<>();
+
+        for(PrefixIndex.Entry entry : usernameIndex.findByPrefix(prefix, limit)) {
+            accounts.add(new Account(entry.getId(), entry.getKey(), null));
+        }
+
+        return accounts;
+    }
+
+    /***
+     * Records in the in-memory index an account id that was found in the database
+     * @param account_id the id of an existing account
+     */
+    public void addKnownAccountId(int account_id) {
+        accountIds.add(account_id);
+    }
 
     /***
      * Finds the number of usernames in the database
@@ -20,30 +151,24 @@ public class AccountDAO {
      * @return the number of matching usernames
      */
     public int getUsernameCount(String username) {
-        // connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "SELECT COUNT(username) FROM account WHERE username = ?";
+        //Check if name is unique
 
-        try {
-            //Check if name is unique
-
-            //pass the SQL statement into PreparedStatement for SQL Injection protection
-            PreparedStatement cleanValidationStatement = connection.prepareStatement(sql);
+        // connect to the database, and pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanValidationStatement = connection.prepareStatement(USERNAME_COUNT_SQL)) {
 
             //set the empty placeholder value
             cleanValidationStatement.setString(1, username);
 
             //get the resulting rows from the query execution
-            ResultSet usernames = cleanValidationStatement.executeQuery();
-
-            //go to the first row
-            usernames.next();
-
-            int finalResult = usernames.getInt(1);
+            try(ResultSet usernames = cleanValidationStatement.executeQuery()) {
+                //go to the first row
+                usernames.next();
 
-            connection.close();
+                int finalResult = usernames.getInt(1);
 
-            return finalResult;
+                return finalResult;
+            }
 
         } catch(SQLException e) {
             System.out.println(e.getMessage());
@@ -59,30 +184,24 @@ public class AccountDAO {
      * @return The Logged in account
      */
     public Account accountLogin(String username, String password) {
-        // connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "SELECT account_id, username, password FROM account WHERE username = ? AND password = ?";
-
-        try {
-            //pass the SQL statement into PreparedStatement for SQL Injection protection
-            PreparedStatement cleanValidationStatement = connection.prepareStatement(sql);
+        // connect to the database, and pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanValidationStatement = connection.prepareStatement(LOGIN_SQL)) {
 
             //set the empty placeholder values
             cleanValidationStatement.setString(1, username);
             cleanValidationStatement.setString(2, password);
 
             //get the resulting rows from the query execution
-            ResultSet resultRow = cleanValidationStatement.executeQuery();
-
-            //go to the first row
-            resultRow.next();
-
-            // save the row as an Account object
-            Account loggedInAccount = new Account(resultRow.getInt("account_id"), resultRow.getString("username"), resultRow.getString("password"));
+            try(ResultSet resultRow = cleanValidationStatement.executeQuery()) {
+                //go to the first row
+                resultRow.next();
 
-            connection.close();
+                // save the row as an Account object
+                Account loggedInAccount = new Account(resultRow.getInt("account_id"), resultRow.getString("username"), resultRow.getString("password"));
 
-            return loggedInAccount;
+                return loggedInAccount;
+            }
 
         } catch(SQLException e) {
             System.out.println(e.getMessage());
@@ -94,16 +213,12 @@ public class AccountDAO {
     /***
      * Registers a new Account to the database
      * @param account the new account as an Account object
-     * @return the registered account as an Account object
+     * @return the registered account as an Account object, or null if the username is already taken
      */
     public Account registerAccount(Account account) {
-        // connect to the database
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
-
-        try {
-            //pass the SQL statement into PreparedStatement for SQL Injection protection
-            PreparedStatement cleanStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        // connect to the database, and pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(INSERT_ACCOUNT_SQL, Statement.RETURN_GENERATED_KEYS)) {
 
             //set the empty placeholder values
             cleanStatement.setString(1, account.getUsername());
@@ -111,21 +226,27 @@ public class AccountDAO {
 
             //get the resulting rows from the query execution
             cleanStatement.executeUpdate();
-            ResultSet resultRow = cleanStatement.getGeneratedKeys();
+            Account newAccount;
 
-            //go to the first row
-            resultRow.next();
+            try(ResultSet resultRow = cleanStatement.getGeneratedKeys()) {
+                //go to the first row
+                resultRow.next();
 
-            Account newAccount = new Account(resultRow.getInt(1), account.getUsername(), account.getPassword());
+                newAccount = new Account(resultRow.getInt(1), account.getUsername(), account.getPassword());
+            }
 
-            connection.close();
+            accountIds.add(newAccount.getAccount_id());
+            usernames.add(newAccount.getUsername());
+            usernameIndex.add(newAccount.getUsername(), newAccount.getAccount_id());
 
             return newAccount;
 
         } catch(SQLException e) {
-            System.out.println(e.getMessage());
+            if(e.getErrorCode() != ErrorCode.DUPLICATE_KEY_1) {
+                System.out.println(e.getMessage());
+            }
         }
-        
+
         return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package DAO;
+
+import java.util.List;
+
+import Model.Account;
+
+/***
+ * Storage for accounts. AccountDAO keeps them in the H2 database; MemoryAccountStore keeps them in memory.
+ * Stores.newAccountStore picks one according to socialmedia.storage.
+ */
+public interface AccountStore {
+    /***
+     * Never touches the database.
+     * @param account_id the id to look for
+     * @return true if the account is known to exist, false if it does not exist or is not known to
+     */
+    boolean isKnownAccountId(int account_id);
+
+    /***
+     * Records an account id that was found to exist
+     * @param account_id the id of an existing account
+     */
+    void addKnownAccountId(int account_id);
+
+    /***
+     * Never touches the database.
+     * @param username the username to look for
+     * @return false if no account has the username, true if one may have it
+     */
+    boolean mightHaveUsername(String username);
+
+    /***
+     * @param username a username
+     * @return the number of accounts with the username
+     */
+    int getUsernameCount(String username);
+
+    /***
+     * Never touches the database.
+     * @param prefix the start of the username, matched case-sensitively
+     * @param limit the most accounts to return
+     * @return the accounts, ordered by username, with no password
+     */
+    List<Account> getAccountsByUsernamePrefix(String prefix, int limit);
+
+    /***
+     * @param username the username
+     * @param password the password
+     * @return the account, or null if no account has that username and password
+     */
+    Account accountLogin(String username, String password);
+
+    /***
+     * @param account the username and password of the new account
+     * @return the new account with its account_id, or null if it could not be registered
+     */
+    Account registerAccount(Account account);
+}
@@ -0,0 +1,177 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import Model.Message;
+import Util.Metrics;
+
+/***
+ * Queues message inserts from concurrent callers and writes them to the database in batches, one transaction per batch,
+ * so that many posts share the cost of a single commit.
+ *
+ * A single flusher thread takes the first queued message, then keeps collecting until either maxBatch messages are
+ * waiting or maxDelayMillis have passed since the first one, and inserts them with MessageStore.insertMessages. Each
+ * caller's future completes only once its batch has been committed. When the queue is full, callers wait for room.
+ */
+public class GroupCommitWriter {
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MessageStore messageStore;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue;
+
+    private final Metrics.Summary batchSizes = Metrics.summary("group_commit_batch_size", "messages written per group commit");
+    private final Metrics.Timer flushes = Metrics.timer("group_commit_flush", "time taken to write and commit one batch of messages");
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    /***
+     * @param messageStore the store that writes each batch
+     * @param maxBatch the most messages to write in one batch
+     * @param maxDelayMillis the longest the first message of a batch waits for others to join it
+     */
+    public GroupCommitWriter(MessageStore messageStore, int maxBatch, long maxDelayMillis) {
+        this.messageStore = messageStore;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new LinkedBlockingQueue<>(maxBatch * 64);
+
+        Metrics.gauge("group_commit_queue_depth", "messages waiting for the next group commit", queue::size);
+    }
+
+    /***
+     * Queues a message to be inserted with the next batch, starting the flusher thread if it is not running
+     * @param message the message to insert
+     * @return completes with the inserted message once it is committed, or with null if it could not be inserted
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        Pending pending = new Pending(message);
+        start();
+
+        try {
+            queue.put(pending);
+
+            // a shutdown that raced the put would leave the message queued with nothing to flush it
+            if(!running) {
+                start();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result.complete(null);
+        }
+
+        return pending.result;
+    }
+
+    private synchronized void start() {
+        if(running) {
+            return;
+        }
+
+        running = true;
+        flusher = new Thread(this::run, "group-commit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /***
+     * Writes everything still queued and stops the flusher thread. A later submit starts it again.
+     */
+    public synchronized void shutdown() {
+        if(!running) {
+            return;
+        }
+
+        running = false;
+
+        try {
+            flusher.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+
+        while(running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if(first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+
+                while(batch.size() < maxBatch) {
+                    // take whatever is already queued before waiting for more
+                    if(queue.drainTo(batch, maxBatch - batch.size()) > 0) {
+                        continue;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+
+                    if(next == null) {
+                        break;
+                    }
+
+                    batch.add(next);
+                }
+            } catch(InterruptedException e) {
+                // write what has been collected; the loop ends once shutdown has been asked for and the queue is empty
+            }
+
+            if(!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+
+        for(Pending pending : batch) {
+            messages.add(pending.message);
+        }
+
+        long start = System.nanoTime();
+        List<Message> inserted;
+
+        try {
+            inserted = messageStore.insertMessages(messages);
+        } catch(RuntimeException e) {
+            for(Pending pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+
+            return;
+        }
+
+        flushes.record(System.nanoTime() - start);
+        batchSizes.record(batch.size());
+
+        for(int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(inserted.get(i));
+        }
+    }
+
+    private static class Pending {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.h2.api.ErrorCode;
+
+import Model.Account;
+import Util.ConcurrentBitSet;
+import Util.Config;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import Util.PrefixIndex;
+
+/***
+ * Keeps every account in memory, for the in-memory storage engine (see Stores). The accounts are loaded from the
+ * database when the store is created, and accounts registered afterwards are inserted into the database first, which
+ * hands out their account_id and, with its unique index, settles races for a username, before they are added here.
+ *
+ * Accounts are keyed by username in a concurrent map. Every lookup is exact, so unlike AccountDAO there is no Bloom
+ * filter and no miss to confirm.
+ */
+public class MemoryAccountStore implements AccountStore {
+    public static final String LOAD_SQL = "SELECT account_id, username, password FROM account ORDER BY username";
+    /***
+     * The width of the account table's varchar columns, which the database would hold usernames and passwords to
+     */
+    private static final int MAX_LENGTH = 255;
+
+    private final Map<String, Account> accountsByUsername = new ConcurrentHashMap<>();
+    private final ConcurrentBitSet accountIds = new ConcurrentBitSet();
+    private final PrefixIndex usernameIndex = new PrefixIndex(Config.getInt("socialmedia.usernames.index.mergeThreshold", 4096));
+
+    /***
+     * Creates the store and loads every account from the database
+     */
+    public MemoryAccountStore() {
+        Map<String, Integer> loaded = new LinkedHashMap<>();
+
+        try(Connection connection = ConnectionUtil.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultRows = statement.executeQuery(LOAD_SQL)) {
+            while(resultRows.next()) { // iterate over the rows
+                Account account = new Account(resultRows.getInt(1), resultRows.getString(2), resultRows.getString(3));
+                accountsByUsername.put(account.getUsername(), account);
+                accountIds.add(account.getAccount_id());
+                loaded.put(account.getUsername(), account.getAccount_id());
+            }
+
+            usernameIndex.addAll(loaded);
+
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
+
+        Metrics.gauge("memory_store_accounts", "accounts held by the in-memory account store", accountsByUsername::size);
+    }
+
+    /***
+     * @param account_id an account id
+     * @return true if the account exists
+     */
+    boolean exists(int account_id) {
+        return accountIds.contains(account_id);
+    }
+
+    public boolean isKnownAccountId(int account_id) {
+        return exists(account_id);
+    }
+
+    public void addKnownAccountId(int account_id) {
+        // every existing account is already known
+    }
+
+    public boolean mightHaveUsername(String username) {
+        return accountsByUsername.containsKey(username);
+    }
+
+    public int getUsernameCount(String username) {
+        return accountsByUsername.containsKey(username) ? 1 : 0;
+    }
+
+    public List<Account> getAccountsByUsernamePrefix(String prefix, int limit) {
+        List<Account> accounts = new ArrayList<>();
+
+        for(PrefixIndex.Entry entry : usernameIndex.findByPrefix(prefix, limit)) {
+            accounts.add(new Account(entry.getId(), entry.getKey(), null));
+        }
+
+        return accounts;
+    }
+
+    public Account accountLogin(String username, String password) {
+        Account account = accountsByUsername.get(username);
+
+        if(account == null || !account.getPassword().equals(password)) {
+            return null;
+        }
+
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+
+    public Account registerAccount(Account account) {
+        if(account.getUsername() == null || account.getPassword() == null || account.getUsername().length() > MAX_LENGTH
+                || account.getPassword().length() > MAX_LENGTH || accountsByUsername.containsKey(account.getUsername())) {
+            return null;
+        }
+
+        Account newAccount = insertAccount(account);
+
+        if(newAccount == null) {
+            return null;
+        }
+
+        accountsByUsername.put(newAccount.getUsername(), newAccount);
+        accountIds.add(newAccount.getAccount_id());
+        usernameIndex.add(newAccount.getUsername(), newAccount.getAccount_id());
+
+        return new Account(newAccount.getAccount_id(), newAccount.getUsername(), newAccount.getPassword());
+    }
+
+    /***
+     * Inserts the account into the database
+     * @return the account with the account_id the database gave it, or null if the username is already taken there
+     */
+    private Account insertAccount(Account account) {
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(AccountDAO.INSERT_ACCOUNT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            cleanStatement.setString(1, account.getUsername());
+            cleanStatement.setString(2, account.getPassword());
+            cleanStatement.executeUpdate();
+
+            try(ResultSet key = cleanStatement.getGeneratedKeys()) {
+                return key.next() ? new Account(key.getInt(1), account.getUsername(), account.getPassword()) : null;
+            }
+
+        } catch(SQLException e) {
+            if(e.getErrorCode() != ErrorCode.DUPLICATE_KEY_1) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,949 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+import Model.Message;
+import Util.Metrics;
+
+/***
+ * Keeps every message in memory, in columns of primitives, for the in-memory storage engine (see Stores). The messages
+ * are loaded from the database when the store is created, and every change is written through to the database before
+ * it is applied in memory, so the database stays the durable copy and a change it refuses is never seen in memory.
+ * Reads never go to the database, so rows changed there by anything but this store after it is created are not seen.
+ *
+ * Rows are appended in message_id order to chunks of CHUNK_SIZE rows. A chunk holds each column as an array: ids and
+ * posted_by as int[], time_posted_epoch as long[], and message_text as UTF-8 bytes packed back to back in one byte[]
+ * with an offset and length per row. A deleted row stays in place, marked deleted, so rows never move; its text, and the
+ * old text of an updated row, is reclaimed when the chunk's text array next fills up. A message costs its text plus
+ * about 60 bytes, counting the indexes and the arrays' spare room (memory_store_bytes in StorageEngineBenchmark), against
+ * well over 100 for a Message object in a map.
+ *
+ * On top of the columns sit two indexes: message_id to row, in a hash table of ints split into ID_STRIPES stripes, and
+ * each sender's rows, in row (and so message_id) order. Access is lock-striped: each chunk and each stripe of the id
+ * index has its own lock, so reads and writes of different rows rarely meet. Appends are serialized, from the database
+ * insert that hands out their message_ids to the append itself, so rows stay in message_id order; a batch from
+ * insertMessages is one insert, so group commit still shares that wait among many messages. Updates and deletes of the
+ * same message_id are serialized the same way, on one of ID_STRIPES write locks, so the database and the store apply
+ * them in the same order. A row's id, sender and time never change once appended, so scans read those without locks.
+ */
+public class MemoryMessageStore implements MessageStore {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int ROW_IN_CHUNK = CHUNK_SIZE - 1;
+    private static final int ID_STRIPES = 64;
+    /***
+     * The width of the message table's message_text column, which the database would hold texts to
+     */
+    private static final int MAX_TEXT_LENGTH = 255;
+    /***
+     * The bytes each row takes in a chunk's columns, besides its text; the indexes and spare room bring a message to about
+     * 60 bytes besides its text
+     */
+    private static final int ROW_BYTES = 4 + 4 + 8 + 4 + 2 + 1;
+
+    private final MemoryAccountStore accounts;
+    private final MessageDAO database = new MessageDAO();
+    private final MessageVersions versions = new MessageVersions();
+    /***
+     * Held from a database insert until its rows are appended
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+    /***
+     * Held from a database update or delete of a message_id until it is applied in memory, striped by message_id
+     */
+    private final ReentrantLock[] writeLocks = new ReentrantLock[ID_STRIPES];
+    private volatile Chunk[] chunks = new Chunk[0];
+    /***
+     * The number of rows appended; every row below it is fully written
+     */
+    private volatile int rowCount;
+    private final IdIndex idIndex = new IdIndex();
+    private final Map<Integer, SenderRows> rowsBySender = new ConcurrentHashMap<>();
+
+    /***
+     * Creates the store and loads every message from the database
+     * @param accounts the accounts the messages' senders must belong to
+     */
+    public MemoryMessageStore(MemoryAccountStore accounts) {
+        this.accounts = accounts;
+
+        for(int i = 0; i < ID_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+
+        try {
+            boolean loaded = database.streamAllMessages((message_id, posted_by, message_text, time_posted_epoch) -> {
+                appendLock.lock();
+
+                try {
+                    appendRow(message_id, posted_by, message_text.getBytes(StandardCharsets.UTF_8), time_posted_epoch);
+                } finally {
+                    appendLock.unlock();
+                }
+            });
+
+            if(!loaded) {
+                System.out.println("the in-memory message store could not be loaded");
+            }
+        } catch(IOException e) {
+            System.out.println(e.getMessage());
+        }
+
+        Metrics.gauge("memory_store_messages", "messages held by the in-memory message store", idIndex::size);
+        Metrics.gauge("memory_store_bytes", "memory used by the in-memory message store's columns and indexes", this::sizeInBytes);
+    }
+
+    public MessageVersions getVersions() {
+        return versions;
+    }
+
+    public int getPosterIdCount(int posted_by) {
+        return accounts.exists(posted_by) ? 1 : 0;
+    }
+
+    public Set<Integer> getExistingPosterIds(Collection<Integer> posted_by) {
+        Set<Integer> existing = new HashSet<>();
+
+        for(int account_id : posted_by) {
+            if(accounts.exists(account_id)) {
+                existing.add(account_id);
+            }
+        }
+
+        return existing;
+    }
+
+    /***
+     * @return the stored message, or null if its sender does not exist, its text would not fit the message table or the
+     * database insert failed
+     */
+    public Message insertMessage(Message message) {
+        if(!fits(message)) {
+            return null;
+        }
+
+        appendLock.lock();
+
+        try {
+            Message inserted = database.insertMessage(message);
+
+            if(inserted != null) {
+                append(inserted);
+            }
+
+            return inserted;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /***
+     * Inserts the messages that fit with one MessageDAO.insertMessages, so they share its transaction, and appends the ones
+     * it stored
+     */
+    public List<Message> insertMessages(List<Message> messages) {
+        List<Message> fitting = new ArrayList<>(messages.size());
+        boolean[] fit = new boolean[messages.size()];
+
+        for(int i = 0; i < fit.length; i++) {
+            fit[i] = fits(messages.get(i));
+
+            if(fit[i]) {
+                fitting.add(messages.get(i));
+            }
+        }
+
+        List<Message> stored;
+        appendLock.lock();
+
+        try {
+            stored = fitting.isEmpty() ? fitting : database.insertMessages(fitting);
+
+            for(Message message : stored) {
+                if(message != null) {
+                    append(message);
+                }
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        List<Message> inserted = new ArrayList<>(messages.size());
+        int next = 0;
+
+        for(boolean fitted : fit) {
+            inserted.add(fitted ? stored.get(next++) : null);
+        }
+
+        return inserted;
+    }
+
+    /***
+     * @return true if the message's sender exists and its text fits the message table, checked before going to the database
+     */
+    private boolean fits(Message message) {
+        String text = message.getMessage_text();
+        return accounts.exists(message.getPosted_by()) && text != null && text.length() <= MAX_TEXT_LENGTH;
+    }
+
+    /***
+     * Appends a message the database has stored, with appendLock held
+     */
+    private void append(Message message) {
+        appendRow(message.getMessage_id(), message.getPosted_by(), message.getMessage_text().getBytes(StandardCharsets.UTF_8),
+                message.getTime_posted_epoch());
+    }
+
+    /***
+     * Appends a row, with appendLock held
+     */
+    private void appendRow(int id, int posted_by, byte[] text, long time_posted_epoch) {
+        int row = rowCount;
+
+        if((row & ROW_IN_CHUNK) == 0) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[grown.length - 1] = new Chunk();
+            chunks = grown;
+        }
+
+        Chunk chunk = chunk(row);
+        int index = row & ROW_IN_CHUNK;
+        chunk.lock.writeLock().lock();
+
+        try {
+            chunk.ids[index] = id;
+            chunk.postedBy[index] = posted_by;
+            chunk.epochs[index] = time_posted_epoch;
+            chunk.setText(index, text);
+            chunk.rows = index + 1;
+        } finally {
+            chunk.lock.writeLock().unlock();
+        }
+
+        rowCount = row + 1;
+        idIndex.put(id, row);
+        rowsBySender.computeIfAbsent(posted_by, key -> new SenderRows()).add(row);
+    }
+
+    private Chunk chunk(int row) {
+        return chunks[row >>> CHUNK_BITS];
+    }
+
+    private int id(int row) {
+        return chunk(row).ids[row & ROW_IN_CHUNK];
+    }
+
+    private long epoch(int row) {
+        return chunk(row).epochs[row & ROW_IN_CHUNK];
+    }
+
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+        int count = rowCount;
+
+        for(int row = 0; row < count; ) {
+            row = readChunk(row, count, messages, Integer.MAX_VALUE);
+        }
+
+        return messages;
+    }
+
+    public List<Message> getMessagesBySenderId(int sender_id) {
+        int[] rows = senderRows(sender_id);
+        List<Message> messages = new ArrayList<>(rows.length);
+        readRows(rows, 0, rows.length, messages);
+        return messages;
+    }
+
+    public boolean streamAllMessages(MessageRowHandler handler) throws IOException {
+        List<Message> batch = new ArrayList<>(CHUNK_SIZE);
+        int count = rowCount;
+
+        // a chunk at a time, so that no lock is held while the handler writes
+        for(int row = 0; row < count; ) {
+            batch.clear();
+            row = readChunk(row, count, batch, Integer.MAX_VALUE);
+            handAll(batch, handler);
+        }
+
+        return true;
+    }
+
+    public boolean streamMessagesBySenderId(int sender_id, MessageRowHandler handler) throws IOException {
+        streamRows(senderRows(sender_id), handler);
+        return true;
+    }
+
+    public boolean streamMessagesPostedBetween(long since, long until, MessageRowHandler handler) throws IOException {
+        int count = rowCount;
+        int[] matches = new int[16];
+        int found = 0;
+
+        for(int row = 0; row < count; row++) {
+            long epoch = epoch(row);
+
+            if(epoch >= since && epoch < until) {
+                if(found == matches.length) {
+                    matches = Arrays.copyOf(matches, found * 2);
+                }
+
+                matches[found++] = row;
+            }
+        }
+
+        streamRows(sortByTime(Arrays.copyOf(matches, found)), handler);
+        return true;
+    }
+
+    public boolean streamMessagesBySenderIdPostedBetween(int sender_id, long since, long until, MessageRowHandler handler) throws IOException {
+        int[] rows = senderRows(sender_id);
+        int found = 0;
+
+        for(int row : rows) {
+            long epoch = epoch(row);
+
+            if(epoch >= since && epoch < until) {
+                rows[found++] = row;
+            }
+        }
+
+        streamRows(sortByTime(Arrays.copyOf(rows, found)), handler);
+        return true;
+    }
+
+    /***
+     * @param rows rows in row order
+     * @return the rows in time_posted_epoch order, keeping row (and so message_id) order among rows with the same time
+     */
+    private int[] sortByTime(int[] rows) {
+        boolean sorted = true;
+
+        for(int i = 1; i < rows.length && sorted; i++) {
+            sorted = epoch(rows[i - 1]) <= epoch(rows[i]);
+        }
+
+        // messages are mostly posted in time order, so this is usually all it takes
+        if(sorted) {
+            return rows;
+        }
+
+        // a stable sort, which is also quick on the nearly sorted rows it will usually get
+        Integer[] boxed = Arrays.stream(rows).boxed().toArray(Integer[]::new);
+        Arrays.sort(boxed, Comparator.comparingLong(this::epoch));
+        return Arrays.stream(boxed).mapToInt(Integer::intValue).toArray();
+    }
+
+    public List<Message> getMessagesAfter(int after, int limit) {
+        List<Message> page = new ArrayList<>(Math.min(limit, CHUNK_SIZE));
+        int count = rowCount;
+
+        for(int row = firstRowAfter(after, count); row < count && page.size() < limit; ) {
+            row = readChunk(row, count, page, limit);
+        }
+
+        return page;
+    }
+
+    /***
+     * @return the first row whose message_id is greater than after, found by binary search since ids grow with rows
+     */
+    private int firstRowAfter(int after, int count) {
+        int low = 0;
+        int high = count;
+
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+
+            if(id(middle) <= after) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    public List<Message> getMessagesBySenderIdAfter(int sender_id, int after, int limit) {
+        SenderRows senderRows = rowsBySender.get(sender_id);
+        int[] rows = (senderRows == null) ? new int[0] : senderRows.after(after, limit);
+        List<Message> page = new ArrayList<>(rows.length);
+        readRows(rows, 0, rows.length, page);
+        return page;
+    }
+
+    public Message getMessageById(int id) {
+        int row = idIndex.get(id);
+
+        if(row < 0) {
+            return null;
+        }
+
+        Chunk chunk = chunk(row);
+        int index = row & ROW_IN_CHUNK;
+        chunk.lock.readLock().lock();
+
+        try {
+            return chunk.deleted[index] ? null : chunk.read(index);
+        } finally {
+            chunk.lock.readLock().unlock();
+        }
+    }
+
+    /***
+     * @return the updated message, or null if there is no message with the id, the text would not fit the message table
+     * or the database update failed
+     */
+    public Message updateMessage(int id, String newMessage) {
+        ReentrantLock writeLock = writeLock(id);
+        writeLock.lock();
+
+        try {
+            int row = idIndex.get(id);
+
+            // a message the store does not hold is not updated in the database either, so the two stay the same
+            if(row < 0 || newMessage == null || newMessage.length() > MAX_TEXT_LENGTH || database.updateMessage(id, newMessage) == null) {
+                return null;
+            }
+
+            byte[] text = newMessage.getBytes(StandardCharsets.UTF_8);
+            Chunk chunk = chunk(row);
+            int index = row & ROW_IN_CHUNK;
+            chunk.lock.writeLock().lock();
+
+            try {
+                int oldLength = chunk.textLengths[index];
+                chunk.setText(index, text);
+                chunk.textGarbage += oldLength;
+                return chunk.read(index);
+            } finally {
+                chunk.lock.writeLock().unlock();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /***
+     * @return the deleted message, or null if there is no message with the id or the database delete failed
+     */
+    public Message deleteMessage(int id) {
+        ReentrantLock writeLock = writeLock(id);
+        writeLock.lock();
+
+        try {
+            int row = idIndex.get(id);
+
+            if(row < 0 || database.deleteMessage(id) == null) {
+                return null;
+            }
+
+            Message changed;
+            Chunk chunk = chunk(row);
+            int index = row & ROW_IN_CHUNK;
+            chunk.lock.writeLock().lock();
+
+            try {
+                changed = chunk.read(index);
+                chunk.deleted[index] = true;
+                chunk.textGarbage += chunk.textLengths[index];
+            } finally {
+                chunk.lock.writeLock().unlock();
+            }
+
+            idIndex.remove(id);
+            rowsBySender.get(changed.getPosted_by()).remove(row);
+            return changed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private ReentrantLock writeLock(int id) {
+        return writeLocks[id & (ID_STRIPES - 1)];
+    }
+
+    public List<Message> getMessagesByIds(Collection<Integer> ids) {
+        List<Message> messages = new ArrayList<>(ids.size());
+
+        for(int id : ids) {
+            Message message = getMessageById(id);
+
+            if(message != null) {
+                messages.add(message);
+            }
+        }
+
+        return messages;
+    }
+
+    public List<Message> getMessagesBySenderIds(Collection<Integer> sender_ids) {
+        List<Message> messages = new ArrayList<>();
+
+        // in sender order, as the database returns them
+        for(int sender_id : new TreeSet<>(sender_ids)) {
+            int[] rows = senderRows(sender_id);
+            readRows(rows, 0, rows.length, messages);
+        }
+
+        return messages;
+    }
+
+    public Map<Integer, Long> countMessagesBySender() {
+        Map<Integer, Long> counts = new HashMap<>();
+
+        for(Map.Entry<Integer, SenderRows> entry : rowsBySender.entrySet()) {
+            int size = entry.getValue().size();
+
+            if(size > 0) {
+                counts.put(entry.getKey(), (long) size);
+            }
+        }
+
+        return counts;
+    }
+
+    public Map<Long, Long> countMessagesByTimeBucket(long width, long since, long until) {
+        Map<Long, Long> counts = new HashMap<>();
+        int count = rowCount;
+
+        for(int start = 0; start < count; start += CHUNK_SIZE) {
+            Chunk chunk = chunk(start);
+            int end = Math.min(count - start, CHUNK_SIZE);
+            chunk.lock.readLock().lock();
+
+            try {
+                for(int index = 0; index < end; index++) {
+                    long epoch = chunk.epochs[index];
+
+                    if(!chunk.deleted[index] && epoch >= since && epoch < until) {
+                        counts.merge(epoch / width, 1L, Long::sum);
+                    }
+                }
+            } finally {
+                chunk.lock.readLock().unlock();
+            }
+        }
+
+        return counts;
+    }
+
+    private int[] senderRows(int sender_id) {
+        SenderRows senderRows = rowsBySender.get(sender_id);
+        return (senderRows == null) ? new int[0] : senderRows.toArray();
+    }
+
+    /***
+     * Reads the live rows from a row to the end of its chunk (or to end, if sooner), under the chunk's read lock
+     * @param into receives the messages, until it holds limit of them
+     * @return the row after the last one read
+     */
+    private int readChunk(int row, int end, List<Message> into, int limit) {
+        Chunk chunk = chunk(row);
+        int chunkEnd = Math.min(end, (row | ROW_IN_CHUNK) + 1);
+        chunk.lock.readLock().lock();
+
+        try {
+            for(; row < chunkEnd && into.size() < limit; row++) {
+                int index = row & ROW_IN_CHUNK;
+
+                if(!chunk.deleted[index]) {
+                    into.add(chunk.read(index));
+                }
+            }
+        } finally {
+            chunk.lock.readLock().unlock();
+        }
+
+        return row;
+    }
+
+    /***
+     * Reads the live rows among rows[from] up to rows[to], taking each chunk's read lock once for a run of rows in it
+     */
+    private void readRows(int[] rows, int from, int to, List<Message> into) {
+        int i = from;
+
+        while(i < to) {
+            Chunk chunk = chunk(rows[i]);
+            chunk.lock.readLock().lock();
+
+            try {
+                do {
+                    int index = rows[i] & ROW_IN_CHUNK;
+
+                    if(!chunk.deleted[index]) {
+                        into.add(chunk.read(index));
+                    }
+
+                    i++;
+                } while(i < to && chunk(rows[i]) == chunk);
+            } finally {
+                chunk.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /***
+     * Hands rows to a handler a chunk's worth at a time, so that no lock is held while the handler writes
+     */
+    private void streamRows(int[] rows, MessageRowHandler handler) throws IOException {
+        List<Message> batch = new ArrayList<>(Math.min(rows.length, CHUNK_SIZE));
+
+        for(int from = 0; from < rows.length; from += CHUNK_SIZE) {
+            batch.clear();
+            readRows(rows, from, Math.min(rows.length, from + CHUNK_SIZE), batch);
+            handAll(batch, handler);
+        }
+    }
+
+    private static void handAll(List<Message> messages, MessageRowHandler handler) throws IOException {
+        for(Message message : messages) {
+            handler.row(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+        }
+    }
+
+    /***
+     * @return the approximate memory used by the columns, the text and the indexes, in bytes
+     */
+    private long sizeInBytes() {
+        Chunk[] current = chunks;
+        long bytes = (long) current.length * CHUNK_SIZE * ROW_BYTES + idIndex.sizeInBytes();
+
+        for(Chunk chunk : current) {
+            bytes += chunk.text.length;
+        }
+
+        for(SenderRows senderRows : rowsBySender.values()) {
+            bytes += senderRows.sizeInBytes();
+        }
+
+        return bytes;
+    }
+
+    /***
+     * CHUNK_SIZE rows, column by column. The text of row i is text[textOffsets[i]] up to text[textOffsets[i] +
+     * textLengths[i]]. Guarded by lock, except ids, postedBy and epochs, which never change once a row is appended.
+     */
+    private static final class Chunk {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final int[] ids = new int[CHUNK_SIZE];
+        final int[] postedBy = new int[CHUNK_SIZE];
+        final long[] epochs = new long[CHUNK_SIZE];
+        final int[] textOffsets = new int[CHUNK_SIZE];
+        final short[] textLengths = new short[CHUNK_SIZE];
+        final boolean[] deleted = new boolean[CHUNK_SIZE];
+        byte[] text = new byte[CHUNK_SIZE * 16];
+        int textUsed;
+        /***
+         * Bytes of text no longer used by any row
+         */
+        int textGarbage;
+        int rows;
+
+        Message read(int index) {
+            String message_text = new String(text, textOffsets[index], textLengths[index], StandardCharsets.UTF_8);
+            return new Message(ids[index], postedBy[index], message_text, epochs[index]);
+        }
+
+        /***
+         * Appends a row's text to the text array, with the write lock held
+         */
+        void setText(int index, byte[] bytes) {
+            if(textUsed + bytes.length > text.length) {
+                makeRoom(bytes.length);
+            }
+
+            System.arraycopy(bytes, 0, text, textUsed, bytes.length);
+            textOffsets[index] = textUsed;
+            textLengths[index] = (short) bytes.length;
+            textUsed += bytes.length;
+        }
+
+        /***
+         * Copies the text of the live rows into a new array, so that the text of deleted rows and the old text of
+         * updated rows is dropped. The array doubles unless that would free at least an eighth of it, so that copying
+         * stays rare however the text is written.
+         */
+        private void makeRoom(int needed) {
+            int live = textUsed - textGarbage;
+            int size = text.length;
+
+            while(live + needed > size - size / 8) {
+                size *= 2;
+            }
+
+            byte[] packed = new byte[size];
+            int position = 0;
+
+            for(int i = 0; i < rows; i++) {
+                if(!deleted[i]) {
+                    System.arraycopy(text, textOffsets[i], packed, position, textLengths[i]);
+                    textOffsets[i] = position;
+                    position += textLengths[i];
+                }
+            }
+
+            text = packed;
+            textUsed = position;
+            textGarbage = 0;
+        }
+    }
+
+    /***
+     * A sender's live rows, in ascending order
+     */
+    private final class SenderRows {
+        private int[] rows = new int[4];
+        private int size;
+
+        synchronized void add(int row) {
+            if(size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+
+            rows[size++] = row;
+        }
+
+        synchronized void remove(int row) {
+            int i = Arrays.binarySearch(rows, 0, size, row);
+
+            if(i >= 0) {
+                System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                size--;
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+
+        /***
+         * @return up to limit rows whose message_id is greater than after
+         */
+        synchronized int[] after(int after, int limit) {
+            int low = 0;
+            int high = size;
+
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+
+                if(id(rows[middle]) <= after) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return Arrays.copyOfRange(rows, low, (int) Math.min(size, (long) low + limit));
+        }
+
+        synchronized long sizeInBytes() {
+            return 4L * rows.length;
+        }
+    }
+
+    /***
+     * A hash table from message_id to row, split into stripes that each have their own lock. Lookups first read without
+     * locking and only take the stripe's read lock if a write got in the way.
+     */
+    private static final class IdIndex {
+        private final Stripe[] stripes = new Stripe[ID_STRIPES];
+
+        IdIndex() {
+            for(int i = 0; i < stripes.length; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+
+        private Stripe stripe(int hash) {
+            return stripes[hash & (ID_STRIPES - 1)];
+        }
+
+        /***
+         * @return the row of a message_id, or -1 if there is none
+         */
+        int get(int id) {
+            int hash = hash(id);
+            return stripe(hash).get(id, hash >>> 6);
+        }
+
+        void put(int id, int row) {
+            int hash = hash(id);
+            stripe(hash).put(id, row, hash >>> 6);
+        }
+
+        void remove(int id) {
+            int hash = hash(id);
+            stripe(hash).remove(id, hash >>> 6);
+        }
+
+        int size() {
+            int size = 0;
+
+            for(Stripe stripe : stripes) {
+                size += stripe.size;
+            }
+
+            return size;
+        }
+
+        long sizeInBytes() {
+            long bytes = 0;
+
+            for(Stripe stripe : stripes) {
+                bytes += 4L * stripe.table.length;
+            }
+
+            return bytes;
+        }
+    }
+
+    /***
+     * An open-addressing hash table with linear probing, holding each message_id at table[2 * slot] and its row at
+     * table[2 * slot + 1]. An id of 0 marks a free slot; message_ids start at 1.
+     */
+    private static final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private int[] table = new int[32];
+        private volatile int size;
+
+        int get(int id, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            int row = find(table, id, hash);
+
+            if(!lock.validate(stamp)) {
+                stamp = lock.readLock();
+
+                try {
+                    row = find(table, id, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            return row;
+        }
+
+        private static int find(int[] table, int id, int hash) {
+            int mask = (table.length >>> 1) - 1;
+
+            // bounded by the table size, since a lookup without the lock may race a write
+            for(int probe = 0, slot = hash & mask; probe <= mask; probe++, slot = (slot + 1) & mask) {
+                int key = table[2 * slot];
+
+                if(key == id) {
+                    return table[2 * slot + 1];
+                }
+
+                if(key == 0) {
+                    return -1;
+                }
+            }
+
+            return -1;
+        }
+
+        void put(int id, int row, int hash) {
+            long stamp = lock.writeLock();
+
+            try {
+                if(4 * (size + 1) > 3 * (table.length >>> 1)) {
+                    table = rehash(table, table.length * 2);
+                }
+
+                if(insert(table, id, row, hash)) {
+                    size++;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /***
+         * @return true if the id was not in the table before
+         */
+        private static boolean insert(int[] table, int id, int row, int hash) {
+            int mask = (table.length >>> 1) - 1;
+            int slot = hash & mask;
+
+            while(table[2 * slot] != 0 && table[2 * slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+
+            boolean added = table[2 * slot] == 0;
+            table[2 * slot] = id;
+            table[2 * slot + 1] = row;
+            return added;
+        }
+
+        private static int[] rehash(int[] table, int length) {
+            int[] grown = new int[length];
+
+            for(int i = 0; i < table.length; i += 2) {
+                if(table[i] != 0) {
+                    insert(grown, table[i], table[i + 1], IdIndex.hash(table[i]) >>> 6);
+                }
+            }
+
+            return grown;
+        }
+
+        void remove(int id, int hash) {
+            long stamp = lock.writeLock();
+
+            try {
+                int mask = (table.length >>> 1) - 1;
+                int gap = hash & mask;
+
+                while(table[2 * gap] != id) {
+                    if(table[2 * gap] == 0) {
+                        return;
+                    }
+
+                    gap = (gap + 1) & mask;
+                }
+
+                // move later entries of the run back into the gap, so that probing never stops short of them
+                for(int slot = (gap + 1) & mask; table[2 * slot] != 0; slot = (slot + 1) & mask) {
+                    int home = (IdIndex.hash(table[2 * slot]) >>> 6) & mask;
+
+                    if(((slot - home) & mask) >= ((slot - gap) & mask)) {
+                        table[2 * gap] = table[2 * slot];
+                        table[2 * gap + 1] = table[2 * slot + 1];
+                        gap = slot;
+                    }
+                }
+
+                table[2 * gap] = 0;
+                size--;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
@@ -1,47 +1,99 @@
 package DAO;
 
+import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.h2.api.ErrorCode;
 
 import Model.Message;
+import Util.Config;
 import Util.ConnectionUtil;
 
 /***
  * class for managing access to the Message table in the database
  */
-public class MessageDAO {
+public class MessageDAO implements MessageStore {
+    /***
+     * The SQL run by each method. Kept together, and public, so the query plans can be checked against the indexes
+     * created by the schema migrations. The per-sender queries name idx_message_posted_by_id and order by both of its
+     * columns because otherwise H2 prefers the foreign key's single-column index and sorts the rows afterwards. Each
+     * *_RETURNING_SQL statement wraps a data change in a FINAL/OLD TABLE query so the changed row comes back from the
+     * same statement; EXPLAIN only shows the plan of the inner statement when it is run on its own. The STREAM_*_SQL
+     * queries each read one page, after the key of the last row of the page before.
+     */
+    public static final String POSTER_COUNT_SQL = "SELECT COUNT(account_id) FROM account WHERE account_id = ?";
+    public static final String EXISTING_POSTERS_SQL = "SELECT account_id FROM account WHERE account_id = ANY(?)";
+    public static final String INSERT_MESSAGE_SQL = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+    public static final String SELECT_ALL_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message";
+    public static final String SELECT_BY_SENDER_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message USE INDEX (idx_message_posted_by_id) WHERE posted_by = ? ORDER BY posted_by, message_id";
+    public static final String STREAM_ALL_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+    public static final String STREAM_BY_SENDER_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message USE INDEX (idx_message_posted_by_id) WHERE posted_by = ? AND message_id > ? ORDER BY posted_by, message_id LIMIT ?";
+    public static final String STREAM_BY_TIME_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message USE INDEX (idx_message_time) WHERE time_posted_epoch >= ? AND time_posted_epoch < ? AND (time_posted_epoch > ? OR message_id > ?) ORDER BY time_posted_epoch, message_id LIMIT ?";
+    public static final String STREAM_BY_SENDER_TIME_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message USE INDEX (idx_message_posted_by_time) WHERE posted_by = ? AND time_posted_epoch >= ? AND time_posted_epoch < ? AND (time_posted_epoch > ? OR message_id > ?) ORDER BY posted_by, time_posted_epoch, message_id LIMIT ?";
+    public static final String PAGE_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+    public static final String PAGE_BY_SENDER_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message USE INDEX (idx_message_posted_by_id) WHERE posted_by = ? AND message_id > ? ORDER BY posted_by, message_id LIMIT ?";
+    public static final String SELECT_BY_ID_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?";
+    public static final String SELECT_BY_IDS_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ANY(?)";
+    public static final String SELECT_BY_SENDERS_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message USE INDEX (idx_message_posted_by_id) WHERE posted_by = ANY(?) ORDER BY posted_by, message_id";
+    public static final String UPDATE_MESSAGE_SQL = "UPDATE message SET message_text = ? WHERE message_id = ?";
+    public static final String UPDATE_RETURNING_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM FINAL TABLE (" + UPDATE_MESSAGE_SQL + ")";
+    public static final String DELETE_MESSAGE_SQL = "DELETE FROM message WHERE message_id = ?";
+    public static final String DELETE_RETURNING_SQL = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM OLD TABLE (" + DELETE_MESSAGE_SQL + ")";
+    public static final String COUNT_BY_SENDER_SQL = "SELECT posted_by, COUNT(*) FROM message USE INDEX (idx_message_posted_by_id) GROUP BY posted_by";
+    public static final String COUNT_BY_TIME_SQL = "SELECT time_posted_epoch / ? AS bucket, COUNT(*) FROM message USE INDEX (idx_message_time) WHERE time_posted_epoch >= ? AND time_posted_epoch < ? GROUP BY bucket";
+
+    /***
+     * The rows read by each query of a stream. A page is read, and its connection given back, before any of it is handed
+     * on, so a client that reads slowly holds at most a page of memory and never a connection.
+     */
+    public static final int STREAM_PAGE_SIZE = Config.getInt("socialmedia.messages.streamPageSize", 1000);
+
+    /***
+     * Bumped by MessageService around every write below, so readers can tell whether the messages changed without a query
+     */
+    private final MessageVersions versions = new MessageVersions();
+
+    /***
+     * @return the version counters of the message table and of each sender's messages
+     */
+    public MessageVersions getVersions() {
+        return versions;
+    }
+
     /***
      * Gets the number of senders(accounts) for a specified account_id (AKA posted_by)
      * @param posted_by the account id of the message sender
      * @return an integer representing the number of matching senders
      */
     public int getPosterIdCount(int posted_by) {
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "SELECT COUNT(account_id) FROM account WHERE account_id = ?";
-
-        try {
-            //pass the SQL statement into PreparedStatement for SQL Injection protection
-            PreparedStatement cleanStatement = connection.prepareStatement(sql);
+        //pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(POSTER_COUNT_SQL)) {
 
             //set the empty placeholder value
             cleanStatement.setInt(1, posted_by);
 
             //get the resulting rows from the query execution
-            ResultSet result = cleanStatement.executeQuery();
-
-            //go to the first row
-            result.next();
-
-            int finalResult = result.getInt(1);
+            try(ResultSet result = cleanStatement.executeQuery()) {
+                //go to the first row
+                result.next();
 
-            connection.close();
+                int finalResult = result.getInt(1);
 
-            return finalResult;
+                return finalResult;
+            }
 
         } catch(SQLException e) {
             System.out.println(e.getMessage());
@@ -51,75 +103,117 @@ public class MessageDAO {
     }
 
     /***
-     * Gets the number of message ids using a message id as an identifier
-     * @param message_id the message identifcation number
-     * @return the amount of messages with a specified id
+     * Finds which of several account ids exist, with one query however many ids there are
+     * @param posted_by the account ids to look for
+     * @return the ids that belong to an existing account, or null if the query failed
      */
-    public int getMessageIdCount(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        String validationSql = "SELECT COUNT(message_id) FROM message WHERE message_id = ?";
-
-        try {
-            //pass the SQL statement into PreparedStatement for SQL Injection protecti
-            PreparedStatement cleanValidationStatement = connection.prepareStatement(validationSql);
-
-            //set the empty placeholder values
-            cleanValidationStatement.setInt(1, message_id);
-
-            //get the resulting rows from the query execution
-            ResultSet validationResult = cleanValidationStatement.executeQuery();
+    public Set<Integer> getExistingPosterIds(Collection<Integer> posted_by) {
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(EXISTING_POSTERS_SQL)) {
 
-            //go to the first row
-            validationResult.next();
+            //bind every id as one array parameter, so the statement text is the same for any number of ids
+            cleanStatement.setArray(1, connection.createArrayOf("INTEGER", posted_by.toArray()));
 
-            int finalResult = validationResult.getInt(1);
+            try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                Set<Integer> existing = new HashSet<>();
 
-            connection.close();
+                while(resultRows.next()) {
+                    existing.add(resultRows.getInt(1));
+                }
 
-            return finalResult;
+                return existing;
+            }
 
         } catch(SQLException e) {
             System.out.println(e.getMessage());
         }
-        
-        return 0;
+
+        return null;
     }
 
     /***
-     * Inserts a message into the database using prepared statements for SQL injection protection.
+     * Inserts a message into the database using prepared statements for SQL injection protection. The generated message_id
+     * comes back with the insert, and the foreign key on posted_by checks that the sender exists, so this is a single round
+     * trip with no window between the check and the write. The insert is not wrapped in a FINAL TABLE query like updates
+     * and deletes are, because H2 keeps the row of such a query even when the foreign key check fails.
      * @param message The message to insert
-     * @return The inserted message as a Message object
+     * @return The inserted message as a Message object, or null if posted_by is not an existing account
      */
     public Message insertMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
-
-        try {
-            //pass the SQL statement into PreparedStatement for SQL Injection protection
-            PreparedStatement cleanStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        //pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(INSERT_MESSAGE_SQL, Statement.RETURN_GENERATED_KEYS)) {
 
             //set the empty placeholder values
             cleanStatement.setInt(1, message.getPosted_by());
             cleanStatement.setString(2, message.getMessage_text());
             cleanStatement.setLong(3, message.getTime_posted_epoch());
-
-            //get the resulting rows from the query execution
             cleanStatement.executeUpdate();
-            ResultSet resultRow = cleanStatement.getGeneratedKeys();
 
-            //go to the first row
-            resultRow.next();
+            //get the generated message_id of the inserted row
+            try(ResultSet key = cleanStatement.getGeneratedKeys()) {
+                return key.next() ? new Message(key.getInt(1), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch()) : null;
+            }
 
-            Message insertedMessage = new Message(resultRow.getInt(1), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+        } catch(SQLException e) {
+            if(e.getErrorCode() != ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1) {
+                System.out.println(e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /***
+     * Inserts several messages as one JDBC batch in a single transaction, so they share one commit. If the batch fails,
+     * for example because one posted_by is not an existing account, it is rolled back and the messages are inserted one
+     * at a time instead, so one bad message does not fail the others.
+     * @param messages the messages to insert
+     * @return the inserted messages in the same order, with null in place of each message that could not be inserted
+     */
+    public List<Message> insertMessages(List<Message> messages) {
+        //closing rolls back whatever was not committed
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(INSERT_MESSAGE_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            connection.setAutoCommit(false);
+
+            for(Message message : messages) {
+                cleanStatement.setInt(1, message.getPosted_by());
+                cleanStatement.setString(2, message.getMessage_text());
+                cleanStatement.setLong(3, message.getTime_posted_epoch());
+                cleanStatement.addBatch();
+            }
 
-            connection.close();
+            cleanStatement.executeBatch();
 
-            return insertedMessage;
+            //the generated keys come back in the order the rows were added to the batch
+            List<Message> inserted = new ArrayList<>(messages.size());
+
+            try(ResultSet keys = cleanStatement.getGeneratedKeys()) {
+                for(Message message : messages) {
+                    if(!keys.next()) {
+                        throw new SQLException("batch insert returned fewer keys than rows");
+                    }
+
+                    inserted.add(new Message(keys.getInt(1), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch()));
+                }
+            }
+
+            connection.commit();
+            return inserted;
 
         } catch(SQLException e) {
-            System.out.println(e.getMessage());
+            if(!(e instanceof BatchUpdateException)) {
+                System.out.println(e.getMessage());
+            }
         }
-        return null;
+
+        List<Message> inserted = new ArrayList<>(messages.size());
+
+        for(Message message : messages) {
+            inserted.add(insertMessage(message));
+        }
+
+        return inserted;
     }
 
     /***
@@ -127,23 +221,19 @@ public class MessageDAO {
      * @return List<Message> list of messages
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message";
         List<Message> allMessages = new ArrayList<Message>();
 
-        try {
-            //pass the SQL statement into PreparedStatement for SQL Injection protection
-            PreparedStatement cleanStatement = connection.prepareStatement(sql);
+        //pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(SELECT_ALL_SQL)) {
 
             //get the resulting rows from the query execution
-            ResultSet resultRows = cleanStatement.executeQuery();
-
-            while(resultRows.next()) { // iterate over the rows
-                allMessages.add(new Message(resultRows.getInt("message_id"), resultRows.getInt("posted_by"), resultRows.getString("message_text"), resultRows.getLong("time_posted_epoch")));
+            try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                while(resultRows.next()) { // iterate over the rows
+                    allMessages.add(new Message(resultRows.getInt("message_id"), resultRows.getInt("posted_by"), resultRows.getString("message_text"), resultRows.getLong("time_posted_epoch")));
+                }
             }
 
-            connection.close();
-
             return allMessages;
 
         } catch(SQLException e) {
@@ -158,27 +248,218 @@ public class MessageDAO {
      * @return A List<Message> list of all messages that the sender has sent
      */
     public List<Message> getMessagesBySenderId(int sender_id) {
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE posted_by = ?";
         List<Message> messageList = new ArrayList<>();
-                    
-        try {
-            //pass the SQL statement into PreparedStatement for SQL Injection protection
-            PreparedStatement cleanStatement = connection.prepareStatement(sql);
+
+        //pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(SELECT_BY_SENDER_SQL)) {
 
             //set the empty placeholder values
             cleanStatement.setInt(1, sender_id);
 
             //get the resulting rows from the query execution
-            ResultSet resultRows = cleanStatement.executeQuery();
+            try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                while(resultRows.next()) { // iterate over the rows
+                    messageList.add(new Message(resultRows.getInt("message_id"), resultRows.getInt("posted_by"), resultRows.getString("message_text"), resultRows.getLong("time_posted_epoch")));
+                }
+            }
 
-            while(resultRows.next()) { // iterate over the rows
-                messageList.add(new Message(resultRows.getInt("message_id"), resultRows.getInt("posted_by"), resultRows.getString("message_text"), resultRows.getLong("time_posted_epoch")));
+            return messageList;
+
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /***
+     * Streams every message in the database to a row handler in message_id order, a page of STREAM_PAGE_SIZE rows at a
+     * time, so memory use does not grow with the size of the table.
+     * @param handler receives each row
+     * @return true if every row was handed over, false if a query failed
+     * @throws IOException if the handler fails, for example because the client went away
+     */
+    public boolean streamAllMessages(MessageRowHandler handler) throws IOException {
+        return streamPages(STREAM_ALL_SQL, (cleanStatement, last) -> {
+            //set the empty placeholder values
+            cleanStatement.setInt(1, (last == null) ? 0 : last.getMessage_id());
+            cleanStatement.setInt(2, STREAM_PAGE_SIZE);
+        }, handler);
+    }
+
+    /***
+     * Streams all the messages that a specified sender has sent to a row handler in message_id order
+     * @param sender_id the account_id of the sender
+     * @param handler receives each row
+     * @return true if every row was handed over, false if a query failed
+     * @throws IOException if the handler fails, for example because the client went away
+     */
+    public boolean streamMessagesBySenderId(int sender_id, MessageRowHandler handler) throws IOException {
+        return streamPages(STREAM_BY_SENDER_SQL, (cleanStatement, last) -> {
+            //set the empty placeholder values
+            cleanStatement.setInt(1, sender_id);
+            cleanStatement.setInt(2, (last == null) ? 0 : last.getMessage_id());
+            cleanStatement.setInt(3, STREAM_PAGE_SIZE);
+        }, handler);
+    }
+
+    /***
+     * Streams the messages posted within a time range to a row handler in time_posted_epoch order (message_id order
+     * among messages with the same time). Each page is a range scan on the time index, starting at the time of the last
+     * row sent, so it reads only the rows in range.
+     * @param since the earliest time_posted_epoch included
+     * @param until the time_posted_epoch at which the range ends, itself excluded
+     * @param handler receives each row
+     * @return true if every row was handed over, false if a query failed
+     * @throws IOException if the handler fails, for example because the client went away
+     */
+    public boolean streamMessagesPostedBetween(long since, long until, MessageRowHandler handler) throws IOException {
+        return streamPages(STREAM_BY_TIME_SQL, (cleanStatement, last) -> {
+            //set the empty placeholder values
+            cleanStatement.setLong(1, (last == null) ? since : last.getTime_posted_epoch());
+            cleanStatement.setLong(2, until);
+            cleanStatement.setLong(3, (last == null) ? Long.MIN_VALUE : last.getTime_posted_epoch());
+            cleanStatement.setInt(4, (last == null) ? 0 : last.getMessage_id());
+            cleanStatement.setInt(5, STREAM_PAGE_SIZE);
+        }, handler);
+    }
+
+    /***
+     * Streams the messages a sender posted within a time range to a row handler in time_posted_epoch order, with range
+     * scans on the sender and time index
+     * @param sender_id the account_id of the sender
+     * @param since the earliest time_posted_epoch included
+     * @param until the time_posted_epoch at which the range ends, itself excluded
+     * @param handler receives each row
+     * @return true if every row was handed over, false if a query failed
+     * @throws IOException if the handler fails, for example because the client went away
+     */
+    public boolean streamMessagesBySenderIdPostedBetween(int sender_id, long since, long until, MessageRowHandler handler) throws IOException {
+        return streamPages(STREAM_BY_SENDER_TIME_SQL, (cleanStatement, last) -> {
+            //set the empty placeholder values
+            cleanStatement.setInt(1, sender_id);
+            cleanStatement.setLong(2, (last == null) ? since : last.getTime_posted_epoch());
+            cleanStatement.setLong(3, until);
+            cleanStatement.setLong(4, (last == null) ? Long.MIN_VALUE : last.getTime_posted_epoch());
+            cleanStatement.setInt(5, (last == null) ? 0 : last.getMessage_id());
+            cleanStatement.setInt(6, STREAM_PAGE_SIZE);
+        }, handler);
+    }
+
+    /***
+     * Sets the placeholders of a STREAM_*_SQL query for the page after a row
+     */
+    private interface PageQuery {
+        /***
+         * @param statement the prepared query
+         * @param last the last row of the page before, or null for the first page
+         */
+        void bind(PreparedStatement statement, Message last) throws SQLException;
+    }
+
+    /***
+     * Reads a query's rows a page at a time, each page with its own connection, which is given back before the page is
+     * passed to the handler, until a page comes back short
+     * @param sql a query selecting all four message columns, at most STREAM_PAGE_SIZE rows after a row's key
+     * @param query sets the query's placeholders for each page
+     * @param handler receives each row
+     * @return true once every row has been handed over, false if a query failed
+     */
+    private boolean streamPages(String sql, PageQuery query, MessageRowHandler handler) throws IOException {
+        List<Message> page = new ArrayList<>();
+        Message last = null;
+
+        do {
+            page.clear();
+
+            //pass the SQL statement into PreparedStatement for SQL Injection protection
+            try(Connection connection = ConnectionUtil.getConnection();
+                    PreparedStatement cleanStatement = connection.prepareStatement(sql)) {
+                query.bind(cleanStatement, last);
+
+                try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                    while(resultRows.next()) { // iterate over the rows
+                        page.add(readMessage(resultRows));
+                    }
+                }
+
+            } catch(SQLException e) {
+                System.out.println(e.getMessage());
+                return false;
             }
 
-            connection.close();
+            for(Message message : page) {
+                handler.row(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+            }
 
-            return messageList;
+            if(!page.isEmpty()) {
+                last = page.get(page.size() - 1);
+            }
+        } while(page.size() == STREAM_PAGE_SIZE);
+
+        return true;
+    }
+
+    /***
+     * Gets one page of messages in message_id order, starting after a cursor. The query is a range scan on the primary
+     * key, so every page costs the same no matter how deep into the table it is.
+     * @param after only messages with a message_id greater than this are returned (0 for the first page)
+     * @param limit the largest number of messages to return
+     * @return A List<Message> of at most limit messages in ascending message_id order
+     */
+    public List<Message> getMessagesAfter(int after, int limit) {
+        List<Message> page = new ArrayList<>();
+
+        //pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(PAGE_SQL)) {
+
+            //set the empty placeholder values
+            cleanStatement.setInt(1, after);
+            cleanStatement.setInt(2, limit);
+
+            //get the resulting rows from the query execution
+            try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                while(resultRows.next()) { // iterate over the rows
+                    page.add(new Message(resultRows.getInt("message_id"), resultRows.getInt("posted_by"), resultRows.getString("message_text"), resultRows.getLong("time_posted_epoch")));
+                }
+            }
+
+            return page;
+
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /***
+     * Gets one page of the messages a specified sender has sent, in message_id order, starting after a cursor.
+     * @param sender_id the account_id of the sender
+     * @param after only messages with a message_id greater than this are returned (0 for the first page)
+     * @param limit the largest number of messages to return
+     * @return A List<Message> of at most limit messages in ascending message_id order
+     */
+    public List<Message> getMessagesBySenderIdAfter(int sender_id, int after, int limit) {
+        List<Message> page = new ArrayList<>();
+
+        //pass the SQL statement into PreparedStatement for SQL Injection protection
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(PAGE_BY_SENDER_SQL)) {
+
+            //set the empty placeholder values
+            cleanStatement.setInt(1, sender_id);
+            cleanStatement.setInt(2, after);
+            cleanStatement.setInt(3, limit);
+
+            //get the resulting rows from the query execution
+            try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                while(resultRows.next()) { // iterate over the rows
+                    page.add(new Message(resultRows.getInt("message_id"), resultRows.getInt("posted_by"), resultRows.getString("message_text"), resultRows.getLong("time_posted_epoch")));
+                }
+            }
+
+            return page;
 
         } catch(SQLException e) {
             System.out.println(e.getMessage());
@@ -192,23 +473,18 @@ public class MessageDAO {
      * @return The message as a Message object
      */
     public Message getMessageById(int id) {
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?";
-
-        try {
-            PreparedStatement cleanStatement = connection.prepareStatement(sql);
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(SELECT_BY_ID_SQL)) {
 
             cleanStatement.setInt(1, id);
 
-            ResultSet resultRow = cleanStatement.executeQuery();
-
-            resultRow.next();
-
-            Message message = new Message(resultRow.getInt("message_id"), resultRow.getInt("posted_by"), resultRow.getString("message_text"), resultRow.getLong("time_posted_epoch"));
+            try(ResultSet resultRow = cleanStatement.executeQuery()) {
+                resultRow.next();
 
-            connection.close();
+                Message message = new Message(resultRow.getInt("message_id"), resultRow.getInt("posted_by"), resultRow.getString("message_text"), resultRow.getLong("time_posted_epoch"));
 
-            return message;
+                return message;
+            }
 
         } catch(SQLException e) {
             System.out.println(e.getMessage());
@@ -217,77 +493,154 @@ public class MessageDAO {
     }
 
     /***
-     * Updates a message in the database using its id and a new message string. Uses prepared statements to protect from SQL injection
+     * Updates a message in the database using its id and a new message string, and reads back the updated row in the same
+     * statement. Uses prepared statements to protect from SQL injection
      * @param id the identification number of the message
      * @param newMessage The message text to update the message with
-     * @return the newly updated message as a Message object
+     * @return the newly updated message as a Message object, or null if there is no message with the id
      */
     public Message updateMessage(int id, String newMessage) {
-        Connection connection = ConnectionUtil.getConnection();
-        String sqlUpdate = "UPDATE message SET message_text = ? WHERE message_id = ?";
-        String sqlQuery = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?";
-
-        try {
-            PreparedStatement cleanUpdateStatement = connection.prepareStatement(sqlUpdate);
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanUpdateStatement = connection.prepareStatement(UPDATE_RETURNING_SQL)) {
 
             cleanUpdateStatement.setString(1, newMessage);
             cleanUpdateStatement.setInt(2, id);
 
-            cleanUpdateStatement.executeUpdate();
+            try(ResultSet resultRow = cleanUpdateStatement.executeQuery()) {
+                return resultRow.next() ? readMessage(resultRow) : null;
+            }
 
-            PreparedStatement cleanQueryStatement = connection.prepareStatement(sqlQuery);
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
 
-            cleanQueryStatement.setInt(1, id);
+    /***
+     * deletes a message from the database and returns the row as it was before the delete, in one statement. Uses prepared
+     * statements to protect from SQL injection
+     * @param id the identification number of the message to be deleted
+     * @return The deleted message, or null if there is no message with the id
+     */
+    public Message deleteMessage(int id) {
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanDeleteStatement = connection.prepareStatement(DELETE_RETURNING_SQL)) {
 
-            ResultSet resultRow = cleanQueryStatement.executeQuery();
+            cleanDeleteStatement.setInt(1, id);
 
-            resultRow.next();
+            try(ResultSet deletedRow = cleanDeleteStatement.executeQuery()) {
+                return deletedRow.next() ? readMessage(deletedRow) : null;
+            }
 
-            Message updatedMessage = new Message(resultRow.getInt("message_id"), resultRow.getInt("posted_by"), resultRow.getString("message_text"), resultRow.getLong("time_posted_epoch"));
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /***
+     * Counts every sender's messages with one pass over the sender index
+     * @return the number of messages of each sender that has any, or null if the query failed
+     */
+    public Map<Integer, Long> countMessagesBySender() {
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(COUNT_BY_SENDER_SQL);
+                ResultSet resultRows = cleanStatement.executeQuery()) {
+            Map<Integer, Long> counts = new HashMap<>();
+
+            while(resultRows.next()) {
+                counts.put(resultRows.getInt(1), resultRows.getLong(2));
+            }
 
-            connection.close();
+            return counts;
 
-            return updatedMessage;
-            
         } catch(SQLException e) {
             System.out.println(e.getMessage());
         }
+
         return null;
     }
 
     /***
-     * deletes a message from the database, then returns it. Uses prepared statements to protect from SQL injection
-     * @param id the identification number of the message to be deleted
-     * @return The deleted message
+     * Counts the messages posted within a time range in buckets of equal width, with a range scan on the time index
+     * @param width the width of a bucket, in the units of time_posted_epoch; bucket n covers n * width up to (n + 1) * width
+     * @param since the earliest time_posted_epoch included, at least 0
+     * @param until the time_posted_epoch at which the range ends, itself excluded
+     * @return the number of messages in each bucket that has any, keyed by bucket number, or null if the query failed
      */
-    public Message deleteMessage(int id) {
-        Connection connection = ConnectionUtil.getConnection();
-        String sqlQuery = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?";
-        String sqlDelete = "DELETE FROM message WHERE message_id = ?";
+    public Map<Long, Long> countMessagesByTimeBucket(long width, long since, long until) {
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(COUNT_BY_TIME_SQL)) {
 
-        try {
-            
-            PreparedStatement cleanSelectStatement = connection.prepareStatement(sqlQuery);
-            PreparedStatement cleanDeleteStatement = connection.prepareStatement(sqlDelete);
+            //set the empty placeholder values
+            cleanStatement.setLong(1, width);
+            cleanStatement.setLong(2, since);
+            cleanStatement.setLong(3, until);
 
-            cleanSelectStatement.setInt(1, id);
-            cleanDeleteStatement.setInt(1, id);
+            try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                Map<Long, Long> counts = new HashMap<>();
 
-            ResultSet deletedRow = cleanSelectStatement.executeQuery();
+                while(resultRows.next()) {
+                    counts.put(resultRows.getLong(1), resultRows.getLong(2));
+                }
 
-            deletedRow.next();
+                return counts;
+            }
 
-            Message deletedMessage = new Message(deletedRow.getInt("message_id"), deletedRow.getInt("posted_by"), deletedRow.getString("message_text"), deletedRow.getLong("time_posted_epoch"));
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        }
 
-            cleanDeleteStatement.executeUpdate();
+        return null;
+    }
 
-            connection.close();
+    /***
+     * Gets several messages by id with one query however many ids there are
+     * @param ids the message_ids to look for
+     * @return the messages found, in no particular order, or null if the query failed
+     */
+    public List<Message> getMessagesByIds(Collection<Integer> ids) {
+        return getMessagesByAnyOf(SELECT_BY_IDS_SQL, ids);
+    }
 
-            return deletedMessage;
+    /***
+     * Gets the messages of several senders with one query however many senders there are
+     * @param sender_ids the account_ids of the senders
+     * @return the messages, ordered by sender and then by message_id, or null if the query failed
+     */
+    public List<Message> getMessagesBySenderIds(Collection<Integer> sender_ids) {
+        return getMessagesByAnyOf(SELECT_BY_SENDERS_SQL, sender_ids);
+    }
+
+    private List<Message> getMessagesByAnyOf(String sql, Collection<Integer> values) {
+        try(Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement cleanStatement = connection.prepareStatement(sql)) {
+
+            //bind every value as one array parameter, so the statement text is the same for any number of values
+            cleanStatement.setArray(1, connection.createArrayOf("INTEGER", values.toArray()));
+
+            try(ResultSet resultRows = cleanStatement.executeQuery()) {
+                List<Message> messages = new ArrayList<>();
+
+                while(resultRows.next()) {
+                    messages.add(readMessage(resultRows));
+                }
+
+                return messages;
+            }
 
         } catch(SQLException e) {
             System.out.println(e.getMessage());
         }
+
         return null;
     }
-}
\ No newline at end of file
+
+    /***
+     * @param row a result row positioned on a message, with the four message columns in table order
+     * @return the row as a Message object
+     */
+    private Message readMessage(ResultSet row) throws SQLException {
+        return new Message(row.getInt(1), row.getInt(2), row.getString(3), row.getLong(4));
+    }
+}
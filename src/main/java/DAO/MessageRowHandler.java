@@ -0,0 +1,21 @@
+package DAO;
+
+import java.io.IOException;
+
+/***
+ * Receives message rows one at a time while a query is still running, so a caller can pass each row on (for example
+ * to a response stream) without collecting the whole result into a list first.
+ */
+@FunctionalInterface
+public interface MessageRowHandler {
+
+    /***
+     * Handles one row of the message table
+     * @param message_id the message identification number
+     * @param posted_by the account id of the message sender
+     * @param message_text the message text
+     * @param time_posted_epoch the time the message was posted, in seconds since the epoch
+     * @throws IOException if the row cannot be passed on, which stops the query
+     */
+    void row(int message_id, int posted_by, String message_text, long time_posted_epoch) throws IOException;
+}
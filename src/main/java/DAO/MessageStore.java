@@ -0,0 +1,152 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import Model.Message;
+
+/***
+ * Storage for messages. MessageDAO keeps them in the H2 database; MemoryMessageStore keeps them in memory, in columns
+ * of primitives. Stores.newMessageStore picks one according to socialmedia.storage.
+ *
+ * Every method that can fail returns null (or false, or 0) on failure rather than throwing, as MessageDAO always has,
+ * and the store keeps version counters that MessageService bumps around every write, so that readers can tell whether
+ * anything changed.
+ */
+public interface MessageStore {
+    /***
+     * @return the version counters of all messages and of each sender's messages
+     */
+    MessageVersions getVersions();
+
+    /***
+     * @param posted_by an account id
+     * @return 1 if the account exists, otherwise 0
+     */
+    int getPosterIdCount(int posted_by);
+
+    /***
+     * @param posted_by the account ids to look for
+     * @return the ids that belong to an existing account, or null if the lookup failed
+     */
+    Set<Integer> getExistingPosterIds(Collection<Integer> posted_by);
+
+    /***
+     * @param message the message to insert
+     * @return the inserted message with its new message_id, or null if posted_by is not an existing account
+     */
+    Message insertMessage(Message message);
+
+    /***
+     * @param messages the messages to insert
+     * @return the inserted messages in the same order, with null in place of each message that could not be inserted
+     */
+    List<Message> insertMessages(List<Message> messages);
+
+    /***
+     * @return every message, or null if the read failed
+     */
+    List<Message> getAllMessages();
+
+    /***
+     * @param sender_id the account_id of the sender
+     * @return the sender's messages in message_id order, or null if the read failed
+     */
+    List<Message> getMessagesBySenderId(int sender_id);
+
+    /***
+     * @param handler receives every message in message_id order
+     * @return true if every message was handed over, false if the read failed
+     * @throws IOException if the handler fails
+     */
+    boolean streamAllMessages(MessageRowHandler handler) throws IOException;
+
+    /***
+     * @param sender_id the account_id of the sender
+     * @param handler receives the sender's messages in message_id order
+     * @return true if every message was handed over, false if the read failed
+     * @throws IOException if the handler fails
+     */
+    boolean streamMessagesBySenderId(int sender_id, MessageRowHandler handler) throws IOException;
+
+    /***
+     * @param since the earliest time_posted_epoch included
+     * @param until the time_posted_epoch at which the range ends, itself excluded
+     * @param handler receives the messages in the range in time_posted_epoch order, then message_id order
+     * @return true if every message was handed over, false if the read failed
+     * @throws IOException if the handler fails
+     */
+    boolean streamMessagesPostedBetween(long since, long until, MessageRowHandler handler) throws IOException;
+
+    /***
+     * @param sender_id the account_id of the sender
+     * @param since the earliest time_posted_epoch included
+     * @param until the time_posted_epoch at which the range ends, itself excluded
+     * @param handler receives the sender's messages in the range in time_posted_epoch order, then message_id order
+     * @return true if every message was handed over, false if the read failed
+     * @throws IOException if the handler fails
+     */
+    boolean streamMessagesBySenderIdPostedBetween(int sender_id, long since, long until, MessageRowHandler handler) throws IOException;
+
+    /***
+     * @param after only messages with a greater message_id are returned
+     * @param limit the most messages to return
+     * @return the messages in message_id order, or null if the read failed
+     */
+    List<Message> getMessagesAfter(int after, int limit);
+
+    /***
+     * @param sender_id the account_id of the sender
+     * @param after only messages with a greater message_id are returned
+     * @param limit the most messages to return
+     * @return the sender's messages in message_id order, or null if the read failed
+     */
+    List<Message> getMessagesBySenderIdAfter(int sender_id, int after, int limit);
+
+    /***
+     * @param id a message_id
+     * @return the message, or null if there is none with the id
+     */
+    Message getMessageById(int id);
+
+    /***
+     * @param id a message_id
+     * @param newMessage the new message_text
+     * @return the updated message, or null if there is no message with the id
+     */
+    Message updateMessage(int id, String newMessage);
+
+    /***
+     * @param id a message_id
+     * @return the deleted message, or null if there is no message with the id
+     */
+    Message deleteMessage(int id);
+
+    /***
+     * @param ids message_ids
+     * @return the messages found, in no particular order, or null if the read failed
+     */
+    List<Message> getMessagesByIds(Collection<Integer> ids);
+
+    /***
+     * @param sender_ids the account_ids of the senders
+     * @return the senders' messages, ordered by sender and then by message_id, or null if the read failed
+     */
+    List<Message> getMessagesBySenderIds(Collection<Integer> sender_ids);
+
+    /***
+     * @return the number of messages of each sender that has any, or null if the count failed
+     */
+    Map<Integer, Long> countMessagesBySender();
+
+    /***
+     * @param width the width of a bucket; bucket n covers n * width up to (n + 1) * width
+     * @param since the earliest time_posted_epoch included, at least 0
+     * @param until the time_posted_epoch at which the range ends, itself excluded
+     * @return the number of messages in each bucket that has any, keyed by bucket number, or null if the count failed
+     */
+    Map<Long, Long> countMessagesByTimeBucket(long width, long since, long until);
+}
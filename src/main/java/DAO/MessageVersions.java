@@ -0,0 +1,78 @@
+package DAO;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/***
+ * Version counters for the message table as a whole and for each sender's messages, kept in memory by each message store
+ * so that a reader can tell whether anything changed since an earlier read without asking the database.
+ *
+ * MessageService brackets every write with beginWrite and endWrite. endWrite bumps the table version and the version of
+ * the sender's stripe; senders are hashed onto a fixed number of stripes, so a write by one sender also changes the
+ * version of the others on its stripe, which costs a needless full response but never a stale one. While any write is in
+ * flight no version is handed out, because a read at that moment may or may not see the write.
+ *
+ * endWrite is called only once the write has committed and every in-memory view of the messages (sender timelines, the
+ * search index) shows it. Were the version bumped as soon as the database committed, a read in between could build a
+ * response from a timeline that does not show the write yet, and cache it under the new version.
+ *
+ * Versions start from zero whenever a message store is created, so each instance also has a random nonce that callers
+ * should put in any tag built from a version, to tell versions from different runs apart.
+ */
+public class MessageVersions {
+    private static final int SENDER_STRIPES = 1024;
+
+    private final long nonce = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesFinished = new AtomicLong();
+    private final AtomicLongArray senderVersions = new AtomicLongArray(SENDER_STRIPES);
+
+    /***
+     * Must be called before a write to the message table
+     */
+    public void beginWrite() {
+        writesStarted.incrementAndGet();
+    }
+
+    /***
+     * Must be called once the write has failed, or has committed and is shown by every in-memory view of the messages
+     * @param posted_by the senders whose messages the write changed, if any
+     */
+    public void endWrite(int... posted_by) {
+        for(int sender : posted_by) {
+            senderVersions.incrementAndGet(stripe(sender));
+        }
+
+        writesFinished.incrementAndGet();
+    }
+
+    /***
+     * @return a random number fixed for the lifetime of this instance
+     */
+    public long getNonce() {
+        return nonce;
+    }
+
+    /***
+     * @return the version of the whole message table, or -1 while a write is in flight
+     */
+    public long getTableVersion() {
+        long finished = writesFinished.get();
+        return (writesStarted.get() == finished) ? finished : -1;
+    }
+
+    /***
+     * @param posted_by the sender's account_id
+     * @return the version of the sender's messages, or -1 while a write is in flight
+     */
+    public long getSenderVersion(int posted_by) {
+        long finished = writesFinished.get();
+        long version = senderVersions.get(stripe(posted_by));
+        return (writesStarted.get() == finished) ? version : -1;
+    }
+
+    private static int stripe(int posted_by) {
+        return (posted_by * 0x9e3779b9) >>> 22;
+    }
+}
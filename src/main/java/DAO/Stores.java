@@ -0,0 +1,46 @@
+package DAO;
+
+import Util.Config;
+
+/***
+ * Creates the storage engine chosen with socialmedia.storage. "h2", the default, keeps accounts and messages in the H2
+ * database (AccountDAO and MessageDAO). "memory" keeps them in memory (MemoryAccountStore and MemoryMessageStore),
+ * loaded from the database when the stores are created; reads are served from memory and changes are written through
+ * to the database.
+ */
+public class Stores {
+    public static final String STORAGE = Config.getString("socialmedia.storage", "h2");
+
+    private Stores() {
+    }
+
+    /***
+     * @return true if socialmedia.storage chooses the in-memory stores
+     */
+    public static boolean isMemory() {
+        return STORAGE.equals("memory");
+    }
+
+    /***
+     * @return a new account store of the chosen engine
+     */
+    public static AccountStore newAccountStore() {
+        if(!isMemory() && !STORAGE.equals("h2")) {
+            System.out.println("unknown socialmedia.storage " + STORAGE + "; using h2");
+        }
+
+        return isMemory() ? new MemoryAccountStore() : new AccountDAO();
+    }
+
+    /***
+     * @param accountStore the account store the messages' senders are checked against
+     * @return a new message store of the same engine as the account store
+     */
+    public static MessageStore newMessageStore(AccountStore accountStore) {
+        if(accountStore instanceof MemoryAccountStore) {
+            return new MemoryMessageStore((MemoryAccountStore) accountStore);
+        }
+
+        return new MessageDAO();
+    }
+}
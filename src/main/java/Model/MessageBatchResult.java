@@ -0,0 +1,142 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models the outcome of one message in a batch posted to POST /messages/batch. Each result carries
+ * the position of its message in the request, the status a single POST /messages of that message would have had, and
+ * either the stored message or the reason it was rejected.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the message in the request, starting at 0.
+     */
+    public int index;
+    /**
+     * 200 if the message was stored, 400 if it was rejected.
+     */
+    public int status;
+    /**
+     * The stored message, including its message_id, or null if it was rejected.
+     */
+    public Message message;
+    /**
+     * Why the message was rejected, or null if it was stored.
+     */
+    public String error;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult() {
+    }
+    /**
+     * @param index the position of the message in the request
+     * @param status 200 if the message was stored, 400 if it was rejected
+     * @param message the stored message, or null
+     * @param error why the message was rejected, or null
+     */
+    public MessageBatchResult(int index, int status, Message message, String error) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+    /**
+     * @param index the position of the message in the request
+     * @param message the stored message
+     * @return a result for a stored message
+     */
+    public static MessageBatchResult stored(int index, Message message) {
+        return new MessageBatchResult(index, 200, message, null);
+    }
+    /**
+     * @param index the position of the message in the request
+     * @param error why the message was rejected
+     * @return a result for a rejected message
+     */
+    public static MessageBatchResult rejected(int index, String error) {
+        return new MessageBatchResult(index, 400, null, error);
+    }
+    /**
+     * @return index
+     */
+    public int getIndex() {
+        return index;
+    }
+    /**
+     * @param index
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+    /**
+     * @return status
+     */
+    public int getStatus() {
+        return status;
+    }
+    /**
+     * @param status
+     */
+    public void setStatus(int status) {
+        this.status = status;
+    }
+    /**
+     * @return message
+     */
+    public Message getMessage() {
+        return message;
+    }
+    /**
+     * @param message
+     */
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+    /**
+     * @param error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    /**
+     * Overriding the default equals() method allows Assert.assertEquals to compare results.
+     * @param o the other object.
+     * @return true if o is equal to this object.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessageBatchResult result = (MessageBatchResult) o;
+        return index == result.index && status == result.status && Objects.equals(message, result.message)
+                && Objects.equals(error, result.error);
+    }
+    /**
+     * @return a hash code consistent with equals()
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, status, message, error);
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,105 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models a count of messages, as served by the GET /stats endpoints: either every message, the
+ * messages of one account, or the messages posted within one minute or hour.
+ */
+public class MessageCount {
+    /**
+     * The account whose messages were counted, or null if the count is not for one account.
+     */
+    public Integer account_id;
+    /**
+     * The time_posted_epoch at which the counted minute or hour starts, or null if the count is not for a span of time.
+     */
+    public Long start;
+    /**
+     * The number of messages.
+     */
+    public long messages;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageCount() {
+    }
+    /**
+     * @param account_id the account whose messages were counted, or null
+     * @param start the start of the counted minute or hour, or null
+     * @param messages the number of messages
+     */
+    public MessageCount(Integer account_id, Long start, long messages) {
+        this.account_id = account_id;
+        this.start = start;
+        this.messages = messages;
+    }
+    /**
+     * @return account_id
+     */
+    public Integer getAccount_id() {
+        return account_id;
+    }
+    /**
+     * @param account_id
+     */
+    public void setAccount_id(Integer account_id) {
+        this.account_id = account_id;
+    }
+    /**
+     * @return start
+     */
+    public Long getStart() {
+        return start;
+    }
+    /**
+     * @param start
+     */
+    public void setStart(Long start) {
+        this.start = start;
+    }
+    /**
+     * @return messages
+     */
+    public long getMessages() {
+        return messages;
+    }
+    /**
+     * @param messages
+     */
+    public void setMessages(long messages) {
+        this.messages = messages;
+    }
+    /**
+     * Overriding the default equals() method allows Assert.assertEquals to compare counts.
+     * @param o the other object.
+     * @return true if o is equal to this object.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessageCount count = (MessageCount) o;
+        return messages == count.messages && Objects.equals(account_id, count.account_id) && Objects.equals(start, count.start);
+    }
+    /**
+     * @return a hash code consistent with equals()
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(account_id, start, messages);
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessageCount{" +
+                "account_id=" + account_id +
+                ", start=" + start +
+                ", messages=" + messages +
+                '}';
+    }
+}
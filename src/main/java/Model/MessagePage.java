@@ -0,0 +1,88 @@
+package Model;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This is a class that models one page of a keyset-paginated list of messages. Messages are ordered by message_id, and
+ * the next page is requested by passing next_cursor back as the "after" query parameter.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in ascending message_id order.
+     */
+    public List<Message> messages;
+    /**
+     * The cursor for the following page (the message_id of the last message on this page), or null if this is the
+     * last page.
+     */
+    public Integer next_cursor;
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessagePage() {
+    }
+    /**
+     * @param messages the messages on this page
+     * @param next_cursor the cursor for the following page, or null if there is none
+     */
+    public MessagePage(List<Message> messages, Integer next_cursor) {
+        this.messages = messages;
+        this.next_cursor = next_cursor;
+    }
+    /**
+     * @return messages
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+    /**
+     * @param messages
+     */
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+    /**
+     * @return next_cursor
+     */
+    public Integer getNext_cursor() {
+        return next_cursor;
+    }
+    /**
+     * @param next_cursor
+     */
+    public void setNext_cursor(Integer next_cursor) {
+        this.next_cursor = next_cursor;
+    }
+    /**
+     * Overriding the default equals() method allows Assert.assertEquals to compare pages.
+     * @param o the other object.
+     * @return true if o is equal to this object.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessagePage page = (MessagePage) o;
+        return Objects.equals(messages, page.messages) && Objects.equals(next_cursor, page.next_cursor);
+    }
+    /**
+     * @return a hash code consistent with equals()
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(messages, next_cursor);
+    }
+    /**
+     * Overriding the default toString() method allows for easy debugging.
+     * @return a String representation of this class.
+     */
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "messages=" + messages +
+                ", next_cursor=" + next_cursor +
+                '}';
+    }
+}
@@ -2,17 +2,32 @@ package Service;
 
 import Model.Account;
 
-import DAO.AccountDAO;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import DAO.AccountStore;
+import DAO.Stores;
+import Util.Config;
+import Util.Metrics;
 
 public class AccountService {
-    private AccountDAO accountDAO;
+    /**
+     * The number of accounts a username search returns when the client gives no limit, and the most it may ask for
+     */
+    public static final int SEARCH_DEFAULT_LIMIT = Config.getInt("socialmedia.accounts.search.defaultLimit", 10);
+    public static final int SEARCH_MAX_LIMIT = Config.getInt("socialmedia.accounts.search.maxLimit", 100);
+
+    private final LongAdder bloomNegatives = Metrics.counter("username_bloom_negatives", "registrations that skipped the username query because the Bloom filter ruled the name out");
+    private final LongAdder bloomFalsePositives = Metrics.counter("username_bloom_false_positives", "usernames the Bloom filter reported as maybe taken that were free");
+
+    private AccountStore accountStore;
 
     public AccountService() {
-        accountDAO = new AccountDAO();
+        accountStore = Stores.newAccountStore();
     }
 
-    public AccountService(AccountDAO accountDAO) {
-        this.accountDAO = accountDAO;
+    public AccountService(AccountStore accountStore) {
+        this.accountStore = accountStore;
     }
 
     public Account createAccount(Account account) {
@@ -20,10 +35,47 @@ public class AccountService {
             return null;
         }
 
-        return (this.accountDAO.getUsernameCount(account.getUsername()) == 0) ? this.accountDAO.registerAccount(account) : null;
+        return usernameTaken(account.getUsername()) ? null : this.accountStore.registerAccount(account);
+    }
+
+    /***
+     * Checks whether a username is taken. A username the Bloom filter has never seen is free without asking the database;
+     * the unique constraint on username catches the rare registration race that slips through. Only a "maybe" from the
+     * filter costs a query.
+     * @param username the username to check
+     * @return true if an account already has the username
+     */
+    private boolean usernameTaken(String username) {
+        if(!this.accountStore.mightHaveUsername(username)) {
+            bloomNegatives.increment();
+            return false;
+        }
+
+        boolean taken = this.accountStore.getUsernameCount(username) > 0;
+
+        if(!taken) {
+            bloomFalsePositives.increment();
+        }
+
+        return taken;
+    }
+
+    /***
+     * Finds accounts whose username starts with a prefix, for typeahead. Answered from memory.
+     * @param prefix the start of the username, matched case-sensitively
+     * @param limit the most accounts to return, between 1 and SEARCH_MAX_LIMIT
+     * @return the accounts, ordered by username, with no password, or null if the prefix is empty or the limit is out of
+     * range
+     */
+    public List<Account> searchAccounts(String prefix, int limit) {
+        if(prefix == null || prefix.isEmpty() || limit < 1 || limit > SEARCH_MAX_LIMIT) {
+            return null;
+        }
+
+        return this.accountStore.getAccountsByUsernamePrefix(prefix, limit);
     }
 
     public Account accountLogin(Account account) {
-        return this.accountDAO.accountLogin(account.getUsername(), account.getPassword());
+        return this.accountStore.accountLogin(account.getUsername(), account.getPassword());
     }
 }
\ No newline at end of file
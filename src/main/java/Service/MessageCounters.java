@@ -0,0 +1,344 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import DAO.MessageStore;
+import Model.Message;
+import Model.MessageCount;
+import Util.Metrics;
+
+/**
+ * The MessageCounters class keeps message statistics in memory, so that they can be read without a query: the number
+ * of messages in all, the number each account has posted, and the number posted in each of the last minutes and hours.
+ *
+ * Every count is a LongAdder, which spreads concurrent increments over several cells instead of making every post
+ * contend for one word, so posting stays cheap however many threads post at once; reading a count sums its cells. The
+ * minutes and hours are rings of buckets following the clock: a message is counted in the bucket its time_posted_epoch
+ * falls in if that bucket is one the ring covers at the time, and a slot is taken over by the newer bucket the next time
+ * one lands on it. Messages dated in the future, or further back than a ring reaches, are counted only in the totals.
+ *
+ * The counters are reconciled against the message store at startup and then periodically, which also repairs any drift
+ * from writes that did not go through this service. A write updates its counters under a shared lock, only once the
+ * store has its outcome, and a reconcile applies its counts under the exclusive lock, so neither sees the other half
+ * done; nothing is held while the store is written to. A counter written to after a reconcile's queries started is left
+ * alone until the next one, since the queries may or may not have seen that write. A write stored before the queries but
+ * counted after the reconcile is thus counted twice until the next reconcile, which corrects it.
+ */
+class MessageCounters {
+    private static final long SECONDS_PER_MINUTE = 60;
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private final MessageStore messageStore;
+    private final LongAdder total = new LongAdder();
+    private final Map<Integer, Counter> senders = new ConcurrentHashMap<>();
+    private final TimeBuckets minutes;
+    private final TimeBuckets hours;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Bumped as each reconcile starts, and stamped on every counter a write changes
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private final ScheduledExecutorService reconciler;
+
+    private final LongAdder corrections = Metrics.counter("stats_reconcile_corrections",
+            "messages by which reconciling against the message store corrected the message statistics");
+    private final Metrics.Timer reconciles = Metrics.timer("stats_reconcile", "time to reconcile the message statistics");
+
+    private static class Counter {
+        final LongAdder count = new LongAdder();
+        volatile long stamp;
+    }
+
+    /**
+     * @param messageStore the store to reconcile against
+     * @param minuteBuckets the number of minutes counted, up to and including the current one
+     * @param hourBuckets the number of hours counted, up to and including the current one
+     * @param reconcileMillis the time between reconciles, or 0 to reconcile only when asked
+     */
+    MessageCounters(MessageStore messageStore, int minuteBuckets, int hourBuckets, long reconcileMillis) {
+        this.messageStore = messageStore;
+        this.minutes = new TimeBuckets(SECONDS_PER_MINUTE, minuteBuckets);
+        this.hours = new TimeBuckets(SECONDS_PER_HOUR, hourBuckets);
+
+        if(reconcileMillis > 0) {
+            this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-stats-reconcile");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.reconciler.scheduleWithFixedDelay(this::reconcile, reconcileMillis, reconcileMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.reconciler = null;
+        }
+
+        Metrics.gauge("stats_senders", "accounts with a message count in memory", senders::size);
+    }
+
+    /***
+     * Stops the periodic reconciles
+     */
+    void shutdown() {
+        if(this.reconciler != null) {
+            this.reconciler.shutdownNow();
+        }
+    }
+
+    /***
+     * Counts a message that was just stored
+     * @param message the stored message
+     */
+    void onPosted(Message message) {
+        add(message, 1);
+    }
+
+    /***
+     * Uncounts a message that was just deleted
+     * @param message the deleted message
+     */
+    void onDeleted(Message message) {
+        add(message, -1);
+    }
+
+    private void add(Message message, int delta) {
+        lock.readLock().lock();
+
+        try {
+            long stamp = generation.get();
+            long now = now();
+
+            Counter sender = senders.get(message.getPosted_by());
+
+            if(sender == null) {
+                sender = senders.computeIfAbsent(message.getPosted_by(), key -> new Counter());
+            }
+
+            sender.count.add(delta);
+            sender.stamp = stamp;
+            total.add(delta);
+            minutes.add(message.getTime_posted_epoch(), delta, stamp, now);
+            hours.add(message.getTime_posted_epoch(), delta, stamp, now);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /***
+     * @return the number of messages
+     */
+    long getTotal() {
+        return total.sum();
+    }
+
+    /***
+     * @param posted_by an account_id
+     * @return the number of messages the account has posted
+     */
+    long getFromSender(int posted_by) {
+        Counter sender = senders.get(posted_by);
+        return (sender == null) ? 0 : sender.count.sum();
+    }
+
+    /***
+     * @param last the number of minutes, up to and including the current one
+     * @return the number of messages posted in each minute, oldest first, or null if last is not between 1 and the
+     * number of minutes counted
+     */
+    List<MessageCount> getPerMinute(int last) {
+        return minutes.get(last, now());
+    }
+
+    /***
+     * @param last the number of hours, up to and including the current one
+     * @return the number of messages posted in each hour, oldest first, or null if last is not between 1 and the number
+     * of hours counted
+     */
+    List<MessageCount> getPerHour(int last) {
+        return hours.get(last, now());
+    }
+
+    /***
+     * Counts the messages in the store and corrects the counters to match
+     * @return true if the counters were reconciled, false if a query failed
+     */
+    boolean reconcile() {
+        long started = System.nanoTime();
+        long stamp = generation.incrementAndGet();
+        long now = now();
+
+        Map<Integer, Long> bySender = this.messageStore.countMessagesBySender();
+        Map<Long, Long> byMinute = minutes.query(this.messageStore, now);
+        Map<Long, Long> byHour = hours.query(this.messageStore, now);
+
+        if(bySender == null || byMinute == null || byHour == null) {
+            return false;
+        }
+
+        long corrected = 0;
+        lock.writeLock().lock();
+
+        try {
+            for(Map.Entry<Integer, Long> entry : bySender.entrySet()) {
+                senders.computeIfAbsent(entry.getKey(), key -> new Counter());
+            }
+
+            long totalChange = 0;
+
+            for(Map.Entry<Integer, Counter> entry : senders.entrySet()) {
+                Counter sender = entry.getValue();
+
+                if(sender.stamp >= stamp) {
+                    continue;
+                }
+
+                long change = bySender.getOrDefault(entry.getKey(), 0L) - sender.count.sum();
+                sender.count.add(change);
+                totalChange += change;
+                corrected += Math.abs(change);
+            }
+
+            total.add(totalChange);
+            corrected += minutes.reconcile(byMinute, stamp, now);
+            corrected += hours.reconcile(byHour, stamp, now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        corrections.add(corrected);
+        reconciles.record(System.nanoTime() - started);
+        return true;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * A ring of counts for the last few buckets of time of one width. Bucket n covers time_posted_epoch n * width up to
+     * (n + 1) * width and lives in slot n modulo the number of slots.
+     */
+    private static class TimeBuckets {
+        private final long width;
+        private final AtomicReferenceArray<Bucket> slots;
+
+        private static class Bucket {
+            final long number;
+            final LongAdder count = new LongAdder();
+            volatile long stamp;
+
+            Bucket(long number) {
+                this.number = number;
+            }
+        }
+
+        TimeBuckets(long width, int size) {
+            this.width = width;
+            this.slots = new AtomicReferenceArray<>(Math.max(1, size));
+        }
+
+        private int slot(long number) {
+            return (int) Math.floorMod(number, (long) slots.length());
+        }
+
+        /**
+         * @return the oldest bucket the ring covers at a time
+         */
+        private long oldest(long now) {
+            return Math.floorDiv(now, width) - slots.length() + 1;
+        }
+
+        void add(long time, int delta, long stamp, long now) {
+            long number = Math.floorDiv(time, width);
+
+            if(number < oldest(now) || number > Math.floorDiv(now, width)) {
+                return;
+            }
+
+            int i = slot(number);
+
+            while(true) {
+                Bucket bucket = slots.get(i);
+
+                if(bucket != null && bucket.number == number) {
+                    bucket.count.add(delta);
+                    bucket.stamp = stamp;
+                    return;
+                }
+
+                if(bucket != null && bucket.number > number) {
+                    // the clock has moved on and the bucket has been taken over since the time was checked
+                    return;
+                }
+
+                slots.compareAndSet(i, bucket, new Bucket(number));
+            }
+        }
+
+        private long count(long number) {
+            Bucket bucket = slots.get(slot(number));
+            return (bucket != null && bucket.number == number) ? bucket.count.sum() : 0;
+        }
+
+        List<MessageCount> get(int last, long now) {
+            if(last < 1 || last > slots.length()) {
+                return null;
+            }
+
+            long current = Math.floorDiv(now, width);
+            List<MessageCount> counts = new ArrayList<>(last);
+
+            for(long number = current - last + 1; number <= current; number++) {
+                counts.add(new MessageCount(null, number * width, count(number)));
+            }
+
+            return counts;
+        }
+
+        /**
+         * @return the number of messages in each bucket the ring covers at a time, from the store
+         */
+        Map<Long, Long> query(MessageStore messageStore, long now) {
+            long since = Math.max(0, oldest(now) * width);
+            return messageStore.countMessagesByTimeBucket(width, since, (Math.floorDiv(now, width) + 1) * width);
+        }
+
+        /**
+         * Sets the buckets the ring covered at the time of a query to the counts it found; call under the exclusive lock
+         * @return the sum of the changes made
+         */
+        long reconcile(Map<Long, Long> counts, long stamp, long now) {
+            long corrected = 0;
+
+            for(long number = Math.max(0, oldest(now)); number <= Math.floorDiv(now, width); number++) {
+                int i = slot(number);
+                Bucket bucket = slots.get(i);
+                long count = counts.getOrDefault(number, 0L);
+
+                if(bucket != null && bucket.number == number) {
+                    if(bucket.stamp < stamp) {
+                        long change = count - bucket.count.sum();
+                        bucket.count.add(change);
+                        corrected += Math.abs(change);
+                    }
+                } else if(count != 0 && (bucket == null || bucket.number < number)) {
+                    Bucket fresh = new Bucket(number);
+                    fresh.count.add(count);
+                    slots.set(i, fresh);
+                    corrected += count;
+                }
+            }
+
+            return corrected;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package Service;
+
+import Model.Message;
+
+/**
+ * A change to the messages table, as published by MessageService to its event ring: a message was posted, had its text
+ * updated, or was deleted. The message is the row as it stands after the change (or, for a deletion, as it stood
+ * before it).
+ */
+public class MessageEvent {
+    public enum Type {
+        POSTED("posted"), UPDATED("updated"), DELETED("deleted");
+
+        private final String name;
+
+        Type(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name clients see the event under
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Type type;
+    private final Message message;
+
+    public MessageEvent(Type type, Message message) {
+        this.type = type;
+        this.message = message;
+    }
+
+    /**
+     * @return what happened to the message
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the message
+     */
+    public Message getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,557 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import Model.Message;
+import Util.Config;
+import Util.Metrics;
+
+/**
+ * The MessageSearchIndex class is an in-memory inverted index of message_text: for every term (a lowercased run of
+ * letters and digits), the ids of the messages that contain it.
+ *
+ * Each posting list is kept in ascending message_id order as blocks of up to BLOCK_SIZE ids, each block holding its
+ * first id and then the gaps between ids as variable-length integers, so most ids take one or two bytes. Queries walk
+ * the lists newest first, block by block, and stop as soon as a page of matches is found, so a query touches the newest
+ * matches and what lies between them rather than the whole table.
+ *
+ * A query is a list of words that must all match (AND); a word ending in * matches every term it is a prefix of. The
+ * index also remembers each message's terms, so that updates and deletions can take the message out of exactly the
+ * lists it is in. Queries share a read lock; changes take the write lock.
+ */
+class MessageSearchIndex {
+    /**
+     * The most terms a prefix word may expand to; a query with a prefix matching more than this, such as a single letter,
+     * is refused rather than answered from only some of the terms
+     */
+    static final int MAX_PREFIX_TERMS = Config.getInt("socialmedia.search.maxPrefixTerms", 1000);
+    static final int MAX_QUERY_WORDS = 16;
+
+    private static final int BLOCK_SIZE = 128;
+    private static final Pattern NON_TERM = Pattern.compile("[^\\p{L}\\p{N}]+");
+    /**
+     * Stands in for the cursor of a prefix that matches more than MAX_PREFIX_TERMS terms
+     */
+    private static final Cursor TOO_BROAD = new PostingList().cursor();
+
+    private final TreeMap<String, PostingList> postings = new TreeMap<>();
+    private final Map<Integer, String[]> termsById = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Metrics.Timer queries = Metrics.timer("search_query", "time to find the ids of one page of search results");
+    private volatile long postingBytes;
+
+    MessageSearchIndex() {
+        Metrics.gauge("search_index_terms", "distinct terms in the message search index", this::termCount);
+        Metrics.gauge("search_index_messages", "messages in the message search index", this::messageCount);
+        Metrics.gauge("search_index_posting_bytes", "bytes of compressed posting lists in the message search index",
+                () -> postingBytes);
+    }
+
+    /**
+     * @param text a message_text or a query word
+     * @return its distinct terms, lowercased, in order of first appearance
+     */
+    static List<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+
+        for(String term : NON_TERM.split(text.toLowerCase(Locale.ROOT))) {
+            if(!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+
+        return new ArrayList<>(terms);
+    }
+
+    /***
+     * Indexes a new message, or re-indexes one whose text has changed
+     * @param message the message as it is stored
+     */
+    void put(Message message) {
+        String[] terms = terms(message.getMessage_text()).toArray(new String[0]);
+        int id = message.getMessage_id();
+
+        lock.writeLock().lock();
+        try {
+            String[] previous = termsById.put(id, terms);
+
+            if(previous != null) {
+                for(String term : previous) {
+                    removePosting(term, id);
+                }
+            }
+
+            for(String term : terms) {
+                PostingList list = postings.computeIfAbsent(term, t -> new PostingList());
+                postingBytes -= list.bytes();
+                list.add(id);
+                postingBytes += list.bytes();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /***
+     * Takes a deleted message out of the index
+     * @param message_id the message's id
+     */
+    void remove(int message_id) {
+        lock.writeLock().lock();
+        try {
+            String[] terms = termsById.remove(message_id);
+
+            if(terms != null) {
+                for(String term : terms) {
+                    removePosting(term, message_id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removePosting(String term, int id) {
+        PostingList list = postings.get(term);
+
+        if(list == null) {
+            return;
+        }
+
+        postingBytes -= list.bytes();
+        list.remove(id);
+        postingBytes += list.bytes();
+
+        if(list.isEmpty()) {
+            postings.remove(term);
+        }
+    }
+
+    /**
+     * A parsed query: the terms that must each match, and for each whether it is a prefix
+     */
+    static class Query {
+        final List<String> terms = new ArrayList<>();
+        final List<Boolean> prefixes = new ArrayList<>();
+
+        /**
+         * @param q the query text, such as "hello wor*"
+         * @return the query, or null if it has no terms or more than MAX_QUERY_WORDS
+         */
+        static Query parse(String q) {
+            if(q == null) {
+                return null;
+            }
+
+            Query query = new Query();
+
+            for(String word : q.trim().split("\\s+")) {
+                boolean prefix = word.endsWith("*");
+                List<String> terms = terms(word);
+
+                for(int i = 0; i < terms.size(); i++) {
+                    query.terms.add(terms.get(i));
+                    // "foo-ba*" means foo AND ba*
+                    query.prefixes.add(prefix && i == terms.size() - 1);
+                }
+            }
+
+            return (query.terms.isEmpty() || query.terms.size() > MAX_QUERY_WORDS) ? null : query;
+        }
+    }
+
+    /***
+     * Finds the newest messages matching a query
+     * @param query the query
+     * @param before only messages with a smaller message_id are returned
+     * @param limit the most ids to return
+     * @return the ids of the matching messages, newest (highest message_id) first, or null if a prefix word matches more
+     * than MAX_PREFIX_TERMS terms
+     */
+    List<Integer> search(Query query, int before, int limit) {
+        long start = System.nanoTime();
+        List<Integer> ids = new ArrayList<>(Math.min(limit, 1024));
+
+        lock.readLock().lock();
+        try {
+            Cursor[] cursors = new Cursor[query.terms.size()];
+
+            for(int i = 0; i < cursors.length; i++) {
+                cursors[i] = cursorFor(query.terms.get(i), query.prefixes.get(i));
+
+                if(cursors[i] == TOO_BROAD) {
+                    return null;
+                }
+
+                if(cursors[i] == null) {
+                    return ids;
+                }
+            }
+
+            // smallest lists first, so that they lead the leapfrog
+            Arrays.sort(cursors, (a, b) -> Long.compare(a.size(), b.size()));
+            int target = before - 1;
+
+            while(ids.size() < limit && target > 0) {
+                int agreed = 0;
+
+                for(int i = 0; agreed < cursors.length; i = (i + 1) % cursors.length) {
+                    int id = cursors[i].advanceTo(target);
+
+                    if(id < 0) {
+                        return ids;
+                    }
+
+                    if(id == target) {
+                        agreed++;
+                    } else {
+                        target = id;
+                        agreed = 1;
+                    }
+                }
+
+                ids.add(target);
+                target--;
+            }
+
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+            queries.record(System.nanoTime() - start);
+        }
+    }
+
+    private Cursor cursorFor(String term, boolean prefix) {
+        if(!prefix) {
+            PostingList list = postings.get(term);
+            return (list == null) ? null : list.cursor();
+        }
+
+        SortedMap<String, PostingList> matches = postings.subMap(term, term + Character.MAX_VALUE);
+        List<Cursor> cursors = new ArrayList<>();
+
+        for(PostingList list : matches.values()) {
+            if(cursors.size() == MAX_PREFIX_TERMS) {
+                return TOO_BROAD;
+            }
+
+            cursors.add(list.cursor());
+        }
+
+        if(cursors.isEmpty()) {
+            return null;
+        }
+
+        return (cursors.size() == 1) ? cursors.get(0) : new UnionCursor(cursors);
+    }
+
+    private int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int messageCount() {
+        lock.readLock().lock();
+        try {
+            return termsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Walks a set of ids from the highest down
+     */
+    private interface Cursor {
+        /**
+         * @param target an id no higher than any passed before
+         * @return the highest id in the set that is no higher than target, or -1 if there is none
+         */
+        int advanceTo(int target);
+
+        /**
+         * @return roughly how many ids the set holds
+         */
+        long size();
+    }
+
+    /**
+     * The ids in any of several posting lists
+     */
+    private static class UnionCursor implements Cursor {
+        private final List<Cursor> cursors;
+        private final int[] current;
+        private final long size;
+
+        UnionCursor(List<Cursor> cursors) {
+            this.cursors = cursors;
+            this.current = new int[cursors.size()];
+            Arrays.fill(current, Integer.MAX_VALUE);
+            this.size = cursors.stream().mapToLong(Cursor::size).sum();
+        }
+
+        @Override
+        public int advanceTo(int target) {
+            int best = -1;
+
+            for(int i = 0; i < current.length; i++) {
+                if(current[i] > target) {
+                    current[i] = cursors.get(i).advanceTo(target);
+                }
+
+                best = Math.max(best, current[i]);
+            }
+
+            return best;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+    }
+
+    /**
+     * The ids of the messages that contain one term, in ascending order, as delta-encoded blocks
+     */
+    static class PostingList {
+        private final List<Block> blocks = new ArrayList<>();
+        private int size;
+        private long bytes;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the bytes of gaps the list holds
+         */
+        long bytes() {
+            return bytes;
+        }
+
+        private void replace(int index, Block block) {
+            bytes += block.length - blocks.get(index).length;
+            blocks.set(index, block);
+        }
+
+        void add(int id) {
+            Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+
+            if(last != null && id > last.last) {
+                // new messages have the highest ids, so this is the usual case
+                if(last.count < BLOCK_SIZE) {
+                    bytes -= last.length;
+                    last.append(id);
+                    bytes += last.length;
+                } else {
+                    blocks.add(new Block(new int[] { id }));
+                }
+
+                size++;
+                return;
+            }
+
+            if(last == null) {
+                blocks.add(new Block(new int[] { id }));
+                size++;
+                return;
+            }
+
+            int index = Math.max(0, blockFor(id));
+            Block block = blocks.get(index);
+            int[] ids = block.decode();
+            int at = Arrays.binarySearch(ids, id);
+
+            if(at >= 0) {
+                return;
+            }
+
+            at = -at - 1;
+            int[] grown = new int[ids.length + 1];
+            System.arraycopy(ids, 0, grown, 0, at);
+            grown[at] = id;
+            System.arraycopy(ids, at, grown, at + 1, ids.length - at);
+            size++;
+
+            if(grown.length <= BLOCK_SIZE) {
+                replace(index, new Block(grown));
+            } else {
+                int half = grown.length / 2;
+                Block upper = new Block(Arrays.copyOfRange(grown, half, grown.length));
+                replace(index, new Block(Arrays.copyOfRange(grown, 0, half)));
+                blocks.add(index + 1, upper);
+                bytes += upper.length;
+            }
+        }
+
+        void remove(int id) {
+            int index = blockFor(id);
+
+            if(index < 0) {
+                return;
+            }
+
+            int[] ids = blocks.get(index).decode();
+            int at = Arrays.binarySearch(ids, id);
+
+            if(at < 0) {
+                return;
+            }
+
+            size--;
+
+            if(ids.length == 1) {
+                bytes -= blocks.remove(index).length;
+                return;
+            }
+
+            int[] shrunk = new int[ids.length - 1];
+            System.arraycopy(ids, 0, shrunk, 0, at);
+            System.arraycopy(ids, at + 1, shrunk, at, ids.length - at - 1);
+            replace(index, new Block(shrunk));
+        }
+
+        /**
+         * @return the index of the last block whose first id is no higher than id, or -1 if id is below every block
+         */
+        private int blockFor(int id) {
+            int low = 0;
+            int high = blocks.size() - 1;
+
+            while(low <= high) {
+                int middle = (low + high) >>> 1;
+
+                if(blocks.get(middle).first <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            return high;
+        }
+
+        Cursor cursor() {
+            return new Cursor() {
+                private int blockIndex = blocks.size() - 1;
+                private int[] ids;
+                private int position = -1;
+
+                @Override
+                public int advanceTo(int target) {
+                    while(blockIndex >= 0) {
+                        Block block = blocks.get(blockIndex);
+
+                        if(block.first > target) {
+                            // skip the whole block without decoding it
+                            blockIndex--;
+                            ids = null;
+                            continue;
+                        }
+
+                        if(ids == null) {
+                            ids = block.decode();
+                            position = ids.length - 1;
+                        }
+
+                        while(position >= 0 && ids[position] > target) {
+                            position--;
+                        }
+
+                        // block.first <= target, so position >= 0
+                        return ids[position];
+                    }
+
+                    return -1;
+                }
+
+                @Override
+                public long size() {
+                    return size;
+                }
+            };
+        }
+    }
+
+    /**
+     * Up to BLOCK_SIZE ascending ids: the first, and then the gap to each next one as a variable-length integer (seven
+     * bits per byte, high bit set on every byte but the last)
+     */
+    private static class Block {
+        final int first;
+        int last;
+        int count;
+        byte[] gaps;
+        int length;
+
+        Block(int[] ids) {
+            this.first = ids[0];
+            this.last = ids[0];
+            this.count = 1;
+            this.gaps = new byte[Math.max(4, ids.length * 2)];
+
+            for(int i = 1; i < ids.length; i++) {
+                append(ids[i]);
+            }
+        }
+
+        void append(int id) {
+            int gap = id - last;
+
+            if(length + 5 > gaps.length) {
+                gaps = Arrays.copyOf(gaps, gaps.length * 2);
+            }
+
+            while((gap & ~0x7F) != 0) {
+                gaps[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+
+            gaps[length++] = (byte) gap;
+            last = id;
+            count++;
+        }
+
+        int[] decode() {
+            int[] ids = new int[count];
+            ids[0] = first;
+            int position = 0;
+
+            for(int i = 1; i < count; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+
+                do {
+                    b = gaps[position++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while(b < 0);
+
+                ids[i] = ids[i - 1] + gap;
+            }
+
+            return ids;
+        }
+    }
+}
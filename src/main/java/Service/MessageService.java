@@ -1,51 +1,745 @@
 package Service;
 
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageCount;
+import Model.MessagePage;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
-import DAO.MessageDAO;
+import DAO.AccountStore;
+import DAO.GroupCommitWriter;
+import DAO.MessageStore;
+import DAO.MessageRowHandler;
+import DAO.MessageVersions;
+import DAO.Stores;
+import Util.Config;
+import Util.EventRing;
+import Util.TinyLfuCache;
 
 public class MessageService {
-    private MessageDAO messageDAO;
+    /**
+     * The page size used when a client asks for a page without a limit, and the largest page a client may ask for
+     */
+    public static final int DEFAULT_PAGE_SIZE = Config.getInt("socialmedia.page.defaultLimit", 100);
+    public static final int MAX_PAGE_SIZE = Config.getInt("socialmedia.page.maxLimit", 1000);
+
+    /**
+     * Bounds on the cache of messages looked up by id. Setting either to 0 turns the cache off.
+     */
+    public static final long MESSAGE_CACHE_MAX_ENTRIES = Config.getLong("socialmedia.cache.messages.maxEntries", 10000);
+    public static final long MESSAGE_CACHE_MAX_BYTES = Config.getLong("socialmedia.cache.messages.maxBytes", 16L * 1024 * 1024);
+
+    /**
+     * Bounds on the in-memory timelines of recently read senders: how many senders to keep, and how many of each
+     * sender's newest messages. Setting the number of messages to 0 turns the timelines off.
+     */
+    public static final int TIMELINE_MAX_SENDERS = Config.getInt("socialmedia.cache.timelines.maxSenders", 1000);
+    public static final int TIMELINE_MAX_MESSAGES = Config.getInt("socialmedia.cache.timelines.maxMessages", 200);
+
+    /**
+     * The most message ids, or senders, a client may ask for in one multi-get
+     */
+    public static final int MULTI_GET_MAX_KEYS = Config.getInt("socialmedia.messages.multiGet.maxKeys", 1000);
+
+    /**
+     * The most messages a client may post in one batch
+     */
+    public static final int BATCH_MAX_MESSAGES = Config.getInt("socialmedia.messages.batch.maxMessages", 10000);
+
+    /**
+     * Group commit: when enabled, concurrent posts are queued and inserted in batches of up to maxBatch messages, one
+     * transaction per batch, with the first message of a batch waiting at most maxDelayMillis for others to join it
+     */
+    public static final boolean GROUP_COMMIT_ENABLED = Config.getBoolean("socialmedia.messages.groupCommit.enabled", false);
+    public static final int GROUP_COMMIT_MAX_BATCH = Config.getInt("socialmedia.messages.groupCommit.maxBatch", 128);
+    public static final long GROUP_COMMIT_MAX_DELAY_MILLIS = Config.getLong("socialmedia.messages.groupCommit.maxDelayMillis", 2);
+
+    /**
+     * The number of recent message events (posts, updates and deletions) kept for live feeds
+     */
+    public static final int EVENT_RING_SIZE = Config.getInt("socialmedia.events.ringSize", 4096);
+
+    /**
+     * Message statistics: how many of the last minutes and hours are counted, and how often the counts are reconciled
+     * against the database (0 for only at startup)
+     */
+    public static final int STATS_MINUTES = Config.getInt("socialmedia.stats.minutes", 1440);
+    public static final int STATS_HOURS = Config.getInt("socialmedia.stats.hours", 720);
+    public static final long STATS_RECONCILE_MILLIS = Config.getLong("socialmedia.stats.reconcileMillis", 300000);
+
+    /**
+     * A rough estimate of the heap a cached message takes besides its text: the Message, its Integer and Long
+     * fields, the String and its array headers, and the cache's own entry
+     */
+    private static final int MESSAGE_OVERHEAD_BYTES = 160;
+
+    private MessageStore messageStore;
+    private AccountStore accountStore;
+    private final TinyLfuCache<Integer, Message> messageCache = new TinyLfuCache<>("messages",
+            MESSAGE_CACHE_MAX_ENTRIES, MESSAGE_CACHE_MAX_BYTES,
+            message -> MESSAGE_OVERHEAD_BYTES + 2 * message.getMessage_text().length());
+    private final SenderTimelines timelines = new SenderTimelines(TIMELINE_MAX_SENDERS, TIMELINE_MAX_MESSAGES);
+    private GroupCommitWriter groupCommitWriter;
+    private final EventRing<MessageEvent> events = new EventRing<>("messages", EVENT_RING_SIZE);
+    private final MessageSearchIndex searchIndex = new MessageSearchIndex();
+    private MessageCounters counters;
 
     public MessageService() {
-        messageDAO = new MessageDAO();
+        this(Stores.newAccountStore());
+    }
+
+    private MessageService(AccountStore accountStore) {
+        this(Stores.newMessageStore(accountStore), accountStore);
+    }
+
+    public MessageService(MessageStore messageStore, AccountStore accountStore) {
+        this(messageStore, accountStore, GROUP_COMMIT_ENABLED);
+    }
+
+    /***
+     * @param groupCommit whether posts are written by group commit, overriding socialmedia.messages.groupCommit.enabled
+     */
+    public MessageService(MessageStore messageStore, AccountStore accountStore, boolean groupCommit) {
+        this.messageStore = messageStore;
+        this.accountStore = accountStore;
+
+        if(groupCommit) {
+            this.groupCommitWriter = new GroupCommitWriter(messageStore, GROUP_COMMIT_MAX_BATCH, GROUP_COMMIT_MAX_DELAY_MILLIS);
+        }
+
+        buildSearchIndex();
+
+        this.counters = new MessageCounters(messageStore, STATS_MINUTES, STATS_HOURS, STATS_RECONCILE_MILLIS);
+
+        if(!this.counters.reconcile()) {
+            System.out.println("the message statistics could not be loaded");
+        }
+    }
+
+    /***
+     * Indexes every message in the table for searchMessages, one row at a time
+     */
+    private void buildSearchIndex() {
+        try {
+            boolean complete = this.messageStore.streamAllMessages((message_id, posted_by, message_text, time_posted_epoch) ->
+                    this.searchIndex.put(new Message(message_id, posted_by, message_text, time_posted_epoch)));
+
+            if(!complete) {
+                System.out.println("the message search index could not be built");
+            }
+        } catch(IOException e) {
+            System.out.println(e.getMessage());
+        }
     }
 
-    public MessageService(MessageDAO messageDAO) {
-        this.messageDAO = messageDAO;
+    /***
+     * @return the most posts one group commit writes, or 0 if posts are not written by group commit. Each post waits on
+     * its own thread for its batch to commit, so only as many posts as there are threads posting can share a batch.
+     */
+    public int getGroupCommitMaxBatch() {
+        return (this.groupCommitWriter != null) ? GROUP_COMMIT_MAX_BATCH : 0;
+    }
+
+    /***
+     * Writes any posts still waiting for a group commit, and stops the group commit thread and the statistics reconciles
+     */
+    public void shutdown() {
+        if(this.groupCommitWriter != null) {
+            this.groupCommitWriter.shutdown();
+        }
+
+        this.counters.shutdown();
+    }
+
+    /***
+     * @return the ring every post, update and deletion is published to, once it is stored
+     */
+    public EventRing<MessageEvent> getEvents() {
+        return this.events;
     }
 
     public Message postMessage(Message message) {
-        if(message.getMessage_text().length() > 255 || message.getMessage_text().isBlank()) {
+        if(!isValidText(message.getMessage_text())) {
             return null;
         }
 
-        return (this.messageDAO.getPosterIdCount(message.getPosted_by()) > 0) ? this.messageDAO.insertMessage(message) : null;
+        if(!posterExists(message.getPosted_by())) {
+            return null;
+        }
+
+        MessageVersions versions = this.messageStore.getVersions();
+        Message inserted = null;
+        versions.beginWrite();
+
+        try {
+            // the foreign key on posted_by is still the final check, should the account be unknown to the database after all
+            inserted = (this.groupCommitWriter != null)
+                    ? this.groupCommitWriter.submit(message).join()
+                    : this.messageStore.insertMessage(message);
+
+            if(inserted != null) {
+                this.counters.onPosted(inserted);
+                this.timelines.onInsert(inserted);
+                this.searchIndex.put(inserted);
+            }
+        } finally {
+            endWrite(versions, inserted);
+        }
+
+        if(inserted != null) {
+            this.events.publish(new MessageEvent(MessageEvent.Type.POSTED, inserted));
+        }
+
+        return inserted;
+    }
+
+    /***
+     * Posts several messages at once. Each message is checked against the same rules as postMessage, the senders are
+     * checked with one query for all of them, and the valid messages are inserted as one batch in a single transaction.
+     * @param messages the messages to post
+     * @return one result per message, in the same order, or null if there are more than BATCH_MAX_MESSAGES messages or
+     * the senders could not be checked
+     */
+    public List<MessageBatchResult> postMessages(List<Message> messages) {
+        if(messages.size() > BATCH_MAX_MESSAGES) {
+            return null;
+        }
+
+        MessageBatchResult[] results = new MessageBatchResult[messages.size()];
+        List<Integer> textValid = new ArrayList<>(messages.size());
+        Set<Integer> unknownPosters = new HashSet<>();
+
+        for(int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+
+            if(message == null || !isValidText(message.getMessage_text())) {
+                results[i] = MessageBatchResult.rejected(i, "message_text must not be blank or over 255 characters");
+                continue;
+            }
+
+            textValid.add(i);
+
+            if(!this.accountStore.isKnownAccountId(message.getPosted_by())) {
+                unknownPosters.add(message.getPosted_by());
+            }
+        }
+
+        // one query for every sender the account id index does not already know
+        if(!unknownPosters.isEmpty()) {
+            Set<Integer> existing = this.messageStore.getExistingPosterIds(unknownPosters);
+
+            if(existing == null) {
+                return null;
+            }
+
+            for(int account_id : existing) {
+                this.accountStore.addKnownAccountId(account_id);
+            }
+
+            unknownPosters.removeAll(existing);
+        }
+
+        List<Integer> valid = new ArrayList<>(textValid.size());
+        List<Message> toInsert = new ArrayList<>(textValid.size());
+
+        for(int i : textValid) {
+            if(unknownPosters.contains(messages.get(i).getPosted_by())) {
+                results[i] = MessageBatchResult.rejected(i, "posted_by is not an existing account");
+            } else {
+                valid.add(i);
+                toInsert.add(messages.get(i));
+            }
+        }
+
+        MessageVersions versions = this.messageStore.getVersions();
+        List<Message> inserted = Collections.emptyList();
+        versions.beginWrite();
+
+        try {
+            inserted = toInsert.isEmpty() ? toInsert : this.messageStore.insertMessages(toInsert);
+
+            for(Message message : inserted) {
+                if(message != null) {
+                    this.counters.onPosted(message);
+                    this.timelines.onInsert(message);
+                    this.searchIndex.put(message);
+                }
+            }
+        } finally {
+            versions.endWrite(inserted.stream().filter(Objects::nonNull).mapToInt(Message::getPosted_by).distinct().toArray());
+        }
+
+        for(int j = 0; j < valid.size(); j++) {
+            Message message = inserted.get(j);
+            int i = valid.get(j);
+
+            if(message == null) {
+                results[i] = MessageBatchResult.rejected(i, "message could not be stored");
+            } else {
+                this.events.publish(new MessageEvent(MessageEvent.Type.POSTED, message));
+                results[i] = MessageBatchResult.stored(i, message);
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private static boolean isValidText(String message_text) {
+        return message_text != null && message_text.length() <= 255 && !message_text.isBlank();
+    }
+
+    /***
+     * Checks whether a message sender exists, asking the in-memory account id index first and the database only on a miss
+     * @param posted_by the account id of the sender
+     * @return true if the account exists
+     */
+    private boolean posterExists(int posted_by) {
+        if(this.accountStore.isKnownAccountId(posted_by)) {
+            return true;
+        }
+
+        if(this.messageStore.getPosterIdCount(posted_by) > 0) {
+            this.accountStore.addKnownAccountId(posted_by);
+            return true;
+        }
+
+        return false;
     }
 
     public List<Message> getAllMessages() {
-        return this.messageDAO.getAllMessages();
+        return this.messageStore.getAllMessages();
     }
 
+    /***
+     * Gets a tag that changes whenever any message is posted, updated or deleted, without asking the database
+     * @return the tag, or null while a write is in flight
+     */
+    public String getAllMessagesVersion() {
+        MessageVersions versions = this.messageStore.getVersions();
+        return versionTag(versions, "all", versions.getTableVersion());
+    }
+
+    /***
+     * Gets a tag that changes whenever one of a sender's messages is posted, updated or deleted, without asking the database
+     * @param sender_id the account_id of the sender
+     * @return the tag, or null while a write is in flight
+     */
+    public String getMessagesFromSenderVersion(int sender_id) {
+        MessageVersions versions = this.messageStore.getVersions();
+        return versionTag(versions, "s" + sender_id, versions.getSenderVersion(sender_id));
+    }
+
+    private static String versionTag(MessageVersions versions, String scope, long version) {
+        return (version < 0) ? null : Long.toHexString(versions.getNonce()) + "-" + scope + "-" + version;
+    }
+
+    /***
+     * Gets every message a sender has sent, from the sender's timeline if it is in memory and complete
+     * @param sender_id the account_id of the sender
+     * @return the messages in message_id order, or null if the query failed
+     */
     public List<Message> getMessagesFromSender(int sender_id) {
-        return this.messageDAO.getMessagesBySenderId(sender_id);
+        if(!this.timelines.isEnabled()) {
+            return this.messageStore.getMessagesBySenderId(sender_id);
+        }
+
+        List<Message> cached = this.timelines.getAll(sender_id);
+
+        if(cached != null) {
+            return cached;
+        }
+
+        long token = this.timelines.beginLoad(sender_id);
+        List<Message> messages = this.messageStore.getMessagesBySenderId(sender_id);
+
+        if(messages != null) {
+            loadTimeline(sender_id, token, messages);
+        }
+
+        return messages;
     }
 
+    /***
+     * Gets the messages of several senders, answering from the senders' timelines where they are in memory and complete,
+     * and with one query for all of the other senders
+     * @param sender_ids the account_ids of the senders
+     * @return one list per requested sender, in request order, each in message_id order and empty if the sender has no
+     * messages, or null if the query failed
+     */
+    public List<List<Message>> getMessagesFromSenders(List<Integer> sender_ids) {
+        Map<Integer, List<Message>> bySender = new HashMap<>();
+        Map<Integer, Long> tokens = new LinkedHashMap<>();
+
+        for(int sender_id : sender_ids) {
+            if(bySender.containsKey(sender_id)) {
+                continue;
+            }
+
+            List<Message> cached = this.timelines.isEnabled() ? this.timelines.getAll(sender_id) : null;
+
+            if(cached != null) {
+                bySender.put(sender_id, cached);
+            } else {
+                tokens.put(sender_id, this.timelines.beginLoad(sender_id));
+                bySender.put(sender_id, new ArrayList<>());
+            }
+        }
+
+        if(!tokens.isEmpty()) {
+            List<Message> messages = this.messageStore.getMessagesBySenderIds(tokens.keySet());
+
+            if(messages == null) {
+                return null;
+            }
+
+            for(Message message : messages) {
+                bySender.get(message.getPosted_by()).add(message);
+            }
+
+            if(this.timelines.isEnabled()) {
+                for(Map.Entry<Integer, Long> token : tokens.entrySet()) {
+                    loadTimeline(token.getKey(), token.getValue(), bySender.get(token.getKey()));
+                }
+            }
+        }
+
+        List<List<Message>> results = new ArrayList<>(sender_ids.size());
+
+        for(int sender_id : sender_ids) {
+            results.add(bySender.get(sender_id));
+        }
+
+        return results;
+    }
+
+    /***
+     * Keeps the newest of a sender's messages, just read from the database, as the sender's timeline
+     */
+    private void loadTimeline(int sender_id, long token, List<Message> messages) {
+        int from = Math.max(0, messages.size() - TIMELINE_MAX_MESSAGES);
+        this.timelines.load(sender_id, token, messages.subList(from, messages.size()), from == 0);
+    }
+
+    /***
+     * Streams every message to a row handler without collecting them into a list
+     * @param handler receives each message as it is read
+     * @return true if every message was handed over, false if the query failed
+     * @throws IOException if the handler fails
+     */
+    public boolean streamAllMessages(MessageRowHandler handler) throws IOException {
+        return this.messageStore.streamAllMessages(handler);
+    }
+
+    /***
+     * Streams the messages posted within a time range, oldest first, to a row handler without collecting them into a list
+     * @param sender_id the account_id of the sender, or null for every sender
+     * @param since the earliest time_posted_epoch included
+     * @param until the time_posted_epoch at which the range ends, itself excluded
+     * @param handler receives each message as it is read
+     * @return true if every message was handed over, false if the query failed
+     * @throws IOException if the handler fails
+     */
+    public boolean streamMessagesPostedBetween(Integer sender_id, long since, long until, MessageRowHandler handler) throws IOException {
+        if(sender_id == null) {
+            return this.messageStore.streamMessagesPostedBetween(since, until, handler);
+        }
+
+        return this.messageStore.streamMessagesBySenderIdPostedBetween(sender_id, since, until, handler);
+    }
+
+    /***
+     * Streams the messages a sender has sent to a row handler without collecting them into a list
+     * @param sender_id the account_id of the sender
+     * @param handler receives each message as it is read
+     * @return true if every message was handed over, false if the query failed
+     * @throws IOException if the handler fails
+     */
+    public boolean streamMessagesFromSender(int sender_id, MessageRowHandler handler) throws IOException {
+        if(!this.timelines.isEnabled()) {
+            return this.messageStore.streamMessagesBySenderId(sender_id, handler);
+        }
+
+        List<Message> cached = this.timelines.getAll(sender_id);
+
+        if(cached != null) {
+            for(Message message : cached) {
+                handler.row(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+            }
+
+            return true;
+        }
+
+        // keep the newest rows as they stream past, to load them as the sender's timeline once the query completes
+        long token = this.timelines.beginLoad(sender_id);
+        ArrayDeque<Message> newest = new ArrayDeque<>(TIMELINE_MAX_MESSAGES);
+        long[] rows = new long[1];
+
+        boolean streamed = this.messageStore.streamMessagesBySenderId(sender_id, (message_id, posted_by, message_text, time_posted_epoch) -> {
+            handler.row(message_id, posted_by, message_text, time_posted_epoch);
+
+            if(newest.size() == TIMELINE_MAX_MESSAGES) {
+                newest.removeFirst();
+            }
+
+            newest.addLast(new Message(message_id, posted_by, message_text, time_posted_epoch));
+            rows[0]++;
+        });
+
+        if(streamed) {
+            this.timelines.load(sender_id, token, new ArrayList<>(newest), rows[0] <= TIMELINE_MAX_MESSAGES);
+        }
+
+        return streamed;
+    }
+
+    /***
+     * Gets one page of all messages
+     * @param after the cursor returned with the previous page, or 0 for the first page
+     * @param limit the page size, between 1 and MAX_PAGE_SIZE
+     * @return the page, or null if the cursor or limit is out of range
+     */
+    public MessagePage getMessagesPage(int after, int limit) {
+        if(after < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            return null;
+        }
+
+        // ask for one extra row to find out whether another page follows
+        return toPage(this.messageStore.getMessagesAfter(after, limit + 1), limit);
+    }
+
+    /***
+     * Gets one page of the messages a sender has sent
+     * @param sender_id the account_id of the sender
+     * @param after the cursor returned with the previous page, or 0 for the first page
+     * @param limit the page size, between 1 and MAX_PAGE_SIZE
+     * @return the page, or null if the cursor or limit is out of range
+     */
+    public MessagePage getMessagesFromSenderPage(int sender_id, int after, int limit) {
+        if(after < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            return null;
+        }
+
+        List<Message> cached = this.timelines.isEnabled() ? this.timelines.getAfter(sender_id, after, limit + 1) : null;
+
+        if(cached != null) {
+            return toPage(cached, limit);
+        }
+
+        return toPage(this.messageStore.getMessagesBySenderIdAfter(sender_id, after, limit + 1), limit);
+    }
+
+    /***
+     * Searches message_text. Every word of the query must appear in a message (as a whole word, or as the start of one
+     * if it ends in *), ignoring case and punctuation. Matches are ranked newest (highest message_id) first.
+     * @param q the query, such as "hello wor*"
+     * @param before only messages with a smaller message_id are returned; pass the previous page's next_cursor, or 0 for
+     * the first page
+     * @param limit the page size, between 1 and MAX_PAGE_SIZE
+     * @return the page, whose next_cursor is passed back as "before" for the following page, or null if the query has no
+     * words or too many, a prefix word matches too many terms, or the cursor or limit is out of range
+     */
+    public MessagePage searchMessages(String q, int before, int limit) {
+        MessageSearchIndex.Query query = MessageSearchIndex.Query.parse(q);
+
+        if(query == null || before < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            return null;
+        }
+
+        // ask for one extra match to find out whether another page follows
+        List<Integer> ids = this.searchIndex.search(query, (before == 0) ? Integer.MAX_VALUE : before, limit + 1);
+
+        if(ids == null) {
+            return null;
+        }
+
+        List<Message> found = getMessagesByIdentificationNumbers(ids);
+
+        if(found == null) {
+            return null;
+        }
+
+        // a message deleted since the index was read comes back as null
+        found.removeIf(Objects::isNull);
+        return toPage(found, limit);
+    }
+
+    private MessagePage toPage(List<Message> rows, int limit) {
+        if(rows == null) {
+            return null;
+        }
+
+        if(rows.size() <= limit) {
+            return new MessagePage(rows, null);
+        }
+
+        List<Message> messages = rows.subList(0, limit);
+        return new MessagePage(messages, messages.get(limit - 1).getMessage_id());
+    }
+
+    /***
+     * Gets a message by id, from the message cache if it holds it and from the database otherwise
+     * @param id the message_id
+     * @return the message, or null if there is none with that id
+     */
     public Message getMessageByIdentificationNumber(int id) {
-        return this.messageDAO.getMessageById(id);
+        return this.messageCache.get(id, this.messageStore::getMessageById);
+    }
+
+    /***
+     * Gets several messages by id, from the message cache where it holds them and with one query for the rest
+     * @param ids the message_ids
+     * @return one entry per requested id, in request order, with null in place of each id that has no message, or null if
+     * the query failed
+     */
+    public List<Message> getMessagesByIdentificationNumbers(List<Integer> ids) {
+        Map<Integer, Message> found = this.messageCache.getAll(ids, missing -> {
+            List<Message> rows = this.messageStore.getMessagesByIds(missing);
+
+            if(rows == null) {
+                return null;
+            }
+
+            Map<Integer, Message> byId = new HashMap<>();
+
+            for(Message row : rows) {
+                byId.put(row.getMessage_id(), row);
+            }
+
+            return byId;
+        });
+
+        if(found == null) {
+            return null;
+        }
+
+        List<Message> results = new ArrayList<>(ids.size());
+
+        for(int id : ids) {
+            results.add(found.get(id));
+        }
+
+        return results;
+    }
+
+    /***
+     * @return the number of messages, from memory
+     */
+    public long getMessageCount() {
+        return this.counters.getTotal();
+    }
+
+    /***
+     * @param sender_id an account_id
+     * @return the number of messages the account has posted, from memory
+     */
+    public long getMessageCountFromSender(int sender_id) {
+        return this.counters.getFromSender(sender_id);
+    }
+
+    /***
+     * Gets the number of messages posted in each of the last few minutes, by time_posted_epoch, from memory
+     * @param last the number of minutes, up to and including the current one
+     * @return one count per minute, oldest first, or null if last is not between 1 and STATS_MINUTES
+     */
+    public List<MessageCount> getMessageCountsPerMinute(int last) {
+        return this.counters.getPerMinute(last);
+    }
+
+    /***
+     * Gets the number of messages posted in each of the last few hours, by time_posted_epoch, from memory
+     * @param last the number of hours, up to and including the current one
+     * @return one count per hour, oldest first, or null if last is not between 1 and STATS_HOURS
+     */
+    public List<MessageCount> getMessageCountsPerHour(int last) {
+        return this.counters.getPerHour(last);
+    }
+
+    /***
+     * Recounts the messages in the store and corrects the in-memory statistics to match. Also runs every
+     * STATS_RECONCILE_MILLIS.
+     * @return true if the statistics were reconciled, false if a query failed
+     */
+    public boolean reconcileMessageCounts() {
+        return this.counters.reconcile();
     }
 
     public Message updateMessage(int id, String newMessage) {
-        if(newMessage.length() > 255 || newMessage.isBlank()) {
+        if(!isValidText(newMessage)) {
             return null;
         }
 
-        return (this.messageDAO.getMessageIdCount(id) > 0) ? this.messageDAO.updateMessage(id, newMessage) : null;
+        MessageVersions versions = this.messageStore.getVersions();
+        Message updated = null;
+        versions.beginWrite();
+
+        try {
+            updated = this.messageStore.updateMessage(id, newMessage);
+            // invalidate after the write, so a read that races the update cannot cache the old text
+            this.messageCache.invalidate(id);
+
+            if(updated != null) {
+                this.timelines.onUpdate(updated);
+                this.searchIndex.put(updated);
+            }
+        } finally {
+            endWrite(versions, updated);
+        }
+
+        if(updated != null) {
+            this.events.publish(new MessageEvent(MessageEvent.Type.UPDATED, updated));
+        }
+
+        return updated;
     }
 
     public Message deleteMessage(int id) {
-        return (this.messageDAO.getMessageIdCount(id) > 0) ? this.messageDAO.deleteMessage(id) : null;
+        MessageVersions versions = this.messageStore.getVersions();
+        Message deleted = null;
+        versions.beginWrite();
+
+        try {
+            deleted = this.messageStore.deleteMessage(id);
+            this.messageCache.invalidate(id);
+
+            if(deleted != null) {
+                this.counters.onDeleted(deleted);
+                this.timelines.onDelete(deleted);
+                this.searchIndex.remove(deleted.getMessage_id());
+            }
+        } finally {
+            endWrite(versions, deleted);
+        }
+
+        if(deleted != null) {
+            this.events.publish(new MessageEvent(MessageEvent.Type.DELETED, deleted));
+        }
+
+        return deleted;
+    }
+
+    /***
+     * Ends a write to the message store, once the in-memory views show it, so that no reader gets the new version of the
+     * messages and then builds a response from a view that is still behind
+     * @param versions the store's version counters
+     * @param changed the message as written, or null if the write failed
+     */
+    private static void endWrite(MessageVersions versions, Message changed) {
+        if(changed != null) {
+            versions.endWrite(changed.getPosted_by());
+        } else {
+            versions.endWrite();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import Model.Message;
+import Util.Metrics;
+
+/**
+ * The SenderTimelines class keeps the most recent messages of recently read senders in memory, so that reading a
+ * sender's messages again does not have to go back to the database.
+ *
+ * Each timeline holds up to maxMessages of a sender's newest messages in message_id order, and knows from which
+ * message_id onwards it is complete. A timeline for a sender with no more than maxMessages messages is complete from
+ * the start and can answer every read; a longer one can only answer reads that stay within its window. Timelines are
+ * kept up to date as messages are posted, updated and deleted, and the least recently read senders are dropped once
+ * there are more than maxSenders.
+ *
+ * A timeline loaded from the database is only kept if no write for that sender happened while it was being read,
+ * since the rows read may predate the write.
+ */
+class SenderTimelines {
+    private static final int WRITE_STRIPES = 64;
+
+    private final int maxMessages;
+    private final Map<Integer, Timeline> timelines;
+
+    /**
+     * Counts writes per stripe of senders, so a load can tell whether a write for its sender overlapped it
+     */
+    private final AtomicLongArray writes = new AtomicLongArray(WRITE_STRIPES);
+
+    private final LongAdder hits = Metrics.counter("timeline_cache_hits", "sender message reads served from memory");
+    private final LongAdder misses = Metrics.counter("timeline_cache_misses", "sender message reads that went to the database");
+
+    SenderTimelines(int maxSenders, int maxMessages) {
+        this.maxMessages = maxMessages;
+        this.timelines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Timeline> eldest) {
+                return size() > maxSenders;
+            }
+        };
+
+        Metrics.gauge("timeline_cache_senders", "senders with a timeline in memory", this::senderCount);
+        Metrics.gauge("timeline_cache_messages", "messages held in sender timelines", this::messageCount);
+    }
+
+    /***
+     * @return true if timelines are being kept at all
+     */
+    boolean isEnabled() {
+        return maxMessages > 0;
+    }
+
+    /***
+     * @param posted_by the sender's account_id
+     * @return a copy of every message the sender has sent, or null if the sender's timeline is not in memory or not complete
+     */
+    synchronized List<Message> getAll(int posted_by) {
+        Timeline timeline = timelines.get(posted_by);
+
+        if(timeline == null || timeline.coveredFrom > 0) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return new ArrayList<>(timeline.messages);
+    }
+
+    /***
+     * @param posted_by the sender's account_id
+     * @param after only messages with a greater message_id are returned
+     * @param limit the most messages to return
+     * @return a copy of the messages, or null if the sender's timeline is not in memory or does not reach back far enough
+     */
+    synchronized List<Message> getAfter(int posted_by, int after, int limit) {
+        Timeline timeline = timelines.get(posted_by);
+
+        if(timeline == null || after + 1 < timeline.coveredFrom) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        int from = timeline.indexAfter(after);
+        return new ArrayList<>(timeline.messages.subList(from, Math.min(from + limit, timeline.messages.size())));
+    }
+
+    /***
+     * Must be called before reading a sender's messages from the database to later pass to load
+     * @param posted_by the sender's account_id
+     * @return a token that tells load whether a write for the sender happened in the meantime
+     */
+    long beginLoad(int posted_by) {
+        return writes.get(stripe(posted_by));
+    }
+
+    /***
+     * Keeps a sender's messages, as read from the database, as their timeline
+     * @param posted_by the sender's account_id
+     * @param token the value beginLoad returned before the messages were read
+     * @param newest the sender's newest messages in message_id order, at most maxMessages of them
+     * @param complete true if these are all of the sender's messages
+     */
+    synchronized void load(int posted_by, long token, List<Message> newest, boolean complete) {
+        if(writes.get(stripe(posted_by)) != token || newest.size() > maxMessages) {
+            return;
+        }
+
+        int coveredFrom = (complete || newest.isEmpty()) ? 0 : newest.get(0).getMessage_id();
+        timelines.put(posted_by, new Timeline(new ArrayList<>(newest), coveredFrom));
+    }
+
+    /***
+     * Adds a newly posted message to its sender's timeline, if the sender has one
+     * @param message the message as inserted
+     */
+    synchronized void onInsert(Message message) {
+        Timeline timeline = beginWrite(message.getPosted_by());
+
+        if(timeline == null) {
+            return;
+        }
+
+        // a timeline loaded just after the insert committed already holds the message
+        if(timeline.indexOf(message.getMessage_id()) >= 0) {
+            return;
+        }
+
+        // concurrent posts may commit out of message_id order, so insert in place rather than append
+        int index = timeline.indexAfter(message.getMessage_id() - 1);
+        timeline.messages.add(index, message);
+
+        if(timeline.messages.size() > maxMessages) {
+            Message dropped = timeline.messages.remove(0);
+            timeline.coveredFrom = dropped.getMessage_id() + 1;
+        }
+    }
+
+    /***
+     * Replaces an updated message in its sender's timeline, if it is there
+     * @param message the message as updated
+     */
+    synchronized void onUpdate(Message message) {
+        Timeline timeline = beginWrite(message.getPosted_by());
+        int index = (timeline == null) ? -1 : timeline.indexOf(message.getMessage_id());
+
+        if(index >= 0) {
+            timeline.messages.set(index, message);
+        }
+    }
+
+    /***
+     * Removes a deleted message from its sender's timeline, if it is there
+     * @param message the message as deleted
+     */
+    synchronized void onDelete(Message message) {
+        Timeline timeline = beginWrite(message.getPosted_by());
+        int index = (timeline == null) ? -1 : timeline.indexOf(message.getMessage_id());
+
+        if(index >= 0) {
+            timeline.messages.remove(index);
+        }
+    }
+
+    private Timeline beginWrite(int posted_by) {
+        writes.incrementAndGet(stripe(posted_by));
+        return timelines.get(posted_by);
+    }
+
+    private static int stripe(int posted_by) {
+        return (posted_by * 0x9e3779b9) >>> 26;
+    }
+
+    private synchronized int senderCount() {
+        return timelines.size();
+    }
+
+    private synchronized long messageCount() {
+        long count = 0;
+
+        for(Timeline timeline : timelines.values()) {
+            count += timeline.messages.size();
+        }
+
+        return count;
+    }
+
+    /**
+     * A sender's newest messages in message_id order. Every message the sender has with a message_id of at least
+     * coveredFrom is in the list.
+     */
+    private static class Timeline {
+        final List<Message> messages;
+        int coveredFrom;
+
+        Timeline(List<Message> messages, int coveredFrom) {
+            this.messages = messages;
+            this.coveredFrom = coveredFrom;
+        }
+
+        /**
+         * @return the index of the first message with a message_id greater than after
+         */
+        int indexAfter(int after) {
+            int low = 0;
+            int high = messages.size();
+
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+
+                if(messages.get(middle).getMessage_id() <= after) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        int indexOf(int message_id) {
+            int index = indexAfter(message_id - 1);
+            return (index < messages.size() && messages.get(index).getMessage_id() == message_id) ? index : -1;
+        }
+    }
+}
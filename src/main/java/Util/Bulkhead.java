@@ -0,0 +1,189 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.VirtualThreads;
+
+/**
+ * The Bulkhead class runs one kind of work (such as reads, or writes) on its own fixed set of threads, with its own
+ * bounded queue and its own pool of database connections, so that a backlog of one kind of work cannot take the
+ * threads or connections another kind needs.
+ *
+ * Work that finds every thread busy waits in the queue; work that finds the queue full as well is refused at once
+ * rather than left to wait, so that the caller can answer 503 (Service Unavailable) straight away. Every connection
+ * borrowed through ConnectionUtil on a bulkhead's threads comes from the bulkhead's own connection pool.
+ *
+ * A bulkhead can also run its work on virtual threads, one per piece of work, where the JVM has them. It then has no
+ * threads of its own: a semaphore with one permit per thread bounds how much of its work runs at once, and another with
+ * a permit per thread and per queue slot bounds how much may be running or waiting, so the limits are the same.
+ */
+public class Bulkhead {
+	/**
+	 * A piece of work to run on a bulkhead's threads
+	 */
+	@FunctionalInterface
+	public interface Task {
+		void run() throws Exception;
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final ConnectionPool pool;
+	private final Semaphore running;
+	private final Semaphore admitted;
+	private volatile boolean shutdown;
+	private final int threads;
+	private final int queueCapacity;
+	private final LongAdder rejected;
+	private final Metrics.Timer queueWait;
+
+	/**
+	 * @param name a short name for the bulkhead, used in thread and metric names
+	 * @param threads the number of threads that run its work
+	 * @param queueCapacity the most pieces of work that may wait for a thread
+	 * @param connections the most database connections its threads may hold at once
+	 */
+	public Bulkhead(String name, int threads, int queueCapacity, int connections) {
+		this(name, threads, queueCapacity, connections, false);
+	}
+
+	/**
+	 * @param name a short name for the bulkhead, used in thread and metric names
+	 * @param threads the most pieces of work that run at once
+	 * @param queueCapacity the most pieces of work that may wait to run
+	 * @param connections the most database connections its work may hold at once
+	 * @param virtualThreads true to run each piece of work on a virtual thread of its own, if the JVM has them
+	 */
+	public Bulkhead(String name, int threads, int queueCapacity, int connections, boolean virtualThreads) {
+		this.threads = threads;
+		this.queueCapacity = queueCapacity;
+		this.pool = ConnectionUtil.getSubPool(name, connections);
+
+		if(virtualThreads && VirtualThreads.areSupported()) {
+			this.executor = null;
+			this.running = new Semaphore(threads);
+			this.admitted = new Semaphore(threads + queueCapacity);
+		} else {
+			AtomicInteger threadNumber = new AtomicInteger();
+			this.running = null;
+			this.admitted = null;
+			this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+					(queueCapacity > 0) ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(), runnable -> {
+						Thread thread = new Thread(() -> {
+							ConnectionUtil.bindPool(pool);
+							runnable.run();
+						}, "bulkhead-" + name + "-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+		}
+
+		String prefix = "bulkhead_" + name;
+		this.rejected = Metrics.counter(prefix + "_rejected", "requests refused because the " + name + " bulkhead was full");
+		this.queueWait = Metrics.timer(prefix + "_queue_wait", "time " + name + " work waited for a thread");
+		Metrics.gauge(prefix + "_active_threads", "threads running " + name + " work", this::getActive);
+		Metrics.gauge(prefix + "_queued", name + " work waiting for a thread", this::getQueued);
+		Metrics.gauge(prefix + "_saturation", "share of the " + name + " bulkhead's threads and queue in use, from 0 to 1",
+				() -> (double) (getActive() + getQueued()) / (threads + queueCapacity));
+	}
+
+	/***
+	 * Queues a piece of work, unless the bulkhead is full
+	 * @param task the work to run
+	 * @return completes when the work has run, exceptionally if it threw; or null if the bulkhead was full and the work
+	 * was refused
+	 */
+	public CompletableFuture<Void> submit(Task task) {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		long queued = System.nanoTime();
+
+		if(executor == null) {
+			if(shutdown || !admitted.tryAcquire()) {
+				rejected.increment();
+				return null;
+			}
+
+			VirtualThreads.executeOnVirtualThread(() -> {
+				running.acquireUninterruptibly();
+
+				try {
+					ConnectionUtil.bindPool(pool);
+					run(task, done, queued);
+				} finally {
+					running.release();
+					admitted.release();
+				}
+			});
+
+			return done;
+		}
+
+		try {
+			executor.execute(() -> run(task, done, queued));
+		} catch(RejectedExecutionException e) {
+			rejected.increment();
+			return null;
+		}
+
+		return done;
+	}
+
+	private void run(Task task, CompletableFuture<Void> done, long queued) {
+		queueWait.record(System.nanoTime() - queued);
+
+		try {
+			task.run();
+			done.complete(null);
+		} catch(Throwable e) {
+			done.completeExceptionally(e);
+		}
+	}
+
+	/***
+	 * @return true if the bulkhead runs its work on virtual threads
+	 */
+	public boolean isVirtual() {
+		return executor == null;
+	}
+
+	/***
+	 * @return the number of threads that run the bulkhead's work, or on virtual threads the most work that runs at once
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/***
+	 * @return the most pieces of work that may wait for a thread
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/***
+	 * Lets queued work finish and stops the threads. Work submitted afterwards is refused.
+	 */
+	public void shutdown() {
+		shutdown = true;
+
+		if(executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	private int getActive() {
+		return (executor != null) ? executor.getActiveCount() : threads - running.availablePermits();
+	}
+
+	private int getQueued() {
+		return (executor != null) ? executor.getQueue().size()
+				: Math.max(0, threads + queueCapacity - admitted.availablePermits() - getActive());
+	}
+}
@@ -0,0 +1,82 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The ConcurrentBitSet class is a growable set of non-negative ints stored one bit per value. It suits dense,
+ * auto-incremented ids: a million account ids take 125 KB.
+ *
+ * Lookups take no lock and may run alongside additions. Additions are serialized, which is fine for sets that are
+ * read far more often than they are written. Values are never removed.
+ */
+public class ConcurrentBitSet {
+
+	/**
+	 * The words holding the bits. Replaced by a larger copy when a value beyond the end is added.
+	 */
+	private volatile AtomicLongArray words = new AtomicLongArray(16);
+	private volatile int size;
+
+	/***
+	 * @param value a non-negative int
+	 * @return true if the value has been added
+	 */
+	public boolean contains(int value) {
+		if(value < 0) {
+			return false;
+		}
+
+		AtomicLongArray current = words;
+		int index = value >>> 6;
+
+		return index < current.length() && (current.get(index) & (1L << value)) != 0;
+	}
+
+	/***
+	 * Adds a value to the set
+	 * @param value a non-negative int
+	 * @return true if the value was not already in the set
+	 */
+	public synchronized boolean add(int value) {
+		if(value < 0) {
+			throw new IllegalArgumentException("value must not be negative: " + value);
+		}
+
+		int index = value >>> 6;
+		AtomicLongArray current = words;
+
+		if(index >= current.length()) {
+			AtomicLongArray grown = new AtomicLongArray(Math.max(index + 1, current.length() * 2));
+
+			for(int i = 0; i < current.length(); i++) {
+				grown.set(i, current.get(i));
+			}
+
+			words = grown;
+			current = grown;
+		}
+
+		long bit = 1L << value;
+		boolean added = (current.getAndUpdate(index, word -> word | bit) & bit) == 0;
+
+		if(added) {
+			size++;
+		}
+
+		return added;
+	}
+
+	/***
+	 * @return the number of values in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/***
+	 * @return the approximate number of bytes used by the bits
+	 */
+	public long sizeInBytes() {
+		return words.length() * 8L;
+	}
+}
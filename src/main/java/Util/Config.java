@@ -0,0 +1,81 @@
+package Util;
+
+/**
+ * The Config class reads tunable settings for the application. A setting is looked up first as a JVM system property
+ * (e.g. -Dsocialmedia.pool.maxSize=20) and then as an environment variable with the dots replaced by underscores and
+ * the name upper-cased (e.g. SOCIALMEDIA_POOL_MAXSIZE=20). If neither is set, the supplied default is used.
+ */
+public class Config {
+
+	private Config() {
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent
+	 * @return the raw value of the setting as a String
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(key);
+
+		if(value == null) {
+			value = System.getenv(key.replace('.', '_').toUpperCase());
+		}
+
+		return (value == null || value.isBlank()) ? defaultValue : value.trim();
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent or not a number
+	 * @return the value of the setting as an int
+	 */
+	public static int getInt(String key, int defaultValue) {
+		try {
+			return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
+		} catch(NumberFormatException e) {
+			System.out.println(e.getMessage());
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent or not a number
+	 * @return the value of the setting as a long
+	 */
+	public static long getLong(String key, long defaultValue) {
+		try {
+			return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+		} catch(NumberFormatException e) {
+			System.out.println(e.getMessage());
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent or not a number
+	 * @return the value of the setting as a double
+	 */
+	public static double getDouble(String key, double defaultValue) {
+		try {
+			return Double.parseDouble(getString(key, String.valueOf(defaultValue)));
+		} catch(NumberFormatException e) {
+			System.out.println(e.getMessage());
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * @param key the name of the setting
+	 * @param defaultValue the value to use when the setting is absent
+	 * @return true if the setting is "true" (ignoring case)
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
+	}
+}
@@ -0,0 +1,378 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+/**
+ * The ConnectionPool class keeps a bounded set of physical database connections open and lends them out. A borrowed
+ * connection is a thin proxy: calling close() on it hands the physical connection back to the pool instead of closing
+ * it, so DAO code that closes its connection when it is done keeps working unchanged. Any statement the borrower left
+ * open is closed at that point, so a pooled connection never collects open statements over its lifetime.
+ *
+ * At most maxSize connections are ever lent at once. A borrower that finds the pool exhausted waits up to the acquire
+ * timeout for a connection to come back and then gets an SQLException. Idle connections are optionally checked with
+ * Connection.isValid before being lent out, and broken ones are replaced.
+ */
+public class ConnectionPool {
+
+	/**
+	 * Where new physical connections come from
+	 */
+	private final DataSource dataSource;
+	private final String name;
+	private final int maxSize;
+	private final long acquireTimeoutMillis;
+	private final boolean validateOnBorrow;
+	private final int validationTimeoutSeconds;
+
+	/**
+	 * One permit per connection that may be lent out. Fair, so waiting borrowers are served in arrival order.
+	 */
+	private final Semaphore permits;
+	/**
+	 * Physical connections that are open but not lent out. Most recently returned first, so a warm connection is reused.
+	 */
+	private final BlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final AtomicInteger open = new AtomicInteger();
+	private final Metrics.Timer borrowWait;
+
+	/**
+	 * @param name a short name for the pool, used in metric names
+	 * @param dataSource the source of physical connections
+	 * @param minSize the number of connections opened up front
+	 * @param maxSize the largest number of connections that may be lent out at once
+	 * @param acquireTimeoutMillis how long a borrower waits for a connection before giving up
+	 * @param validateOnBorrow whether idle connections are checked before being lent out
+	 */
+	public ConnectionPool(String name, DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis, boolean validateOnBorrow) {
+		if(maxSize < 1 || minSize < 0 || minSize > maxSize) {
+			throw new IllegalArgumentException("pool sizes must satisfy 0 <= min <= max and max >= 1");
+		}
+
+		this.name = name;
+		this.dataSource = dataSource;
+		this.maxSize = maxSize;
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.validateOnBorrow = validateOnBorrow;
+		this.validationTimeoutSeconds = 1;
+		this.permits = new Semaphore(maxSize, true);
+
+		String prefix = "db_pool_" + name;
+		Metrics.gauge(prefix + "_active_connections", "connections currently lent out", active::get);
+		Metrics.gauge(prefix + "_idle_connections", "open connections waiting to be lent out", idle::size);
+		Metrics.gauge(prefix + "_open_connections", "physical connections currently open", open::get);
+		Metrics.gauge(prefix + "_waiting_borrowers", "threads waiting for a connection", waiting::get);
+		Metrics.gauge(prefix + "_max_connections", "largest number of connections that may be lent out", () -> maxSize);
+		this.borrowWait = Metrics.timer(prefix + "_borrow_wait", "time spent waiting to borrow a connection");
+
+		for(int i = 0; i < minSize; i++) {
+			try {
+				idle.offer(openPhysical());
+			} catch(SQLException e) {
+				System.out.println(e.getMessage());
+				break;
+			}
+		}
+	}
+
+	/***
+	 * Lends out a connection, waiting up to the acquire timeout if every connection is in use
+	 * @return a pooled connection. Closing it returns it to the pool.
+	 * @throws SQLException if no connection became available in time or a new one could not be opened
+	 */
+	public Connection borrow() throws SQLException {
+		long start = System.nanoTime();
+		boolean acquired;
+
+		waiting.incrementAndGet();
+		try {
+			acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection from pool " + name, e);
+		} finally {
+			waiting.decrementAndGet();
+			borrowWait.record(System.nanoTime() - start);
+		}
+
+		if(!acquired) {
+			throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection from pool " + name);
+		}
+
+		try {
+			Connection physical = takeIdle();
+
+			if(physical == null) {
+				physical = openPhysical();
+			}
+
+			active.incrementAndGet();
+			return wrap(physical);
+
+		} catch(SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/***
+	 * @return the largest number of connections that may be lent out at once
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/***
+	 * @return the number of connections currently lent out
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/***
+	 * @return the number of open connections waiting to be lent out
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	/***
+	 * Closes every idle connection. Connections that are lent out are closed when they are returned.
+	 */
+	public void shutdown() {
+		Connection physical;
+
+		while((physical = idle.pollFirst()) != null) {
+			discard(physical);
+		}
+	}
+
+	/***
+	 * Takes the most recently used idle connection, skipping any that fail validation
+	 * @return a usable physical connection, or null if none are idle
+	 */
+	private Connection takeIdle() {
+		Connection physical;
+
+		while((physical = idle.pollFirst()) != null) {
+			if(!validateOnBorrow || isUsable(physical)) {
+				return physical;
+			}
+
+			discard(physical);
+		}
+
+		return null;
+	}
+
+	private boolean isUsable(Connection physical) {
+		try {
+			return physical.isValid(validationTimeoutSeconds);
+		} catch(SQLException e) {
+			return false;
+		}
+	}
+
+	private Connection openPhysical() throws SQLException {
+		Connection physical = dataSource.getConnection();
+		open.incrementAndGet();
+		return physical;
+	}
+
+	private void discard(Connection physical) {
+		open.decrementAndGet();
+
+		try {
+			physical.close();
+		} catch(SQLException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/***
+	 * Takes back a connection from a borrower. Any transaction left open is rolled back and auto-commit is restored so
+	 * the next borrower starts from a clean state. A connection that cannot be reset is closed instead of reused.
+	 * @param physical the physical connection behind the proxy that was closed
+	 */
+	private void giveBack(Connection physical) {
+		try {
+			if(physical.isClosed()) {
+				open.decrementAndGet();
+			} else {
+				if(!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+
+				idle.offerFirst(physical);
+			}
+		} catch(SQLException e) {
+			System.out.println(e.getMessage());
+			discard(physical);
+		} finally {
+			active.decrementAndGet();
+			permits.release();
+		}
+	}
+
+	private Connection wrap(Connection physical) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new PooledConnectionHandler(physical));
+	}
+
+	/**
+	 * Forwards every call to the physical connection except close(), which closes the statements created through the
+	 * proxy and returns the connection to the pool, exactly once. Statements are handed out behind a proxy of their own
+	 * that stops tracking them once the borrower closes them, so a connection kept for many statements tracks only the
+	 * open ones.
+	 *
+	 * Calls are serialized with a lock rather than a synchronized method, since a virtual thread that blocks on the
+	 * database inside a synchronized method holds on to its carrier thread.
+	 */
+	private class PooledConnectionHandler implements InvocationHandler {
+		private final Connection physical;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Set<Statement> statements = Collections.newSetFromMap(new IdentityHashMap<>());
+		private boolean returned;
+
+		PooledConnectionHandler(Connection physical) {
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			lock.lock();
+			try {
+				return invokeLocked(proxy, method, args);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private Object invokeLocked(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+				case "close":
+					if(!returned) {
+						returned = true;
+						closeStatements();
+						giveBack(physical);
+					}
+					return null;
+				case "isClosed":
+					return returned || physical.isClosed();
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "toString":
+					return "PooledConnection[" + name + "]" + (returned ? " (returned)" : "");
+				default:
+					break;
+			}
+
+			if(returned) {
+				throw new SQLException("Connection has already been returned to pool " + name);
+			}
+
+			Object result;
+
+			try {
+				result = method.invoke(physical, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+
+			if(result instanceof Statement) {
+				statements.add((Statement) result);
+				return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { method.getReturnType() },
+						new TrackedStatementHandler(this, (Statement) result));
+			}
+
+			return result;
+		}
+
+		/**
+		 * Stops tracking a statement the borrower has closed
+		 */
+		void untrack(Statement statement) {
+			lock.lock();
+			try {
+				statements.remove(statement);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Closes the statements the borrower has not closed itself, which also closes their result sets
+		 */
+		private void closeStatements() {
+			for(Statement statement : statements) {
+				try {
+					statement.close();
+				} catch(SQLException e) {
+					System.out.println(e.getMessage());
+				}
+			}
+
+			statements.clear();
+		}
+	}
+
+	/**
+	 * Forwards every call to a statement made through a pooled connection, and stops the connection tracking it once it is
+	 * closed
+	 */
+	private static class TrackedStatementHandler implements InvocationHandler {
+		private final PooledConnectionHandler connection;
+		private final Statement physical;
+
+		TrackedStatementHandler(PooledConnectionHandler connection, Statement physical) {
+			this.connection = connection;
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch(method.getName()) {
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					break;
+			}
+
+			Object result;
+
+			try {
+				result = method.invoke(physical, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+
+			if(method.getName().equals("close")) {
+				connection.untrack(physical);
+			}
+
+			return result;
+		}
+	}
+}
@@ -4,6 +4,8 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -13,7 +15,15 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are lent out by a bounded {@link ConnectionPool}. Closing a
+ * connection returns it to the pool. The pool is sized with the settings
+ * socialmedia.pool.minSize, socialmedia.pool.maxSize,
+ * socialmedia.pool.acquireTimeoutMillis and socialmedia.pool.validateOnBorrow
+ * (see {@link Config}).
+ *
+ * A thread can be bound to a sub-pool (see {@link Bulkhead}), in which case
+ * its connections come from that pool instead, so that one kind of work
+ * cannot use up the connections another kind needs.
  */
 public class ConnectionUtil {
 
@@ -32,30 +42,93 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource for opening the physical connections that the pool hands out.
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * The pool of open connections shared by every DAO.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static ConnectionPool pool;
+
+	/**
+	 * Sub-pools by name, opened on first use and shared for the life of the JVM.
+	 */
+	private static Map<String, ConnectionPool> subPools = new ConcurrentHashMap<>();
+
+	/**
+	 * The pool the current thread borrows from, if it is not the shared one.
+	 */
+	private static ThreadLocal<ConnectionPool> boundPool = new ThreadLocal<>();
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = new ConnectionPool("main", dataSource,
+				Config.getInt("socialmedia.pool.minSize", 2),
+				Config.getInt("socialmedia.pool.maxSize", 10),
+				Config.getLong("socialmedia.pool.acquireTimeoutMillis", 5000),
+				Config.getBoolean("socialmedia.pool.validateOnBorrow", true));
 	}
 
 	/**
 	 * @return an active connection to the database
+	 * @throws SQLException if none could be borrowed from the pool in time
+	 */
+	public static Connection getConnection() throws SQLException {
+		ConnectionPool bound = boundPool.get();
+		return (bound != null) ? bound.borrow() : pool.borrow();
+	}
+
+	/**
+	 * Gets a sub-pool, opening it with no idle connections on first use.
+	 * 
+	 * @param name    the name of the sub-pool, used in metric names
+	 * @param maxSize the largest number of connections it may lend out at once;
+	 *                ignored if the sub-pool is already open
+	 * @return the sub-pool
 	 */
-	public static Connection getConnection() {
+	public static ConnectionPool getSubPool(String name, int maxSize) {
+		return subPools.computeIfAbsent(name, key -> new ConnectionPool(key, dataSource, 0, maxSize,
+				Config.getLong("socialmedia.pool.acquireTimeoutMillis", 5000),
+				Config.getBoolean("socialmedia.pool.validateOnBorrow", true)));
+	}
+
+	/**
+	 * Makes every later getConnection() on the current thread borrow from the
+	 * given pool.
+	 * 
+	 * @param subPool the pool to borrow from, or null for the shared pool
+	 */
+	public static void bindPool(ConnectionPool subPool) {
+		if (subPool == null) {
+			boundPool.remove();
+		} else {
+			boundPool.set(subPool);
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool, ignoring a null connection and any
+	 * error raised while closing it. Meant for finally blocks.
+	 * 
+	 * @param connection the connection to close
+	 */
+	public static void closeConnection(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+
 		try {
-			return pool.getConnection();
+			connection.close();
 		} catch (SQLException e) {
-			e.printStackTrace();
+			System.out.println(e.getMessage());
 		}
-
-		return null;
 	}
 
 	/**
@@ -66,7 +139,13 @@ public class ConnectionUtil {
 	public static void resetTestDatabase() {
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			Connection connection = getConnection();
+
+			try {
+				RunScript.execute(connection, sqlReader);
+			} finally {
+				closeConnection(connection);
+			}
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
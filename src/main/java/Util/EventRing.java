@@ -0,0 +1,159 @@
+package Util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The EventRing class is a fixed-size, lock-free ring buffer of events that any number of threads publish to and any
+ * number of readers follow, each at its own pace. Every event gets the next sequence number; a publisher claims its
+ * number with one atomic increment and then stores the event in that number's slot, so publishers never wait for each
+ * other or for readers.
+ *
+ * A reader is a position in the sequence. Once publishers are more than the ring's capacity ahead of it, the events it
+ * has not read yet have been overwritten, and the reader is "lapped": it can give up, or skip ahead to the oldest event
+ * the ring still holds.
+ */
+public class EventRing<T> {
+	private final AtomicReferenceArray<Slot<T>> slots;
+	private final int mask;
+	private final AtomicLong nextSequence = new AtomicLong();
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+	private final LongAdder published;
+
+	private static final class Slot<T> {
+		final long sequence;
+		final T event;
+
+		Slot(long sequence, T event) {
+			this.sequence = sequence;
+			this.event = event;
+		}
+	}
+
+	/**
+	 * @param name a short name for the ring, used in metric names
+	 * @param capacity the number of events the ring holds, rounded up to a power of two
+	 */
+	public EventRing(String name, int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+		this.published = Metrics.counter("events_" + name + "_published", "events published to the " + name + " ring");
+		Metrics.gauge("events_" + name + "_sequence", "sequence number of the next event published to the " + name + " ring",
+				nextSequence::get);
+	}
+
+	/***
+	 * Publishes an event and then runs every listener
+	 * @param event the event
+	 * @return the event's sequence number
+	 */
+	public long publish(T event) {
+		long sequence = nextSequence.getAndIncrement();
+		slots.set((int) (sequence & mask), new Slot<>(sequence, event));
+		published.increment();
+
+		for(Runnable listener : listeners) {
+			listener.run();
+		}
+
+		return sequence;
+	}
+
+	/***
+	 * Adds a listener run on the publishing thread after every publish. Listeners should only hand work off, not do it.
+	 * @param listener the listener
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	/***
+	 * @param listener a listener added before
+	 */
+	public void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+	/***
+	 * @return the number of events the ring holds
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/***
+	 * @return the sequence number the next event published will get
+	 */
+	public long getNextSequence() {
+		return nextSequence.get();
+	}
+
+	/***
+	 * @return a reader positioned after the events published so far, so that it reads only events published from now on
+	 */
+	public Reader reader() {
+		return new Reader(nextSequence.get());
+	}
+
+	/**
+	 * A position in the ring. A reader is meant to be used by one thread at a time.
+	 */
+	public class Reader {
+		private long position;
+		private boolean lapped;
+
+		private Reader(long position) {
+			this.position = position;
+		}
+
+		/***
+		 * @return the next event, or null if the reader has caught up with the publishers or has been lapped
+		 */
+		public T poll() {
+			Slot<T> slot = slots.get((int) (position & mask));
+
+			if(slot == null || slot.sequence < position) {
+				// not published yet, or claimed but not yet stored
+				return null;
+			}
+
+			if(slot.sequence > position) {
+				lapped = true;
+				return null;
+			}
+
+			position++;
+			return slot.event;
+		}
+
+		/***
+		 * @return true if events this reader had not read yet were overwritten before it got to them
+		 */
+		public boolean isLapped() {
+			return lapped;
+		}
+
+		/***
+		 * Moves the reader past the events it has lost to the oldest event the ring still holds
+		 * @return the number of events skipped
+		 */
+		public long skipToOldest() {
+			long oldest = Math.max(position, nextSequence.get() - getCapacity());
+			long skipped = oldest - position;
+			position = oldest;
+			lapped = false;
+			return skipped;
+		}
+
+		/***
+		 * @return the sequence number of the next event this reader will read
+		 */
+		public long getPosition() {
+			return position;
+		}
+	}
+}
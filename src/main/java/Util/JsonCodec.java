@@ -0,0 +1,31 @@
+package Util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import io.javalin.json.JavalinJackson;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The JsonCodec class holds the one ObjectMapper the application reads and writes JSON with. An ObjectMapper is
+ * thread-safe once configured, and building one is expensive: each new mapper discovers and builds its serializers
+ * for Message and Account all over again. Sharing one means that work is done once per class, not once per request.
+ *
+ * The Blackbird module replaces Jackson's reflective getter and setter calls with lambdas generated at runtime
+ * through LambdaMetafactory, which the JIT can inline like ordinary method calls.
+ */
+public class JsonCodec {
+
+	/**
+	 * The shared mapper. Do not reconfigure it after startup.
+	 */
+	public static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new BlackbirdModule());
+
+	/**
+	 * The shared mapper as a Javalin JsonMapper, for Context.json and Context.bodyAsClass
+	 */
+	public static final JsonMapper JAVALIN = new JavalinJackson(MAPPER);
+
+	private JsonCodec() {
+	}
+}
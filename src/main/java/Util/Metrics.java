@@ -0,0 +1,191 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The Metrics class is a small process-wide registry of gauges, counters and timers. Everything registered here is
+ * rendered in the Prometheus text exposition format by {@link #render()}, which the controller serves on GET /metrics.
+ *
+ * Registering a name a second time replaces a gauge (so a freshly started component reports its own state) but returns
+ * the existing counter or timer (so counts keep accumulating across restarts of the app within one JVM).
+ */
+public class Metrics {
+
+	/**
+	 * Every metric keyed by name. A sorted map keeps the rendered output stable.
+	 */
+	private static final Map<String, Metric> registry = new ConcurrentSkipListMap<>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Registers a gauge whose value is sampled every time the metrics are rendered
+	 * @param name the metric name
+	 * @param help a one line description of the metric
+	 * @param value supplies the current value
+	 */
+	public static void gauge(String name, String help, DoubleSupplier value) {
+		registry.put(name, new Gauge(help, value));
+	}
+
+	/**
+	 * @param name the metric name
+	 * @param help a one line description of the metric
+	 * @return the monotonically increasing counter registered under the name
+	 */
+	public static LongAdder counter(String name, String help) {
+		return ((Counter) registry.computeIfAbsent(name, key -> new Counter(help))).count;
+	}
+
+	/**
+	 * @param name the metric name
+	 * @param help a one line description of the metric
+	 * @return the summary registered under the name
+	 */
+	public static Summary summary(String name, String help) {
+		return (Summary) registry.computeIfAbsent(name, key -> new Summary(help));
+	}
+
+	/**
+	 * @param name the metric name, without a unit suffix
+	 * @param help a one line description of the metric
+	 * @return the timer registered under the name
+	 */
+	public static Timer timer(String name, String help) {
+		return (Timer) registry.computeIfAbsent(name, key -> new Timer(help));
+	}
+
+	/**
+	 * @return all registered metrics in the Prometheus text exposition format
+	 */
+	public static String render() {
+		StringBuilder builder = new StringBuilder();
+
+		for(Map.Entry<String, Metric> entry : registry.entrySet()) {
+			entry.getValue().render(entry.getKey(), builder);
+		}
+
+		return builder.toString();
+	}
+
+	private interface Metric {
+		void render(String name, StringBuilder builder);
+	}
+
+	private static void header(StringBuilder builder, String name, String help, String type) {
+		builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static class Gauge implements Metric {
+		private final String help;
+		private final DoubleSupplier value;
+
+		Gauge(String help, DoubleSupplier value) {
+			this.help = help;
+			this.value = value;
+		}
+
+		@Override
+		public void render(String name, StringBuilder builder) {
+			header(builder, name, help, "gauge");
+			builder.append(name).append(' ').append(value.getAsDouble()).append('\n');
+		}
+	}
+
+	private static class Counter implements Metric {
+		private final String help;
+		private final LongAdder count = new LongAdder();
+
+		Counter(String help) {
+			this.help = help;
+		}
+
+		@Override
+		public void render(String name, StringBuilder builder) {
+			header(builder, name, help, "counter");
+			builder.append(name).append("_total ").append(count.sum()).append('\n');
+		}
+	}
+
+	/**
+	 * A summary records how many values were observed, their total and the largest single value, such as the sizes of
+	 * batches.
+	 */
+	public static class Summary implements Metric {
+		final String help;
+		final LongAdder count = new LongAdder();
+		final LongAdder total = new LongAdder();
+		final AtomicLong max = new AtomicLong();
+
+		Summary(String help) {
+			this.help = help;
+		}
+
+		/***
+		 * Records one value
+		 * @param value the observed value
+		 */
+		public void record(long value) {
+			count.increment();
+			total.add(value);
+			max.accumulateAndGet(value, Math::max);
+		}
+
+		/***
+		 * @return the number of recorded values
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/***
+		 * @return the mean of the recorded values
+		 */
+		public double getMean() {
+			long events = count.sum();
+			return (events == 0) ? 0 : (double) total.sum() / events;
+		}
+
+		@Override
+		public void render(String name, StringBuilder builder) {
+			header(builder, name, help, "summary");
+			builder.append(name).append("_count ").append(count.sum()).append('\n');
+			builder.append(name).append("_sum ").append(total.sum()).append('\n');
+			builder.append(name).append("_max ").append(max.get()).append('\n');
+		}
+	}
+
+	/**
+	 * A timer records how many times something happened, how long it took in total and the longest single duration.
+	 * Durations are recorded in nanoseconds and rendered in seconds.
+	 */
+	public static class Timer extends Summary {
+		Timer(String help) {
+			super(help);
+		}
+
+		/***
+		 * @return the mean duration of the recorded events in nanoseconds
+		 */
+		public double getMeanNanos() {
+			return getMean();
+		}
+
+		@Override
+		public void render(String name, StringBuilder builder) {
+			double nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+
+			header(builder, name + "_seconds", help, "summary");
+			builder.append(name).append("_seconds_count ").append(count.sum()).append('\n');
+			builder.append(name).append("_seconds_sum ").append(total.sum() / nanosPerSecond).append('\n');
+			builder.append(name).append("_seconds_max ").append(max.get() / nanosPerSecond).append('\n');
+		}
+	}
+}
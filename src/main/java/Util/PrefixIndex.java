@@ -0,0 +1,330 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The PrefixIndex class maps unique strings (such as usernames) to int ids and finds, in order, the strings that start
+ * with a given prefix.
+ *
+ * Most strings live in a packed, sorted array: their UTF-8 bytes back to back in one byte array, with an array of
+ * offsets into it and an array of ids, so a string costs its bytes plus eight, rather than the sixty or more a String in
+ * a tree map would. A lookup is a binary search for the first string at or after the prefix followed by a scan. Strings
+ * added since the array was built go into a small concurrent skip list; once that holds mergeThreshold strings it is
+ * merged into a new array, which readers pick up on their next lookup. Lookups take no locks; adds are serialized.
+ *
+ * Strings are ordered by code point, which is also the order of their UTF-8 bytes.
+ */
+public class PrefixIndex {
+	/**
+	 * Compares strings by code point rather than by UTF-16 unit, to match the order of their UTF-8 bytes. The two orders
+	 * only differ where a surrogate meets a unit from U+E000 to U+FFFF, so at the first difference those are moved into
+	 * code point order.
+	 */
+	private static final Comparator<String> CODE_POINT_ORDER = (a, b) -> {
+		int length = Math.min(a.length(), b.length());
+
+		for(int i = 0; i < length; i++) {
+			char x = a.charAt(i);
+			char y = b.charAt(i);
+
+			if(x != y) {
+				if(x >= Character.MIN_SURROGATE && y >= Character.MIN_SURROGATE) {
+					return Integer.compare(fixUp(x), fixUp(y));
+				}
+
+				return Integer.compare(x, y);
+			}
+		}
+
+		return Integer.compare(a.length(), b.length());
+	};
+
+	private static int fixUp(char c) {
+		return (c > Character.MAX_SURROGATE) ? c - 0x800 : c + 0x2000;
+	}
+
+	private final int mergeThreshold;
+	private final ReentrantLock addLock = new ReentrantLock();
+	private volatile Snapshot snapshot = new Snapshot(Packed.EMPTY, newDelta());
+
+	/**
+	 * A string and its id, as found by a lookup
+	 */
+	public static class Entry {
+		private final String key;
+		private final int id;
+
+		Entry(String key, int id) {
+			this.key = key;
+			this.id = id;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public int getId() {
+			return id;
+		}
+	}
+
+	/**
+	 * @param mergeThreshold the number of strings added since the packed array was built at which they are merged into it
+	 */
+	public PrefixIndex(int mergeThreshold) {
+		this.mergeThreshold = Math.max(1, mergeThreshold);
+	}
+
+	private static ConcurrentSkipListMap<String, Integer> newDelta() {
+		return new ConcurrentSkipListMap<>(CODE_POINT_ORDER);
+	}
+
+	/***
+	 * Adds a string, or changes its id if it is already present
+	 * @param key the string
+	 * @param id its id
+	 */
+	public void add(String key, int id) {
+		addLock.lock();
+		try {
+			Snapshot current = snapshot;
+			current.delta.put(key, id);
+
+			if(current.delta.size() >= mergeThreshold) {
+				snapshot = new Snapshot(current.packed.merge(entries(current.delta)), newDelta());
+			}
+		} finally {
+			addLock.unlock();
+		}
+	}
+
+	/***
+	 * Adds many strings at once, building the packed array in one go
+	 * @param entries the strings and their ids
+	 */
+	public void addAll(Map<String, Integer> entries) {
+		List<Map.Entry<String, Integer>> added = new ArrayList<>(entries.entrySet());
+		added.sort(Map.Entry.comparingByKey(CODE_POINT_ORDER));
+
+		addLock.lock();
+		try {
+			Snapshot current = snapshot;
+			Packed packed = current.delta.isEmpty() ? current.packed : current.packed.merge(entries(current.delta));
+			snapshot = new Snapshot(packed.merge(added), newDelta());
+		} finally {
+			addLock.unlock();
+		}
+	}
+
+	private static List<Map.Entry<String, Integer>> entries(ConcurrentSkipListMap<String, Integer> delta) {
+		return new ArrayList<>(delta.entrySet());
+	}
+
+	/***
+	 * Finds the strings that start with a prefix
+	 * @param prefix the prefix
+	 * @param limit the most strings to return
+	 * @return the strings and their ids, in code point order
+	 */
+	public List<Entry> findByPrefix(String prefix, int limit) {
+		Snapshot current = snapshot;
+		List<Entry> found = new ArrayList<>(Math.min(limit, 64));
+		byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+
+		Packed packed = current.packed;
+		int i = packed.lowerBound(prefixBytes);
+		Iterator<Map.Entry<String, Integer>> added = current.delta.tailMap(prefix, true).entrySet().iterator();
+		Map.Entry<String, Integer> next = nextWithPrefix(added, prefix);
+
+		while(found.size() < limit) {
+			boolean packedHas = i < packed.size() && packed.startsWith(i, prefixBytes);
+
+			if(!packedHas && next == null) {
+				break;
+			}
+
+			String packedKey = packedHas ? packed.key(i) : null;
+			int order = !packedHas ? 1 : (next == null) ? -1 : CODE_POINT_ORDER.compare(packedKey, next.getKey());
+
+			if(order < 0) {
+				found.add(new Entry(packedKey, packed.ids[i]));
+				i++;
+			} else {
+				// on a tie the added entry is the newer one
+				found.add(new Entry(next.getKey(), next.getValue()));
+				next = nextWithPrefix(added, prefix);
+
+				if(order == 0) {
+					i++;
+				}
+			}
+		}
+
+		return found;
+	}
+
+	private static Map.Entry<String, Integer> nextWithPrefix(Iterator<Map.Entry<String, Integer>> entries, String prefix) {
+		if(!entries.hasNext()) {
+			return null;
+		}
+
+		Map.Entry<String, Integer> entry = entries.next();
+		return entry.getKey().startsWith(prefix) ? entry : null;
+	}
+
+	/***
+	 * @return the number of strings in the index
+	 */
+	public int size() {
+		Snapshot current = snapshot;
+		int size = current.packed.size();
+
+		for(String key : current.delta.keySet()) {
+			if(current.packed.indexOf(key.getBytes(StandardCharsets.UTF_8)) < 0) {
+				size++;
+			}
+		}
+
+		return size;
+	}
+
+	/***
+	 * @return the approximate memory used by the packed array, in bytes
+	 */
+	public long sizeInBytes() {
+		Packed packed = snapshot.packed;
+		return packed.bytes.length + 4L * packed.offsets.length + 4L * packed.ids.length;
+	}
+
+	private static class Snapshot {
+		final Packed packed;
+		final ConcurrentSkipListMap<String, Integer> delta;
+
+		Snapshot(Packed packed, ConcurrentSkipListMap<String, Integer> delta) {
+			this.packed = packed;
+			this.delta = delta;
+		}
+	}
+
+	/**
+	 * An immutable sorted array of strings: string i is bytes[offsets[i]] up to bytes[offsets[i + 1]], with id ids[i]
+	 */
+	private static class Packed {
+		static final Packed EMPTY = new Packed(new byte[0], new int[] { 0 }, new int[0]);
+
+		final byte[] bytes;
+		final int[] offsets;
+		final int[] ids;
+
+		Packed(byte[] bytes, int[] offsets, int[] ids) {
+			this.bytes = bytes;
+			this.offsets = offsets;
+			this.ids = ids;
+		}
+
+		int size() {
+			return ids.length;
+		}
+
+		String key(int i) {
+			return new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * @return string i compared with key, byte by byte
+		 */
+		private int compare(int i, byte[] key) {
+			return Arrays.compareUnsigned(bytes, offsets[i], offsets[i + 1], key, 0, key.length);
+		}
+
+		boolean startsWith(int i, byte[] prefix) {
+			int start = offsets[i];
+			return offsets[i + 1] - start >= prefix.length
+					&& Arrays.equals(bytes, start, start + prefix.length, prefix, 0, prefix.length);
+		}
+
+		/**
+		 * @return the index of the first string at or after key
+		 */
+		int lowerBound(byte[] key) {
+			int low = 0;
+			int high = size();
+
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+
+				if(compare(middle, key) < 0) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+
+			return low;
+		}
+
+		/**
+		 * @return the index of key, or -1 if it is not present
+		 */
+		int indexOf(byte[] key) {
+			int i = lowerBound(key);
+			return (i < size() && compare(i, key) == 0) ? i : -1;
+		}
+
+		/**
+		 * @param added distinct strings to merge in, in code point order; their ids win over this array's
+		 * @return a new array holding the strings of both
+		 */
+		Packed merge(List<Map.Entry<String, Integer>> added) {
+			int capacity = size() + added.size();
+			byte[][] addedBytes = new byte[added.size()][];
+			int[] addedIds = new int[added.size()];
+			long byteCount = bytes.length;
+
+			for(int k = 0; k < addedBytes.length; k++) {
+				addedBytes[k] = added.get(k).getKey().getBytes(StandardCharsets.UTF_8);
+				addedIds[k] = added.get(k).getValue();
+				byteCount += addedBytes[k].length;
+			}
+
+			byte[] mergedBytes = new byte[Math.toIntExact(byteCount)];
+			int[] mergedOffsets = new int[capacity + 1];
+			int[] mergedIds = new int[capacity];
+			int i = 0;
+			int j = 0;
+			int n = 0;
+			int position = 0;
+
+			while(i < size() || j < addedBytes.length) {
+				int order = (i == size()) ? 1 : (j == addedBytes.length) ? -1 : compare(i, addedBytes[j]);
+				mergedOffsets[n] = position;
+
+				if(order < 0) {
+					int length = offsets[i + 1] - offsets[i];
+					System.arraycopy(bytes, offsets[i], mergedBytes, position, length);
+					position += length;
+					mergedIds[n++] = ids[i++];
+				} else {
+					System.arraycopy(addedBytes[j], 0, mergedBytes, position, addedBytes[j].length);
+					position += addedBytes[j].length;
+					mergedIds[n++] = addedIds[j++];
+
+					if(order == 0) {
+						i++;
+					}
+				}
+			}
+
+			mergedOffsets[n] = position;
+			return new Packed(Arrays.copyOf(mergedBytes, position), Arrays.copyOf(mergedOffsets, n + 1), Arrays.copyOf(mergedIds, n));
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The ScalableBloomFilter class is a set of strings that can answer "definitely not present" or "maybe present". It
+ * never forgets a string it was given, so a "definitely not present" answer is always right; a "maybe present" answer
+ * is wrong with a probability close to the configured false-positive rate.
+ *
+ * A plain Bloom filter has to be sized for the number of strings up front. This one starts with a single filter and
+ * adds another, twice as large and with half the false-positive rate, whenever the newest one fills up (Almeida et al.,
+ * "Scalable Bloom Filters"). The false-positive rates of the stages form a geometric series, so the overall rate stays
+ * below the configured target however many strings are added.
+ *
+ * Lookups and additions take no lock; only adding a stage is serialized.
+ */
+public class ScalableBloomFilter {
+
+	/**
+	 * Each new stage gets this fraction of the previous stage's false-positive rate
+	 */
+	private static final double TIGHTENING_RATIO = 0.5;
+	private static final int GROWTH_FACTOR = 2;
+
+	private final double targetFalsePositiveRate;
+	private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param initialCapacity the number of strings the first stage is sized for
+	 * @param targetFalsePositiveRate the overall false-positive rate to stay under, between 0 and 1
+	 */
+	public ScalableBloomFilter(int initialCapacity, double targetFalsePositiveRate) {
+		if(targetFalsePositiveRate <= 0 || targetFalsePositiveRate >= 1) {
+			throw new IllegalArgumentException("false-positive rate must be between 0 and 1: " + targetFalsePositiveRate);
+		}
+
+		this.targetFalsePositiveRate = targetFalsePositiveRate;
+		// the stage rates p0, p0*r, p0*r^2, ... sum to p0 / (1 - r), so start at target * (1 - r)
+		stages.add(new Stage(Math.max(initialCapacity, 64), targetFalsePositiveRate * (1 - TIGHTENING_RATIO)));
+	}
+
+	/***
+	 * @param value the string to look for
+	 * @return false if the string was definitely never added, true if it may have been
+	 */
+	public boolean mightContain(String value) {
+		long hash = hash(value);
+
+		for(Stage stage : stages) {
+			if(stage.mightContain(hash)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/***
+	 * Adds a string to the filter
+	 * @param value the string to add
+	 */
+	public void add(String value) {
+		long hash = hash(value);
+
+		for(Stage stage : stages) {
+			if(stage.mightContain(hash)) {
+				return;
+			}
+		}
+
+		currentStage().add(hash);
+	}
+
+	/***
+	 * @return the stage new strings go into, adding a larger one if the newest stage is full
+	 */
+	private Stage currentStage() {
+		Stage newest = stages.get(stages.size() - 1);
+
+		if(newest.count.get() < newest.capacity) {
+			return newest;
+		}
+
+		synchronized(this) {
+			newest = stages.get(stages.size() - 1);
+
+			if(newest.count.get() >= newest.capacity) {
+				newest = new Stage(newest.capacity * GROWTH_FACTOR, newest.falsePositiveRate * TIGHTENING_RATIO);
+				stages.add(newest);
+			}
+
+			return newest;
+		}
+	}
+
+	/***
+	 * @return the configured overall false-positive rate
+	 */
+	public double getTargetFalsePositiveRate() {
+		return targetFalsePositiveRate;
+	}
+
+	/***
+	 * Estimates the current false-positive rate from how full each stage actually is
+	 * @return the probability that a string never added is reported as maybe present
+	 */
+	public double getExpectedFalsePositiveRate() {
+		double allMiss = 1;
+
+		for(Stage stage : stages) {
+			allMiss *= 1 - stage.expectedFalsePositiveRate();
+		}
+
+		return 1 - allMiss;
+	}
+
+	/***
+	 * @return the number of stages
+	 */
+	public int getStageCount() {
+		return stages.size();
+	}
+
+	/***
+	 * @return the number of bytes used by the bits of every stage
+	 */
+	public long sizeInBytes() {
+		long bytes = 0;
+
+		for(Stage stage : stages) {
+			bytes += stage.bits.length() * 8L;
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * A 64-bit FNV-1a hash of the UTF-8 bytes, finished with the MurmurHash3 mixer so that both halves are well mixed.
+	 * The halves are used as the two base hashes for double hashing.
+	 */
+	private static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+
+		for(byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b;
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+
+	/**
+	 * One fixed-size Bloom filter
+	 */
+	private static class Stage {
+		private final int capacity;
+		private final double falsePositiveRate;
+		private final long numBits;
+		private final int numHashes;
+		private final AtomicLongArray bits;
+		private final AtomicInteger count = new AtomicInteger();
+		private final AtomicLong bitsSet = new AtomicLong();
+
+		Stage(int capacity, double falsePositiveRate) {
+			this.capacity = capacity;
+			this.falsePositiveRate = falsePositiveRate;
+
+			// the standard optimal sizing: m = -n ln p / (ln 2)^2 bits and k = (m / n) ln 2 hash functions
+			long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+			int words = (int) ((optimalBits + 63) / 64);
+
+			this.bits = new AtomicLongArray(words);
+			this.numBits = words * 64L;
+			this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+		}
+
+		boolean mightContain(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+
+			for(int i = 0; i < numHashes; i++) {
+				long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+
+				if((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		void add(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+
+			for(int i = 0; i < numHashes; i++) {
+				long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+				long mask = 1L << bit;
+
+				if((bits.getAndUpdate((int) (bit >>> 6), word -> word | mask) & mask) == 0) {
+					bitsSet.incrementAndGet();
+				}
+			}
+
+			count.incrementAndGet();
+		}
+
+		/**
+		 * The chance that all k probes for an absent string land on set bits: (fraction of bits set)^k
+		 */
+		double expectedFalsePositiveRate() {
+			return Math.pow((double) bitsSet.get() / numBits, numHashes);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.h2.tools.RunScript;
+
+/**
+ * The SchemaMigrator class brings the database schema up to date when the application starts. Each migration is a SQL
+ * script in src/main/resources/db/migration named V{version}__{description}.sql and listed, in order, in MIGRATIONS.
+ * A script runs at most once: after it succeeds its version and a CRC32 checksum of its text are recorded in the
+ * schema_history table. Editing a script that has already been applied is an error, since the database would no
+ * longer match what the script says; add a new migration instead.
+ */
+public class SchemaMigrator {
+
+	/**
+	 * Every migration script, oldest first. New migrations are appended to the end.
+	 */
+	private static final String[] MIGRATIONS = {
+		"V1__baseline_schema.sql",
+		"V2__message_indexes.sql",
+	};
+
+	private static final String HISTORY_TABLE = "create table if not exists schema_history ("
+			+ "version int primary key, "
+			+ "description varchar(255), "
+			+ "checksum bigint, "
+			+ "applied_on timestamp default current_timestamp)";
+
+	private SchemaMigrator() {
+	}
+
+	/**
+	 * Applies every migration that has not been applied yet, in order
+	 * @return the number of migrations applied
+	 * @throws IllegalStateException if a migration fails, or an applied migration's script has changed
+	 */
+	public static synchronized int migrate() {
+		int applied = 0;
+
+		try(Connection connection = ConnectionUtil.getConnection()) {
+			try(Statement statement = connection.createStatement()) {
+				statement.execute(HISTORY_TABLE);
+			}
+
+			Map<Integer, Long> history = readHistory(connection);
+
+			for(String script : MIGRATIONS) {
+				int version = versionOf(script);
+				String sql = readScript(script);
+				long checksum = checksum(sql);
+				Long appliedChecksum = history.get(version);
+
+				if(appliedChecksum == null) {
+					apply(connection, script, version, sql, checksum);
+					applied++;
+				} else if(appliedChecksum != checksum) {
+					throw new IllegalStateException("Migration " + script + " has changed since it was applied");
+				}
+			}
+
+			return applied;
+
+		} catch(SQLException | IOException e) {
+			throw new IllegalStateException("Schema migration failed: " + e.getMessage(), e);
+		}
+	}
+
+	private static Map<Integer, Long> readHistory(Connection connection) throws SQLException {
+		Map<Integer, Long> history = new HashMap<>();
+
+		try(Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("SELECT version, checksum FROM schema_history")) {
+			while(rows.next()) {
+				history.put(rows.getInt(1), rows.getLong(2));
+			}
+		}
+
+		return history;
+	}
+
+	/**
+	 * Runs one script and records it in schema_history. H2 commits DDL statements as it runs them, so a script that
+	 * fails part way is not recorded and is retried from the top on the next start; scripts are written with
+	 * "if not exists" so that is safe.
+	 */
+	private static void apply(Connection connection, String script, int version, String sql, long checksum) throws SQLException {
+		RunScript.execute(connection, new StringReader(sql));
+
+		try(PreparedStatement record = connection.prepareStatement("INSERT INTO schema_history (version, description, checksum) VALUES (?, ?, ?)")) {
+			record.setInt(1, version);
+			record.setString(2, script.substring(script.indexOf("__") + 2, script.length() - ".sql".length()).replace('_', ' '));
+			record.setLong(3, checksum);
+			record.executeUpdate();
+		}
+
+		System.out.println("Applied schema migration " + script);
+	}
+
+	private static int versionOf(String script) {
+		return Integer.parseInt(script.substring(1, script.indexOf("__")));
+	}
+
+	private static String readScript(String script) throws IOException {
+		InputStream in = SchemaMigrator.class.getResourceAsStream("/db/migration/" + script);
+
+		if(in == null) {
+			throw new IOException("Missing migration script " + script);
+		}
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			in.transferTo(bytes);
+			return bytes.toString(StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static long checksum(String sql) {
+		CRC32 crc = new CRC32();
+		crc.update(sql.getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+
+	/**
+	 * @return the highest migration version recorded in schema_history, or 0 if none has been applied
+	 */
+	public static int currentVersion() {
+		try(Connection connection = ConnectionUtil.getConnection();
+				Statement statement = connection.createStatement();
+				ResultSet row = statement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_history")) {
+			row.next();
+			return row.getInt(1);
+
+		} catch(SQLException e) {
+			System.out.println(e.getMessage());
+		}
+
+		return 0;
+	}
+}
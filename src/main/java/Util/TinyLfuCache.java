@@ -0,0 +1,492 @@
+package Util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * The TinyLfuCache class is a bounded, size-aware cache that uses the W-TinyLFU policy (Einziger, Friedman and Manes,
+ * "TinyLFU: A Highly Efficient Cache Admission Policy"). It keeps the entries that are used most often rather than
+ * only the ones used most recently, so a burst of one-off reads cannot push the hot entries out.
+ *
+ * New entries go into a small LRU "window". An entry that falls out of the window competes with the entry the main
+ * area would evict next; whichever has been accessed more often, according to a compact count-min sketch of recent
+ * access frequencies, stays. The main area is a segmented LRU: an entry read again while on probation is promoted to
+ * the protected segment.
+ *
+ * The cache is bounded both by entry count and by total weight (an estimate of bytes supplied by a weigher). Reads
+ * are served from a concurrent map; the bookkeeping for a read is skipped if another thread holds the policy lock,
+ * which costs a little accuracy but keeps hot reads from queueing behind each other.
+ */
+public class TinyLfuCache<K, V> {
+	private static final double WINDOW_SHARE = 0.01;
+	private static final double PROTECTED_SHARE = 0.8;
+
+	private final Map<K, Node<K, V>> data = new ConcurrentHashMap<>();
+	private final ReentrantLock policyLock = new ReentrantLock();
+	private final FrequencySketch sketch;
+	private final ToIntFunction<V> weigher;
+
+	private final long maxEntries;
+	private final long maxWeight;
+	private final long windowMaxEntries;
+	private final long windowMaxWeight;
+	private final long protectedMaxWeight;
+
+	private final Queue<K, V> window = new Queue<>();
+	private final Queue<K, V> probation = new Queue<>();
+	private final Queue<K, V> protectedQueue = new Queue<>();
+
+	/**
+	 * Bumped by every invalidation. A read-through load that overlaps an invalidation is not cached, since it may have
+	 * read the row before the change that caused the invalidation.
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+	private final Metrics.Timer loads;
+
+	/**
+	 * @param name a short name for the cache, used in metric names
+	 * @param maxEntries the largest number of entries to hold
+	 * @param maxWeight the largest total weight (estimated bytes) to hold
+	 * @param weigher estimates the weight of a value
+	 */
+	public TinyLfuCache(String name, long maxEntries, long maxWeight, ToIntFunction<V> weigher) {
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+		this.windowMaxEntries = Math.max(1, (long) (maxEntries * WINDOW_SHARE));
+		this.windowMaxWeight = Math.max(1, (long) (maxWeight * WINDOW_SHARE));
+		this.protectedMaxWeight = (long) ((maxWeight - windowMaxWeight) * PROTECTED_SHARE);
+		this.sketch = new FrequencySketch(Math.max(maxEntries, 16));
+
+		String prefix = "cache_" + name;
+		this.hits = Metrics.counter(prefix + "_hits", "reads served from the " + name + " cache");
+		this.misses = Metrics.counter(prefix + "_misses", "reads the " + name + " cache could not serve");
+		this.evictions = Metrics.counter(prefix + "_evictions", "entries evicted from the " + name + " cache to stay within its bounds");
+		this.loads = Metrics.timer(prefix + "_load", "time spent loading values missing from the " + name + " cache");
+		Metrics.gauge(prefix + "_entries", "entries in the " + name + " cache", this::size);
+		Metrics.gauge(prefix + "_weight_bytes", "estimated bytes held by the " + name + " cache", this::weight);
+		Metrics.gauge(prefix + "_hit_ratio", "share of reads served from the " + name + " cache", this::hitRatio);
+	}
+
+	/***
+	 * @param key the key to look up
+	 * @return the cached value, or null if it is not cached
+	 */
+	public V getIfPresent(K key) {
+		Node<K, V> node = data.get(key);
+
+		if(node == null) {
+			misses.increment();
+			recordMiss(key);
+			return null;
+		}
+
+		hits.increment();
+		recordHit(node);
+		return node.value;
+	}
+
+	/***
+	 * Returns the cached value for a key, loading and caching it on a miss. A null from the loader is returned but not
+	 * cached.
+	 * @param key the key to look up
+	 * @param loader loads the value on a miss
+	 * @return the value, or null if the loader found none
+	 */
+	public V get(K key, Function<K, V> loader) {
+		V value = getIfPresent(key);
+
+		if(value != null) {
+			return value;
+		}
+
+		long invalidationsBefore = invalidations.get();
+		long start = System.nanoTime();
+		value = loader.apply(key);
+		loads.record(System.nanoTime() - start);
+
+		if(value != null) {
+			putIfNotInvalidatedSince(key, value, invalidationsBefore);
+		}
+
+		return value;
+	}
+
+	/***
+	 * Returns the cached values for several keys, loading every missing one with a single call to the loader and caching
+	 * what it finds
+	 * @param keys the keys to look up
+	 * @param loader loads the values of the keys that are not cached, returning a map with an entry for each key found,
+	 * or null if loading failed
+	 * @return a map with an entry for each key that has a value, or null if loading failed
+	 */
+	public Map<K, V> getAll(Collection<K> keys, Function<Set<K>, Map<K, V>> loader) {
+		Map<K, V> found = new HashMap<>();
+		Set<K> missing = new LinkedHashSet<>();
+
+		for(K key : keys) {
+			if(found.containsKey(key) || missing.contains(key)) {
+				continue;
+			}
+
+			V value = getIfPresent(key);
+
+			if(value != null) {
+				found.put(key, value);
+			} else {
+				missing.add(key);
+			}
+		}
+
+		if(missing.isEmpty()) {
+			return found;
+		}
+
+		long invalidationsBefore = invalidations.get();
+		long start = System.nanoTime();
+		Map<K, V> loaded = loader.apply(missing);
+		loads.record(System.nanoTime() - start);
+
+		if(loaded == null) {
+			return null;
+		}
+
+		for(Map.Entry<K, V> entry : loaded.entrySet()) {
+			found.put(entry.getKey(), entry.getValue());
+			putIfNotInvalidatedSince(entry.getKey(), entry.getValue(), invalidationsBefore);
+		}
+
+		return found;
+	}
+
+	/***
+	 * Adds or replaces an entry
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void put(K key, V value) {
+		putIfNotInvalidatedSince(key, value, -1);
+	}
+
+	/***
+	 * Removes an entry. Once this returns, no read sees the old value, and no load that started earlier can put it back.
+	 * @param key the key to remove
+	 */
+	public void invalidate(K key) {
+		policyLock.lock();
+		try {
+			invalidations.incrementAndGet();
+			Node<K, V> node = data.remove(key);
+
+			if(node != null) {
+				node.queue.remove(node);
+			}
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/***
+	 * Removes every entry
+	 */
+	public void invalidateAll() {
+		policyLock.lock();
+		try {
+			invalidations.incrementAndGet();
+			data.clear();
+			window.clear();
+			probation.clear();
+			protectedQueue.clear();
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/***
+	 * @return the number of entries
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	/***
+	 * @return the estimated total weight of the entries, in bytes
+	 */
+	public long weight() {
+		return window.weight + probation.weight + protectedQueue.weight;
+	}
+
+	/***
+	 * @return the share of reads that were hits since the process started
+	 */
+	public double hitRatio() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return (total == 0) ? 0 : (double) hitCount / total;
+	}
+
+	private void putIfNotInvalidatedSince(K key, V value, long invalidationsBefore) {
+		int weight = weigher.applyAsInt(value);
+
+		if(weight > maxWeight || maxEntries < 1) {
+			return;
+		}
+
+		policyLock.lock();
+		try {
+			if(invalidationsBefore >= 0 && invalidations.get() != invalidationsBefore) {
+				return;
+			}
+
+			sketch.increment(key.hashCode());
+			Node<K, V> existing = data.get(key);
+
+			if(existing != null) {
+				existing.queue.weight += weight - existing.weight;
+				existing.weight = weight;
+				existing.value = value;
+				onAccess(existing);
+			} else {
+				Node<K, V> node = new Node<>(key, value, weight);
+				data.put(key, node);
+				window.addLast(node);
+			}
+
+			evict();
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	private void recordHit(Node<K, V> node) {
+		if(policyLock.tryLock()) {
+			try {
+				sketch.increment(node.key.hashCode());
+
+				if(node.queue != null) {
+					onAccess(node);
+				}
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	private void recordMiss(K key) {
+		if(policyLock.tryLock()) {
+			try {
+				sketch.increment(key.hashCode());
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Moves an entry that was just read to the back of its queue, promoting it from probation to protected
+	 */
+	private void onAccess(Node<K, V> node) {
+		if(node.queue == probation) {
+			probation.remove(node);
+			protectedQueue.addLast(node);
+
+			// keep the protected segment within its share by demoting its least recently used entries
+			while(protectedQueue.weight > protectedMaxWeight && protectedQueue.head != node) {
+				Node<K, V> demoted = protectedQueue.head;
+				protectedQueue.remove(demoted);
+				probation.addLast(demoted);
+			}
+		} else {
+			node.queue.moveToBack(node);
+		}
+	}
+
+	/**
+	 * Moves entries that overflow the window into the main area, then evicts from the main area until the cache is
+	 * within its bounds. Each window overflow candidate has to beat the main area's next victim on access frequency.
+	 */
+	private void evict() {
+		while(window.size > windowMaxEntries || window.weight > windowMaxWeight) {
+			Node<K, V> candidate = window.head;
+			window.remove(candidate);
+			probation.addLast(candidate);
+		}
+
+		while(data.size() > maxEntries || weight() > maxWeight) {
+			Node<K, V> victim = (probation.head != null) ? probation.head : protectedQueue.head;
+			Node<K, V> candidate = probation.tail;
+
+			if(victim == null) {
+				victim = window.head;
+			} else if(candidate != null && candidate != victim
+					&& sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+				// the newcomer is used more often than the main area's next victim, so the victim goes
+			} else if(candidate != null && candidate != victim) {
+				victim = candidate;
+			}
+
+			victim.queue.remove(victim);
+			data.remove(victim.key);
+			evictions.increment();
+		}
+	}
+
+	private static class Node<K, V> {
+		final K key;
+		// replaced under the policy lock but read without it by getIfPresent
+		volatile V value;
+		int weight;
+		Queue<K, V> queue;
+		Node<K, V> prev;
+		Node<K, V> next;
+
+		Node(K key, V value, int weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * An intrusive doubly-linked LRU list: least recently used at the head
+	 */
+	private static class Queue<K, V> {
+		Node<K, V> head;
+		Node<K, V> tail;
+		long size;
+		long weight;
+
+		void addLast(Node<K, V> node) {
+			node.queue = this;
+			node.prev = tail;
+			node.next = null;
+
+			if(tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+
+			tail = node;
+			size++;
+			weight += node.weight;
+		}
+
+		void remove(Node<K, V> node) {
+			if(node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+
+			if(node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+
+			node.prev = null;
+			node.next = null;
+			node.queue = null;
+			size--;
+			weight -= node.weight;
+		}
+
+		void moveToBack(Node<K, V> node) {
+			if(tail != node) {
+				remove(node);
+				addLast(node);
+			}
+		}
+
+		void clear() {
+			head = null;
+			tail = null;
+			size = 0;
+			weight = 0;
+		}
+	}
+
+	/**
+	 * A count-min sketch of 4-bit counters estimating how often each key was accessed recently. When the number of
+	 * recorded accesses reaches ten times the cache size, every counter is halved so that old popularity fades.
+	 */
+	static class FrequencySketch {
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+		private static final long RESET_MASK = 0x7777777777777777L;
+
+		private final long[] table;
+		private final int tableMask;
+		private final long sampleSize;
+		private long additions;
+
+		FrequencySketch(long expectedEntries) {
+			int words = Integer.highestOneBit((int) Math.min(Math.max(expectedEntries, 4), 1 << 24) - 1) << 1;
+			this.table = new long[words];
+			this.tableMask = words - 1;
+			this.sampleSize = 10 * expectedEntries;
+		}
+
+		int frequency(int hash) {
+			int frequency = Integer.MAX_VALUE;
+
+			for(int i = 0; i < SEEDS.length; i++) {
+				frequency = Math.min(frequency, counter(hash, i));
+			}
+
+			return frequency;
+		}
+
+		void increment(int hash) {
+			boolean added = false;
+
+			for(int i = 0; i < SEEDS.length; i++) {
+				int index = indexOf(hash, i);
+				int offset = offsetOf(hash, i);
+
+				if(((table[index] >>> offset) & 0xfL) < 15) {
+					table[index] += 1L << offset;
+					added = true;
+				}
+			}
+
+			if(added && ++additions >= sampleSize) {
+				for(int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & RESET_MASK;
+				}
+
+				additions /= 2;
+			}
+		}
+
+		private int counter(int hash, int i) {
+			return (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL);
+		}
+
+		private long mix(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[(i + 1) & 3];
+			return h ^ (h >>> 32);
+		}
+
+		private int indexOf(int hash, int i) {
+			return (int) mix(hash, i) & tableMask;
+		}
+
+		private int offsetOf(int hash, int i) {
+			return (int) ((mix(hash, i) >>> 40) & 15) << 2;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+/**
+ * The encodings request and response bodies can use. JSON is the default; CBOR (RFC 8949) is a binary encoding of the
+ * same data model, so the same Jackson annotations and getters apply. It writes numbers in binary and strings without
+ * escaping, which makes message lists smaller and cheaper to encode and decode.
+ *
+ * A client picks the response format with the Accept header and declares the request format with the Content-Type
+ * header. Either header that does not name CBOR means JSON.
+ */
+public enum WireFormat {
+	JSON("application/json", JsonCodec.MAPPER),
+	CBOR("application/cbor", new CBORMapper().registerModule(new BlackbirdModule()));
+
+	private final String mediaType;
+	private final ObjectMapper mapper;
+
+	WireFormat(String mediaType, ObjectMapper mapper) {
+		this.mediaType = mediaType;
+		this.mapper = mapper;
+	}
+
+	/**
+	 * @param accept the request's Accept header, may be null
+	 * @return the format to write the response in
+	 */
+	public static WireFormat forAccept(String accept) {
+		return (accept != null && accept.contains(CBOR.mediaType)) ? CBOR : JSON;
+	}
+
+	/**
+	 * @param contentType the request's Content-Type header, may be null
+	 * @return the format to read the request body in
+	 */
+	public static WireFormat forContentType(String contentType) {
+		return (contentType != null && contentType.startsWith(CBOR.mediaType)) ? CBOR : JSON;
+	}
+
+	/**
+	 * @return the media type to send as the Content-Type of a body in this format
+	 */
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * @return the shared mapper for this format. Do not reconfigure it.
+	 */
+	public ObjectMapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * Reads one value straight from a stream
+	 * @param in the stream to read, such as a request body
+	 * @param type the class to read
+	 * @return the value read
+	 * @throws IOException if the stream cannot be read or does not hold a value of the class
+	 */
+	public <T> T read(InputStream in, Class<T> type) throws IOException {
+		return mapper.readValue(in, type);
+	}
+
+	/**
+	 * Encodes a value in one pass
+	 * @param value the value to encode
+	 * @return the encoded bytes
+	 * @throws IOException if the value cannot be encoded
+	 */
+	public byte[] write(Object value) throws IOException {
+		return mapper.writeValueAsBytes(value);
+	}
+}
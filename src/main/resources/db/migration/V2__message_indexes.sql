@@ -0,0 +1,8 @@
+-- Secondary indexes for the message access patterns. message_id is the last column of each so that rows with equal
+-- leading values come out of the index in a stable order and can be paged through.
+-- A sender's messages in message_id order: GET /accounts/{account_id}/messages and its pages.
+create index if not exists idx_message_posted_by_id on message (posted_by, message_id);
+-- A sender's messages in time order.
+create index if not exists idx_message_posted_by_time on message (posted_by, time_posted_epoch, message_id);
+-- All messages in time order.
+create index if not exists idx_message_time on message (time_posted_epoch, message_id);
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountSearchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/search?prefix=test after registering two more accounts
+     *
+     * Expected Response:
+     *  Status Code: 200, and the matching accounts ordered by username, without passwords
+     */
+    @Test
+    public void searchFindsRegisteredUsernames() throws IOException, InterruptedException {
+        register("testuser3");
+        register("testuser2");
+        register("other");
+
+        HttpResponse<String> response = get("http://localhost:8080/accounts/search?prefix=test");
+        Assert.assertEquals(200, response.statusCode());
+        Account[] accounts = objectMapper.readValue(response.body(), Account[].class);
+        Assert.assertEquals(3, accounts.length);
+        Assert.assertEquals("testuser1", accounts[0].getUsername());
+        Assert.assertEquals(1, accounts[0].getAccount_id());
+        Assert.assertEquals("testuser2", accounts[1].getUsername());
+        Assert.assertEquals(3, accounts[1].getAccount_id());
+        Assert.assertEquals("testuser3", accounts[2].getUsername());
+        Assert.assertEquals(2, accounts[2].getAccount_id());
+
+        for(Account account : accounts) {
+            Assert.assertNull(account.getPassword());
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/search?prefix=test&limit=1
+     *
+     * Expected Response:
+     *  Status Code: 200, and only the first matching account
+     */
+    @Test
+    public void searchStopsAtLimit() throws IOException, InterruptedException {
+        register("testuser2");
+
+        HttpResponse<String> response = get("http://localhost:8080/accounts/search?prefix=test&limit=1");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(1, objectMapper.readValue(response.body(), Account[].class).length);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/search with no prefix, or with a limit of 0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutPrefixIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/accounts/search").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/accounts/search?prefix=test&limit=0").statusCode());
+    }
+
+    private void register(String username) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"" + username + "\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
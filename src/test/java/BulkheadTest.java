@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.VirtualThreads;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.Bulkhead;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class BulkheadTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages and then GET localhost:8080/messages/2
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, the write running on the write bulkhead and the read on the read bulkhead
+     */
+    @Test
+    public void readsAndWritesRunOnTheirBulkheads() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"hello bulkheads\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> postResponse = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, postResponse.statusCode());
+
+        HttpRequest getMessageRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/2")).build();
+        HttpResponse<String> getResponse = webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, getResponse.statusCode());
+        Assert.assertTrue(getResponse.body().contains("hello bulkheads"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200, and the saturation and rejection metrics of both bulkheads
+     */
+    @Test
+    public void metricsExposeBulkheadSaturation() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/metrics")).build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("bulkhead_read_saturation"));
+        Assert.assertTrue(response.body().contains("bulkhead_write_saturation"));
+        Assert.assertTrue(response.body().contains("bulkhead_write_rejected"));
+    }
+
+    /**
+     * Sending 64 concurrent http requests to POST localhost:8080/messages, to an app that writes posts by group commit,
+     * while the first batch is held up in the database
+     *
+     * Expected Response:
+     *  Status Code: 200 for every post, and the posts that arrived while the first batch was held up written in a batch
+     *  larger than the write bulkhead's configured threads, which each post holds until its batch commits
+     */
+    @Test
+    public void groupCommitBatchesGrowPastTheWriteThreads() throws Exception {
+        app.stop();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        MessageDAO messageDAO = new MessageDAO() {
+            @Override
+            public List<Message> insertMessages(List<Message> messages) {
+                batchSizes.add(messages.size());
+
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return super.insertMessages(messages);
+            }
+        };
+        AccountDAO accountDAO = new AccountDAO();
+        MessageService messageService = new MessageService(messageDAO, accountDAO, true);
+        socialMediaController = new SocialMediaController(messageService, new AccountService(accountDAO));
+        app = socialMediaController.startAPI();
+        app.start(8080);
+
+        try {
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+
+            for(int i = 0; i < 64; i++) {
+                HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"group commit " + i + "\",\"time_posted_epoch\":1669947792}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+                responses.add(webClient.sendAsync(postMessageRequest, HttpResponse.BodyHandlers.ofString()));
+            }
+
+            Thread.sleep(1000);
+            release.countDown();
+
+            for(CompletableFuture<HttpResponse<String>> response : responses) {
+                Assert.assertEquals(200, response.get(10, TimeUnit.SECONDS).statusCode());
+            }
+
+            Assert.assertEquals(64, batchSizes.stream().mapToInt(Integer::intValue).sum());
+            Assert.assertTrue(Collections.max(batchSizes) > SocialMediaController.WRITE_THREADS);
+        } finally {
+            release.countDown();
+            messageService.shutdown();
+        }
+    }
+
+    /**
+     * A bulkhead with one thread and one queue slot, whose thread is busy and whose queue is full, refuses more work at
+     * once, and runs the queued work once the thread is free.
+     */
+    @Test
+    public void fullBulkheadRefusesWork() throws Exception {
+        assertFullBulkheadRefusesWork(new Bulkhead("test", 1, 1, 1), "test");
+    }
+
+    /**
+     * As above, for a bulkhead that runs its work on virtual threads, one permit each for running and waiting work.
+     * Skipped on a JVM without virtual threads.
+     */
+    @Test
+    public void fullVirtualBulkheadRefusesWork() throws Exception {
+        Assume.assumeTrue(VirtualThreads.areSupported());
+        Bulkhead bulkhead = new Bulkhead("test_virtual", 1, 1, 1, true);
+        Assert.assertTrue(bulkhead.isVirtual());
+        assertFullBulkheadRefusesWork(bulkhead, "test_virtual");
+    }
+
+    private void assertFullBulkheadRefusesWork(Bulkhead bulkhead, String name) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        long rejectedBefore = Metrics.counter("bulkhead_" + name + "_rejected", "").sum();
+
+        try {
+            CompletableFuture<Void> running = bulkhead.submit(release::await);
+            CompletableFuture<Void> queued = bulkhead.submit(() -> {});
+            Assert.assertNotNull(running);
+            Assert.assertNotNull(queued);
+
+            Assert.assertNull(bulkhead.submit(() -> {}));
+            Assert.assertEquals(rejectedBefore + 1, Metrics.counter("bulkhead_" + name + "_rejected", "").sum());
+
+            release.countDown();
+            queued.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(running.isDone());
+        } finally {
+            release.countDown();
+            bulkhead.shutdown();
+        }
+    }
+}
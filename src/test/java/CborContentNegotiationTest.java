@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CborContentNegotiationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper cborMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and a CBOR
+     * ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        cborMapper = new CBORMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/register with a CBOR body and Accept: application/cbor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: CBOR representation of the new account
+     */
+    @Test
+    public void registerWithCbor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(cborMapper.writeValueAsBytes(new Account("user", "password"))))
+                .header("Content-Type", "application/cbor")
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElse(""));
+        Assert.assertEquals(new Account(2, "user", "password"), cborMapper.readValue(response.body(), Account.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with Accept: application/cbor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a CBOR array of every message
+     */
+    @Test
+    public void getAllMessagesAsCbor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElse(""));
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, cborMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 without an Accept header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON, the default
+     */
+    @Test
+    public void jsonRemainsDefault() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/json", response.headers().firstValue("Content-Type").orElse(""));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), new ObjectMapper().readValue(response.body(), Message.class));
+    }
+}
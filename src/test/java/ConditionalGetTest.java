@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages, then again with the ETag it returned in If-None-Match
+     *
+     * Expected Response:
+     *  Status Code: 200 with an ETag, then 304 with the same ETag and no body
+     */
+    @Test
+    public void getAllMessagesUnchangedIsNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("http://localhost:8080/messages", null);
+        String etag = first.headers().firstValue("ETag").orElse(null);
+
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertNotNull(etag);
+
+        HttpResponse<String> second = get("http://localhost:8080/messages", etag);
+
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals(etag, second.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals("", second.body());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=1 with its ETag in If-None-Match after a
+     * message by that account has been posted
+     *
+     * Expected Response:
+     *  Status Code: 200 with a different ETag
+     */
+    @Test
+    public void getMessagesFromUserAfterPostIsModified() throws IOException, InterruptedException {
+        String url = "http://localhost:8080/accounts/1/messages?limit=1";
+        String etag = get(url, null).headers().firstValue("ETag").orElse(null);
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get(url, etag);
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with an ETag from a different representation of the list
+     *
+     * Expected Response:
+     *  Status Code: 200, since the JSON and NDJSON bodies differ
+     */
+    @Test
+    public void getAllMessagesOtherRepresentationIsModified() throws IOException, InterruptedException {
+        String etag = get("http://localhost:8080/messages", null).headers().firstValue("ETag").orElse(null);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept", "application/x-ndjson")
+                .header("If-None-Match", etag)
+                .build();
+
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> get(String url, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create(url));
+
+        if(ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
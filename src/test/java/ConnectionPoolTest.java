@@ -0,0 +1,135 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.Metrics;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool over a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool("test", dataSource, 1, 2, 200, true);
+    }
+
+    /**
+     * Closing a borrowed connection should return it to the pool rather than close the physical connection.
+     */
+    @Test
+    public void closeReturnsConnectionToPool() throws SQLException {
+        Connection connection = pool.borrow();
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        connection.close();
+
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertTrue(pool.borrow().isValid(1));
+    }
+
+    /**
+     * Once every connection is lent out, a borrower should wait for the acquire timeout and then fail.
+     */
+    @Test
+    public void borrowTimesOutWhenPoolExhausted() throws SQLException {
+        pool.borrow();
+        pool.borrow();
+
+        long start = System.nanoTime();
+        try {
+            pool.borrow();
+            Assert.fail("expected the third borrow to time out");
+        } catch(SQLException e) {
+            long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+            Assert.assertTrue(waitedMillis >= 150);
+        }
+    }
+
+    /**
+     * A connection left in a transaction should be rolled back and reset to auto-commit when it is returned.
+     */
+    @Test
+    public void returnedConnectionIsReset() throws SQLException {
+        Connection connection = pool.borrow();
+        connection.setAutoCommit(false);
+        connection.close();
+
+        Assert.assertTrue(pool.borrow().getAutoCommit());
+    }
+
+    /**
+     * Statements and result sets left open by a borrower should be closed when its connection is returned.
+     */
+    @Test
+    public void returnedConnectionClosesStatements() throws SQLException {
+        Connection connection = pool.borrow();
+        PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        ResultSet resultRows = statement.executeQuery();
+        connection.close();
+
+        Assert.assertTrue(statement.isClosed());
+        Assert.assertTrue(resultRows.isClosed());
+    }
+
+    /**
+     * Statements the borrower closes itself should no longer be tracked by the connection, so that a connection kept for
+     * many statements does not hold on to all of them.
+     */
+    @Test
+    public void closedStatementsAreNoLongerTracked() throws Exception {
+        Connection connection = pool.borrow();
+
+        for(int i = 0; i < 1000; i++) {
+            try(PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+                statement.setInt(1, i);
+
+                try(ResultSet resultRows = statement.executeQuery()) {
+                    Assert.assertTrue(resultRows.next());
+                    Assert.assertEquals(i, resultRows.getInt(1));
+                }
+            }
+        }
+
+        PreparedStatement open = connection.prepareStatement("SELECT 1");
+        Object handler = Proxy.getInvocationHandler(connection);
+        Field statements = handler.getClass().getDeclaredField("statements");
+        statements.setAccessible(true);
+        Assert.assertEquals(1, ((Collection<?>) statements.get(handler)).size());
+
+        connection.close();
+        Assert.assertTrue(open.isClosed());
+    }
+
+    /**
+     * The pool should export its gauges and borrow-wait timer.
+     */
+    @Test
+    public void poolExportsMetrics() throws SQLException {
+        pool.borrow();
+        String metrics = Metrics.render();
+
+        Assert.assertTrue(metrics.contains("db_pool_test_active_connections 1.0"));
+        Assert.assertTrue(metrics.contains("db_pool_test_idle_connections"));
+        Assert.assertTrue(metrics.contains("db_pool_test_waiting_borrowers 0.0"));
+        Assert.assertTrue(metrics.contains("db_pool_test_borrow_wait_seconds_count"));
+    }
+}
@@ -14,6 +14,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import Controller.SocialMediaController;
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.Metrics;
 import io.javalin.Javalin;
 
 public class CreateMessageTest {
@@ -125,11 +126,13 @@ public class CreateMessageTest {
 
 
     /**
-     * Sending an http request to POST localhost:8080/messages with a user id that doesnt exist in db
+     * Sending an http request to POST localhost:8080/messages with a user id that doesnt exist in db, and then to GET
+     * localhost:8080/messages
      * 
      * Expected Response:
      *  Status Code: 400
      *  Response Body: 
+     *  and no message stored for the missing user
      */
     @Test
     public void createMessageUserNotInDb() throws IOException, InterruptedException {
@@ -146,7 +149,47 @@ public class CreateMessageTest {
         
         Assert.assertEquals(400, status);        
         Assert.assertEquals("", response.body().toString());
+
+        HttpRequest getMessagesRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> messages = webClient.send(getMessagesRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertFalse(messages.body().contains("message test"));
     }
 
 
+    /**
+     * Registering a new user and then sending an http request to POST localhost:8080/messages as that user. The new
+     * account should be found in the in-memory account index without a database lookup.
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of message object
+     */
+    @Test
+    public void createMessageForNewlyRegisteredUser() throws IOException, InterruptedException {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"user2\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":2, " +
+                        "\"message_text\": \"hello from user2\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        long missesBefore = Metrics.counter("account_id_index_misses", "").sum();
+        HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(2, 2, "hello from user2", 1669947792), objectMapper.readValue(response.body().toString(), Message.class));
+        Assert.assertEquals(missesBefore, Metrics.counter("account_id_index_misses", "").sum());
+    }
 }
@@ -0,0 +1,70 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.EventRing;
+
+public class EventRingTest {
+
+    /**
+     * A reader sees only the events published after it was created, in order, and then nothing until more are published.
+     */
+    @Test
+    public void readerFollowsPublishesInOrder() {
+        EventRing<String> ring = new EventRing<>("test", 8);
+        ring.publish("before");
+        EventRing<String>.Reader reader = ring.reader();
+
+        ring.publish("a");
+        ring.publish("b");
+
+        Assert.assertEquals("a", reader.poll());
+        Assert.assertEquals("b", reader.poll());
+        Assert.assertNull(reader.poll());
+        Assert.assertFalse(reader.isLapped());
+
+        ring.publish("c");
+        Assert.assertEquals("c", reader.poll());
+    }
+
+    /**
+     * A reader that falls more than the capacity behind is reported as lapped, and can skip ahead to the oldest event
+     * the ring still holds.
+     */
+    @Test
+    public void lappedReaderSkipsToOldest() {
+        EventRing<Integer> ring = new EventRing<>("test", 8);
+        EventRing<Integer>.Reader reader = ring.reader();
+        Assert.assertEquals(8, ring.getCapacity());
+
+        for(int i = 0; i < 20; i++) {
+            ring.publish(i);
+        }
+
+        Assert.assertNull(reader.poll());
+        Assert.assertTrue(reader.isLapped());
+
+        Assert.assertEquals(12, reader.skipToOldest());
+        Assert.assertFalse(reader.isLapped());
+
+        for(int i = 12; i < 20; i++) {
+            Assert.assertEquals(Integer.valueOf(i), reader.poll());
+        }
+
+        Assert.assertNull(reader.poll());
+    }
+
+    /**
+     * Listeners run once per publish.
+     */
+    @Test
+    public void listenersRunOnPublish() {
+        EventRing<String> ring = new EventRing<>("test", 4);
+        int[] calls = new int[1];
+        ring.addListener(() -> calls[0]++);
+
+        ring.publish("a");
+        ring.publish("b");
+
+        Assert.assertEquals(2, calls[0]);
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitWriter;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import Util.SchemaMigrator;
+
+public class GroupCommitWriterTest {
+    GroupCommitWriter writer;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        SchemaMigrator.migrate();
+        writer = new GroupCommitWriter(new MessageDAO(), 16, 50);
+    }
+
+    @After
+    public void tearDown() {
+        writer.shutdown();
+    }
+
+    /**
+     * Messages submitted together should be written in a few shared batches, and every caller should get back its own
+     * message with a distinct generated message_id.
+     */
+    @Test
+    public void concurrentPostsShareCommits() {
+        Metrics.Summary batchSizes = Metrics.summary("group_commit_batch_size", "messages written per group commit");
+        long batchesBefore = batchSizes.getCount();
+
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for(int i = 0; i < 40; i++) {
+            results.add(writer.submit(new Message(1, "batched message " + i, 1669947793L + i)));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for(int i = 0; i < 40; i++) {
+            Message inserted = results.get(i).join();
+            Assert.assertEquals("batched message " + i, inserted.getMessage_text());
+            Assert.assertEquals(1669947793L + i, inserted.getTime_posted_epoch());
+            ids.add(inserted.getMessage_id());
+        }
+
+        Assert.assertEquals(40, ids.size());
+        Assert.assertTrue(batchSizes.getCount() - batchesBefore <= 5);
+        Assert.assertEquals(41, new MessageDAO().getAllMessages().size());
+    }
+
+    /**
+     * A message from an account that does not exist should fail on its own without failing the rest of its batch.
+     */
+    @Test
+    public void badMessageDoesNotFailItsBatch() {
+        CompletableFuture<Message> good = writer.submit(new Message(1, "good message", 1669947793L));
+        CompletableFuture<Message> bad = writer.submit(new Message(99, "bad message", 1669947794L));
+        CompletableFuture<Message> alsoGood = writer.submit(new Message(1, "another good message", 1669947795L));
+
+        Assert.assertNotNull(good.join());
+        Assert.assertNull(bad.join());
+        Assert.assertNotNull(alsoGood.join());
+        Assert.assertEquals(3, new MessageDAO().getAllMessages().size());
+    }
+}
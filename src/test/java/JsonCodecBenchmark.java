@@ -0,0 +1,113 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Util.WireFormat;
+import io.javalin.json.JavalinJackson;
+
+/**
+ * Compares, for the JSON work of each endpoint, the codec the controller used before (a new ObjectMapper per request,
+ * the body read as a String, the response encoded to a String and then to bytes) with the shared codec (one mapper
+ * with the Blackbird module, the body read from the stream and the response encoded straight to bytes). Reports
+ * nanoseconds and bytes allocated per request. It is not a test; run it with
+ *
+ *     mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *     java -cp target/classes:target/test-classes:$(cat target/cp.txt) JsonCodecBenchmark
+ */
+public class JsonCodecBenchmark {
+    private static final int WARMUP = 200_000;
+    private static final int MEASURED = 500_000;
+
+    private static final String ACCOUNT_BODY = "{\"username\":\"testuser1\",\"password\":\"password\"}";
+    private static final String MESSAGE_BODY = "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}";
+    private static final String UPDATE_BODY = "{\"message_text\":\"updated message\"}";
+    private static final Account ACCOUNT = new Account(1, "testuser1", "password");
+    private static final Message MESSAGE = new Message(1, 1, "hello message", 1669947792);
+
+    /**
+     * Javalin's default mapper, which Context.json used before the controller shared its own
+     */
+    private static final JavalinJackson JAVALIN_DEFAULT = new JavalinJackson();
+
+    private static Object sink;
+
+    private interface Request {
+        Object handle() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        compare("POST /register, POST /login", () -> {
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.readValue(ACCOUNT_BODY, Account.class);
+            return JAVALIN_DEFAULT.toJsonString(mapper.writeValueAsString(ACCOUNT), String.class).getBytes(StandardCharsets.UTF_8);
+        }, () -> {
+            WireFormat.JSON.read(stream(ACCOUNT_BODY), Account.class);
+            return WireFormat.JSON.write(ACCOUNT);
+        });
+
+        compare("POST /messages", () -> {
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.readValue(MESSAGE_BODY, Message.class);
+            return JAVALIN_DEFAULT.toJsonString(mapper.writeValueAsString(MESSAGE), String.class).getBytes(StandardCharsets.UTF_8);
+        }, () -> {
+            WireFormat.JSON.read(stream(MESSAGE_BODY), Message.class);
+            return WireFormat.JSON.write(MESSAGE);
+        });
+
+        compare("GET, DELETE /messages/{id}", () -> {
+            return JAVALIN_DEFAULT.toJsonString(MESSAGE, Message.class).getBytes(StandardCharsets.UTF_8);
+        }, () -> {
+            return WireFormat.JSON.write(MESSAGE);
+        });
+
+        compare("PATCH /messages/{id}", () -> {
+            JsonNode node = new ObjectMapper().readTree(UPDATE_BODY);
+            node.get("message_text").asText();
+            return JAVALIN_DEFAULT.toJsonString(MESSAGE, Message.class).getBytes(StandardCharsets.UTF_8);
+        }, () -> {
+            WireFormat.JSON.read(stream(UPDATE_BODY), Message.class).getMessage_text();
+            return WireFormat.JSON.write(MESSAGE);
+        });
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void compare(String endpoint, Request before, Request after) throws IOException {
+        run(before, WARMUP);
+        run(after, WARMUP);
+
+        double[] beforeCost = run(before, MEASURED);
+        double[] afterCost = run(after, MEASURED);
+
+        System.out.printf("%-28s before %8.0f ns %8.0f B   after %6.0f ns %6.0f B%n",
+                endpoint, beforeCost[0], beforeCost[1], afterCost[0], afterCost[1]);
+    }
+
+    /**
+     * @return the mean nanoseconds and bytes allocated per request
+     */
+    private static double[] run(Request request, int iterations) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+
+        for(int i = 0; i < iterations; i++) {
+            sink = request.handle();
+        }
+
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+
+        return new double[] { (double) nanos / iterations, (double) bytes / iterations };
+    }
+}
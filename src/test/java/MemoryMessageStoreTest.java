@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MemoryAccountStore;
+import DAO.MemoryMessageStore;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class MemoryMessageStoreTest {
+    MemoryMessageStore store;
+    int otherAccount;
+
+    /**
+     * Before every test, reset the database and load a new store from it, which holds message 1 of account 1.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        SchemaMigrator.migrate();
+        MemoryAccountStore accounts = new MemoryAccountStore();
+        store = new MemoryMessageStore(accounts);
+        otherAccount = accounts.registerAccount(new Account("testuser2", "password")).getAccount_id();
+    }
+
+    /**
+     * Across several chunks, with rows deleted and updated along the way, pages and lookups by id and by sender should
+     * return exactly the live messages, in message_id order.
+     */
+    @Test
+    public void pagesAndIndexesFollowWrites() {
+        Map<Integer, Message> expected = new TreeMap<>();
+        expected.put(1, new Message(1, 1, "test message 1", 1669947792L));
+
+        for(int i = 0; i < 10000; i++) {
+            int sender = (i % 3 == 0) ? otherAccount : 1;
+            Message inserted = store.insertMessage(new Message(sender, "message " + i, 1669947793L + i));
+            expected.put(inserted.getMessage_id(), inserted);
+        }
+
+        for(int id = 2; id <= 10001; id += 4) {
+            Assert.assertEquals(expected.remove(id), store.deleteMessage(id));
+        }
+
+        // longer texts, so that chunks have to make room for them
+        for(int id = 3; id <= 10001; id += 4) {
+            Message updated = store.updateMessage(id, "updated message " + id + " ".repeat(100));
+            Assert.assertEquals(id, updated.getMessage_id());
+            expected.put(id, updated);
+        }
+
+        Assert.assertNull(store.getMessageById(2));
+        Assert.assertNull(store.updateMessage(2, "deleted"));
+        Assert.assertNull(store.deleteMessage(2));
+        Assert.assertEquals(expected.get(3), store.getMessageById(3));
+
+        List<Message> paged = new ArrayList<>();
+        int after = 0;
+        List<Message> page;
+
+        while(!(page = store.getMessagesAfter(after, 700)).isEmpty()) {
+            paged.addAll(page);
+            after = page.get(page.size() - 1).getMessage_id();
+        }
+
+        Assert.assertEquals(new ArrayList<>(expected.values()), paged);
+        Assert.assertEquals(new ArrayList<>(expected.values()), store.getAllMessages());
+
+        List<Message> fromOther = new ArrayList<>();
+        expected.values().stream().filter(message -> message.getPosted_by() == otherAccount).forEach(fromOther::add);
+        Assert.assertEquals(fromOther, store.getMessagesBySenderId(otherAccount));
+        Assert.assertEquals(fromOther.subList(10, 20),
+                store.getMessagesBySenderIdAfter(otherAccount, fromOther.get(9).getMessage_id(), 10));
+        Assert.assertEquals(Long.valueOf(fromOther.size()), store.countMessagesBySender().get(otherAccount));
+    }
+
+    /**
+     * Messages should be rejected if their sender does not exist or their text is too long, and messages posted out of
+     * time order should be streamed by time, ties in message_id order.
+     */
+    @Test
+    public void rejectsBadMessagesAndStreamsByTime() throws Exception {
+        Assert.assertNull(store.insertMessage(new Message(99, "no such sender", 1669947800L)));
+        Assert.assertNull(store.insertMessage(new Message(1, "x".repeat(256), 1669947800L)));
+
+        Message later = store.insertMessage(new Message(1, "later", 1669947900L));
+        Message earlier = store.insertMessage(new Message(otherAccount, "earlier", 1669947800L));
+        Message tied = store.insertMessage(new Message(1, "tied", 1669947800L));
+
+        List<Integer> streamed = new ArrayList<>();
+        store.streamMessagesPostedBetween(1669947793L, 1669948000L, (message_id, posted_by, message_text, time_posted_epoch) ->
+                streamed.add(message_id));
+        Assert.assertEquals(List.of(earlier.getMessage_id(), tied.getMessage_id(), later.getMessage_id()), streamed);
+
+        Assert.assertEquals(Long.valueOf(2), store.countMessagesByTimeBucket(100, 1669947800L, 1669948000L).get(16699478L));
+    }
+
+    /**
+     * Every change should be written through to the database, so a store loaded afterwards, and MessageDAO, see the
+     * same messages and accounts.
+     */
+    @Test
+    public void changesAreWrittenThrough() {
+        Message inserted = store.insertMessage(new Message(otherAccount, "inserted", 1669947800L));
+        List<Message> batch = store.insertMessages(List.of(new Message(1, "first of batch", 1669947801L),
+                new Message(99, "no such sender", 1669947802L), new Message(otherAccount, "last of batch", 1669947803L)));
+        Assert.assertNull(batch.get(1));
+        Message updated = store.updateMessage(1, "updated");
+        store.deleteMessage(batch.get(0).getMessage_id());
+
+        List<Message> expected = List.of(updated, inserted, batch.get(2));
+        Assert.assertEquals(expected, new MessageDAO().getAllMessages());
+
+        MemoryAccountStore reloadedAccounts = new MemoryAccountStore();
+        Assert.assertEquals(otherAccount, reloadedAccounts.accountLogin("testuser2", "password").getAccount_id());
+        Assert.assertEquals(expected, new MemoryMessageStore(reloadedAccounts).getAllMessages());
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class MessageFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/stream?after=1, then POST localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 200, and a "posted" event with the new message and its message_id as the event id
+     */
+    @Test
+    public void postedMessageIsPushed() throws Exception {
+        BlockingQueue<String> lines = subscribe("http://localhost:8080/messages/stream?after=1", null);
+        postMessage("pushed to the feed");
+
+        Map<String, String> event = nextEvent(lines);
+        Assert.assertEquals("posted", event.get("event"));
+        Assert.assertEquals("2", event.get("id"));
+        Assert.assertEquals(new Message(2, 1, "pushed to the feed", 1669947792), objectMapper.readValue(event.get("data"), Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/stream?after=1, then POST, PATCH and DELETE
+     * localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 200, and "posted", "updated" and "deleted" events in that order, the last two without an event id
+     */
+    @Test
+    public void updatesAndDeletionsArePushed() throws Exception {
+        BlockingQueue<String> lines = subscribe("http://localhost:8080/messages/stream?after=1", null);
+        // once the post arrives the subscriber is surely following the ring
+        postMessage("pushed to the feed");
+        Assert.assertEquals("posted", nextEvent(lines).get("event"));
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest deleteRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).DELETE().build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Map<String, String> updated = nextEvent(lines);
+        Assert.assertEquals("updated", updated.get("event"));
+        Assert.assertNull(updated.get("id"));
+        Assert.assertEquals("updated message", objectMapper.readValue(updated.get("data"), Message.class).getMessage_text());
+
+        Map<String, String> deleted = nextEvent(lines);
+        Assert.assertEquals("deleted", deleted.get("event"));
+        Assert.assertEquals(1, objectMapper.readValue(deleted.get("data"), Message.class).getMessage_id());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/stream with a Last-Event-ID of 1, after two messages were
+     * posted
+     *
+     * Expected Response:
+     *  Status Code: 200, and "posted" events for messages 2 and 3, replayed in order
+     */
+    @Test
+    public void reconnectResumesAfterLastEventId() throws Exception {
+        postMessage("missed message a");
+        postMessage("missed message b");
+
+        BlockingQueue<String> lines = subscribe("http://localhost:8080/messages/stream", "1");
+
+        Map<String, String> first = nextEvent(lines);
+        Assert.assertEquals("2", first.get("id"));
+        Assert.assertEquals("missed message a", objectMapper.readValue(first.get("data"), Message.class).getMessage_text());
+        Assert.assertEquals("3", nextEvent(lines).get("id"));
+    }
+
+    /**
+     * Opening several connections to GET localhost:8080/messages/stream that never read, and one that does, then posting
+     * enough long messages to localhost:8080/messages/batch to fill the connections' buffers, then POST
+     * localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 200, and the reading subscriber gets the last post although the others have stopped reading, while
+     *  the others are counted as slow consumers
+     */
+    @Test
+    public void slowSubscribersDoNotHoldUpOthers() throws Exception {
+        long slowBefore = Metrics.counter("stream_slow_consumers", "").sum();
+        List<Socket> stalled = new ArrayList<>();
+
+        try {
+            // more than the feed's fan-out threads (socialmedia.stream.threads)
+            for(int i = 0; i < 8; i++) {
+                Socket socket = new Socket();
+                socket.setReceiveBufferSize(1024);
+                socket.connect(new InetSocketAddress("localhost", 8080));
+                socket.getOutputStream().write(("GET /messages/stream HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                stalled.add(socket);
+            }
+
+            BlockingQueue<String> lines = subscribe("http://localhost:8080/messages/stream", null);
+            String text = "x".repeat(250);
+            StringBuilder batch = new StringBuilder("[");
+
+            for(int i = 0; i < 1000; i++) {
+                batch.append((i > 0) ? "," : "").append("{\"posted_by\":1,\"message_text\":\"").append(text)
+                        .append("\",\"time_posted_epoch\":1669947792}");
+            }
+
+            HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/batch"))
+                    .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                    .header("Content-Type", "application/json")
+                    .build();
+
+            for(int i = 0; i < 20; i++) {
+                Assert.assertEquals(200, webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+            }
+
+            postMessage("after the burst");
+
+            while(true) {
+                Map<String, String> event = nextEvent(lines);
+
+                if(event.get("data").contains("after the burst")) {
+                    break;
+                }
+            }
+
+            Assert.assertTrue(Metrics.counter("stream_slow_consumers", "").sum() > slowBefore);
+        } finally {
+            for(Socket socket : stalled) {
+                socket.close();
+            }
+        }
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"" + text + "\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Opens the feed and copies its lines into a queue on a background thread
+     */
+    private BlockingQueue<String> subscribe(String url, String lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create(url)).header("Accept", "text/event-stream");
+
+        if(lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+
+        HttpResponse<Stream<String>> response = webClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofLines())
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("text/event-stream", response.headers().firstValue("Content-Type").orElse("").split(";")[0]);
+
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> response.body().forEach(lines::add));
+        reader.setDaemon(true);
+        reader.start();
+        return lines;
+    }
+
+    /**
+     * @return the fields of the next event, skipping comments
+     */
+    private static Map<String, String> nextEvent(BlockingQueue<String> lines) throws InterruptedException {
+        Map<String, String> fields = new HashMap<>();
+
+        while(true) {
+            String line = lines.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("no event within 5 seconds", line);
+
+            if(line.isEmpty()) {
+                if(!fields.isEmpty()) {
+                    return fields;
+                }
+            } else if(!line.startsWith(":")) {
+                int colon = line.indexOf(':');
+                fields.put(line.substring(0, colon), line.substring(colon + 1).trim());
+            }
+        }
+    }
+}
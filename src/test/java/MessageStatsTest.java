@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.MessageCount;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageStatsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/stats/messages and GET localhost:8080/stats/accounts/1 after posting
+     * two messages and deleting one
+     *
+     * Expected Response:
+     *  Status Code: 200, counting the test message loaded at startup and following the post and delete
+     */
+    @Test
+    public void countsFollowPostsAndDeletes() throws IOException, InterruptedException {
+        Assert.assertEquals(new MessageCount(null, null, 1), count("http://localhost:8080/stats/messages"));
+        Assert.assertEquals(new MessageCount(1, null, 1), count("http://localhost:8080/stats/accounts/1"));
+
+        postMessage(nowSeconds());
+        postMessage(nowSeconds());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(new MessageCount(null, null, 2), count("http://localhost:8080/stats/messages"));
+        Assert.assertEquals(new MessageCount(1, null, 2), count("http://localhost:8080/stats/accounts/1"));
+        Assert.assertEquals(new MessageCount(2, null, 0), count("http://localhost:8080/stats/accounts/2"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/stats/messages/minutes?last=5 and GET
+     * localhost:8080/stats/messages/hours?last=3 after posting messages now and two hours ago
+     *
+     * Expected Response:
+     *  Status Code: 200, one count per minute or hour, oldest first, with each message in the bucket of its
+     *  time_posted_epoch
+     */
+    @Test
+    public void countsPerMinuteAndHour() throws IOException, InterruptedException {
+        long now = nowSeconds();
+        postMessage(now);
+        postMessage(now);
+        postMessage(now - 7200);
+
+        MessageCount[] minutes = objectMapper.readValue(get("http://localhost:8080/stats/messages/minutes?last=5").body(), MessageCount[].class);
+        Assert.assertEquals(5, minutes.length);
+        Assert.assertEquals(2, countAt(minutes, now / 60 * 60));
+        Assert.assertEquals(60, minutes[1].getStart() - minutes[0].getStart());
+
+        MessageCount[] hours = objectMapper.readValue(get("http://localhost:8080/stats/messages/hours?last=3").body(), MessageCount[].class);
+        Assert.assertEquals(3, hours.length);
+        Assert.assertEquals(2, countAt(hours, now / 3600 * 3600));
+        Assert.assertEquals(1, countAt(hours, (now - 7200) / 3600 * 3600));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/stats/messages/minutes with a malformed or out of range "last", or
+     * GET localhost:8080/stats/accounts/one
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidStatsRequestsAreRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/stats/messages/minutes?last=0").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/stats/messages/minutes?last=" + (MessageService.STATS_MINUTES + 1)).statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/stats/messages/hours?last=many").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/stats/accounts/one").statusCode());
+    }
+
+    /**
+     * Reconciling should correct the counts after messages are inserted without going through the service.
+     */
+    @Test
+    public void reconcileCorrectsDrift() throws SQLException {
+        MessageService messageService = new MessageService();
+
+        try {
+            long now = nowSeconds();
+            Connection connection = ConnectionUtil.getConnection();
+
+            try {
+                PreparedStatement statement = connection.prepareStatement(
+                        "insert into message (posted_by, message_text, time_posted_epoch) values (1, 'from outside', ?)");
+                statement.setLong(1, now);
+                statement.executeUpdate();
+            } finally {
+                ConnectionUtil.closeConnection(connection);
+            }
+
+            Assert.assertEquals(1, messageService.getMessageCount());
+            Assert.assertTrue(messageService.reconcileMessageCounts());
+            Assert.assertEquals(2, messageService.getMessageCount());
+            Assert.assertEquals(2, messageService.getMessageCountFromSender(1));
+            Assert.assertEquals(1, messageService.getMessageCountsPerMinute(2).stream()
+                    .filter(count -> count.getStart() == now / 60 * 60).mapToLong(MessageCount::getMessages).sum());
+        } finally {
+            messageService.shutdown();
+        }
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static long countAt(MessageCount[] counts, long start) {
+        for(MessageCount count : counts) {
+            if(count.getStart() == start) {
+                return count.getMessages();
+            }
+        }
+
+        return -1;
+    }
+
+    private MessageCount count(String uri) throws IOException, InterruptedException {
+        HttpResponse<String> response = get(uri);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessageCount.class);
+    }
+
+    private void postMessage(long time) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"hello\",\"time_posted_epoch\":" + time + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
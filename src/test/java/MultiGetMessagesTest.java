@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MultiGetMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a second account with a message of its own, restart the Javalin app,
+     * and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addSecondAccount();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=2,1,9,1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages in request order, with null for the id that does not exist
+     */
+    @Test
+    public void getMessagesByIdsKeepsRequestOrder() throws IOException, InterruptedException {
+        // read message 1 first, so one id comes from the message cache and the others from the database
+        webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = get("http://localhost:8080/messages?ids=2,1,9,1");
+
+        Assert.assertEquals(200, response.statusCode());
+        Message first = new Message(1, 1, "test message 1", 1669947792);
+        Message second = new Message(2, 2, "test message 2", 1669947793);
+        List<Message> expectedResult = Arrays.asList(second, first, null, first);
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?posted_by=2,9,1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one list of messages per sender in request order, empty for the sender with no messages
+     */
+    @Test
+    public void getMessagesBySendersKeepsRequestOrder() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?posted_by=2,9,1");
+
+        Assert.assertEquals(200, response.statusCode());
+        List<List<Message>> expectedResult = new ArrayList<>();
+        expectedResult.add(Arrays.asList(new Message(2, 2, "test message 2", 1669947793)));
+        expectedResult.add(new ArrayList<>());
+        expectedResult.add(Arrays.asList(new Message(1, 1, "test message 1", 1669947792)));
+        List<List<Message>> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<List<Message>>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=1,two
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesByIdsMalformed() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages?ids=1,two").statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void addSecondAccount() {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement account = conn.prepareStatement("insert into account (username, password) values ('testuser2', 'password')");
+                PreparedStatement ps = conn.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) values (2, ?, ?)")) {
+            account.executeUpdate();
+            ps.setString(1, "test message 2");
+            ps.setLong(2, 1669947793L);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
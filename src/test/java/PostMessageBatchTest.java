@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PostMessageBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a JSON array holding valid messages, a blank
+     * message and a message from an account that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, in request order, with the valid messages stored
+     */
+    @Test
+    public void postBatchReportsEachMessage() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947793}," +
+                        "{\"posted_by\":1, \"message_text\": \" \", \"time_posted_epoch\": 1669947794}," +
+                        "{\"posted_by\":9, \"message_text\": \"nobody\", \"time_posted_epoch\": 1669947795}," +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947796}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(), new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(MessageBatchResult.stored(0, new Message(2, 1, "first", 1669947793)), results.get(0));
+        Assert.assertEquals(400, results.get(1).getStatus());
+        Assert.assertEquals(400, results.get(2).getStatus());
+        Assert.assertEquals(MessageBatchResult.stored(3, new Message(3, 1, "second", 1669947796)), results.get(3));
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        List<Message> stored = objectMapper.readValue(webClient.send(getRequest, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, stored.size());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with one message per line (NDJSON)
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a stored result for each line
+     */
+    @Test
+    public void postBatchAcceptsNdjson() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947793}\n" +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947794}\n"))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(), new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(MessageBatchResult.stored(0, new Message(2, 1, "first", 1669947793)), results.get(0));
+        Assert.assertEquals(MessageBatchResult.stored(1, new Message(3, 1, "second", 1669947794)), results.get(1));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a body that is not JSON
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void postBatchMalformedBody() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[{\"posted_by\":1, "))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import Util.PrefixIndex;
+
+/**
+ * Measures the username prefix index at the size it is meant for: loads a million random usernames, keeps registering
+ * more (so that lookups also cover strings waiting to be merged, and merges happen), and times typeahead lookups of
+ * one to four characters, reporting latency percentiles and the memory the index takes. It is not a test; run it with
+ *
+ *     mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *     java -cp target/classes:target/test-classes:$(cat target/cp.txt) PrefixIndexBenchmark [accounts]
+ */
+public class PrefixIndexBenchmark {
+    private static final int LOOKUPS = 1_000_000;
+    private static final int LIMIT = 10;
+
+    private static Object sink;
+
+    public static void main(String[] args) {
+        int accounts = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        String[] usernames = new String[accounts + LOOKUPS / 100];
+
+        for(int i = 0; i < usernames.length; i++) {
+            usernames[i] = username(random, i);
+        }
+
+        PrefixIndex index = new PrefixIndex(4096);
+        // in username order, as AccountDAO reads them
+        Map<String, Integer> loaded = new TreeMap<>();
+
+        for(int i = 0; i < accounts; i++) {
+            loaded.put(usernames[i], i + 1);
+        }
+
+        loaded = new LinkedHashMap<>(loaded);
+
+        long start = System.nanoTime();
+        index.addAll(loaded);
+        System.out.printf("loaded %d usernames in %d ms, %.1f MB packed (%.1f bytes each)%n", index.size(),
+                (System.nanoTime() - start) / 1_000_000, index.sizeInBytes() / 1e6, (double) index.sizeInBytes() / index.size());
+
+        long[] latencies = new long[LOOKUPS];
+        int registered = accounts;
+
+        for(int round = 0; round < 2; round++) {
+            for(int i = 0; i < LOOKUPS; i++) {
+                if(i % 100 == 0 && registered < usernames.length) {
+                    index.add(usernames[registered], registered + 1);
+                    registered++;
+                }
+
+                String base = usernames[random.nextInt(registered)];
+                String prefix = base.substring(0, Math.min(base.length(), 1 + random.nextInt(4)));
+
+                long before = System.nanoTime();
+                List<PrefixIndex.Entry> found = index.findByPrefix(prefix, LIMIT);
+                latencies[i] = System.nanoTime() - before;
+                sink = found;
+            }
+
+            // the first round warms up the JIT
+            registered = accounts;
+            index = new PrefixIndex(4096);
+            index.addAll(loaded);
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("lookups of %d: p50 %.1f us   p99 %.1f us   p99.9 %.1f us   max %.1f us%n", LIMIT,
+                latencies[LOOKUPS / 2] / 1e3, latencies[LOOKUPS * 99 / 100] / 1e3, latencies[LOOKUPS * 999 / 1000] / 1e3,
+                latencies[LOOKUPS - 1] / 1e3);
+    }
+
+    private static String username(Random random, int i) {
+        StringBuilder username = new StringBuilder();
+
+        for(int length = 4 + random.nextInt(8); length > 0; length--) {
+            username.append((char) ('a' + random.nextInt(26)));
+        }
+
+        return username.append(i % 1000).toString();
+    }
+}
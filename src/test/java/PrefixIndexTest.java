@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.PrefixIndex;
+
+public class PrefixIndexTest {
+
+    /**
+     * Lookups return the strings with the prefix in order, up to the limit, whether they were loaded in bulk, merged in,
+     * or are still waiting to be merged.
+     */
+    @Test
+    public void findsPrefixAcrossPackedAndAddedStrings() {
+        PrefixIndex index = new PrefixIndex(3);
+        Map<String, Integer> loaded = new HashMap<>();
+        loaded.put("bob", 1);
+        loaded.put("alice", 2);
+        loaded.put("bobby", 3);
+        index.addAll(loaded);
+
+        // "bo" and "bobcat" are merged once the third add arrives; "bond" waits
+        index.add("bo", 4);
+        index.add("bobcat", 5);
+        index.add("carol", 6);
+        index.add("bond", 7);
+
+        Assert.assertEquals(List.of("bo", "bob", "bobby", "bobcat", "bond"), keys(index.findByPrefix("bo", 10)));
+        Assert.assertEquals(List.of("bob", "bobby"), keys(index.findByPrefix("bob", 2)));
+        Assert.assertEquals(List.of(), keys(index.findByPrefix("dave", 10)));
+        Assert.assertEquals(7, index.findByPrefix("bond", 1).get(0).getId());
+        Assert.assertEquals(7, index.size());
+    }
+
+    /**
+     * Against a sorted map of random strings, including non-ASCII ones, every prefix lookup gives the same answer.
+     */
+    @Test
+    public void matchesSortedMap() {
+        PrefixIndex index = new PrefixIndex(50);
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        Random random = new Random(42);
+        String alphabet = "abc\u00e9\u4e2d";
+
+        for(int i = 0; i < 2_000; i++) {
+            StringBuilder key = new StringBuilder();
+
+            for(int j = 1 + random.nextInt(6); j > 0; j--) {
+                key.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+
+            index.add(key.toString(), i);
+            expected.put(key.toString(), i);
+        }
+
+        for(String prefix : new String[] { "a", "ab", "\u00e9", "\u4e2da", "cc", "bbb" }) {
+            List<String> want = new ArrayList<>();
+
+            for(String key : expected.tailMap(prefix).keySet()) {
+                if(!key.startsWith(prefix) || want.size() == 25) {
+                    break;
+                }
+
+                want.add(key);
+            }
+
+            Assert.assertEquals(prefix, want, keys(index.findByPrefix(prefix, 25)));
+        }
+    }
+
+    private static List<String> keys(List<PrefixIndex.Entry> entries) {
+        List<String> keys = new ArrayList<>();
+
+        for(PrefixIndex.Entry entry : entries) {
+            keys.add(entry.getKey());
+        }
+
+        return keys;
+    }
+}
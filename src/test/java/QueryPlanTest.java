@@ -0,0 +1,142 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class QueryPlanTest {
+    Connection connection;
+
+    /**
+     * Before every test, reset the database and apply the schema migrations, as the app does when it starts.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        SchemaMigrator.migrate();
+        connection = ConnectionUtil.getConnection();
+    }
+
+    @After
+    public void tearDown() {
+        ConnectionUtil.closeConnection(connection);
+    }
+
+    /**
+     * Resetting the database drops the schema history, so every migration should be applied again, and a second run
+     * should find nothing left to do.
+     */
+    @Test
+    public void migrationsAreAppliedOnce() {
+        Assert.assertTrue(SchemaMigrator.currentVersion() >= 2);
+        Assert.assertEquals(0, SchemaMigrator.migrate());
+    }
+
+    /**
+     * Lookups by primary key should use the primary key index.
+     */
+    @Test
+    public void primaryKeyLookupsUsePrimaryKey() throws SQLException {
+        assertPlanUses(MessageDAO.SELECT_BY_ID_SQL, "PRIMARY_KEY");
+        assertPlanUses(MessageDAO.SELECT_BY_IDS_SQL, "PRIMARY_KEY");
+        assertPlanUses(MessageDAO.UPDATE_MESSAGE_SQL, "PRIMARY_KEY");
+        assertPlanUses(MessageDAO.DELETE_MESSAGE_SQL, "PRIMARY_KEY");
+        assertPlanUses(MessageDAO.POSTER_COUNT_SQL, "PRIMARY_KEY");
+        assertPlanUses(MessageDAO.EXISTING_POSTERS_SQL, "PRIMARY_KEY");
+    }
+
+    /**
+     * Reads of whole or paged message lists should walk the primary key in order instead of sorting.
+     */
+    @Test
+    public void messageListsReadPrimaryKeyInOrder() throws SQLException {
+        assertPlanUses(MessageDAO.STREAM_ALL_SQL, "PRIMARY_KEY");
+        assertIndexSorted(MessageDAO.STREAM_ALL_SQL);
+        assertPlanUses(MessageDAO.PAGE_SQL, "PRIMARY_KEY");
+        assertIndexSorted(MessageDAO.PAGE_SQL);
+    }
+
+    /**
+     * Reads of a sender's messages should use the (posted_by, message_id) index in order instead of sorting.
+     */
+    @Test
+    public void senderListsUseSenderIndexInOrder() throws SQLException {
+        assertPlanUses(MessageDAO.SELECT_BY_SENDER_SQL, "IDX_MESSAGE_POSTED_BY_ID");
+        assertIndexSorted(MessageDAO.SELECT_BY_SENDER_SQL);
+        assertPlanUses(MessageDAO.STREAM_BY_SENDER_SQL, "IDX_MESSAGE_POSTED_BY_ID");
+        assertIndexSorted(MessageDAO.STREAM_BY_SENDER_SQL);
+        assertPlanUses(MessageDAO.PAGE_BY_SENDER_SQL, "IDX_MESSAGE_POSTED_BY_ID");
+        assertIndexSorted(MessageDAO.PAGE_BY_SENDER_SQL);
+        assertPlanUses(MessageDAO.SELECT_BY_SENDERS_SQL, "IDX_MESSAGE_POSTED_BY_ID");
+    }
+
+    /**
+     * Time range queries should be range scans on the time indexes, with rows coming out of the index in time order.
+     */
+    @Test
+    public void timeRangeQueriesUseTimeIndexes() throws SQLException {
+        assertPlanUses(MessageDAO.STREAM_BY_TIME_SQL, "IDX_MESSAGE_TIME");
+        // the bounds are applied in the index, not as a filter after reading all of it
+        Assert.assertTrue(explain(MessageDAO.STREAM_BY_TIME_SQL).contains("IDX_MESSAGE_TIME: TIME_POSTED_EPOCH >= ?1"));
+        assertIndexSorted(MessageDAO.STREAM_BY_TIME_SQL);
+        assertPlanUses(MessageDAO.STREAM_BY_SENDER_TIME_SQL, "IDX_MESSAGE_POSTED_BY_TIME");
+        assertIndexSorted(MessageDAO.STREAM_BY_SENDER_TIME_SQL);
+    }
+
+    /**
+     * The counts the message statistics are reconciled against should come from the indexes: per sender from a scan of the
+     * sender index rather than the table, and per time bucket from a range of the time index.
+     */
+    @Test
+    public void statisticsCountsUseIndexes() throws SQLException {
+        assertPlanUses(MessageDAO.COUNT_BY_SENDER_SQL, "IDX_MESSAGE_POSTED_BY_ID");
+        assertPlanUses(MessageDAO.COUNT_BY_TIME_SQL, "IDX_MESSAGE_TIME: TIME_POSTED_EPOCH >= ?2");
+    }
+
+    /**
+     * Account lookups by username should use the unique index on username.
+     */
+    @Test
+    public void accountLookupsUseUsernameIndex() throws SQLException {
+        Assert.assertFalse(explain(AccountDAO.USERNAME_COUNT_SQL).contains("tableScan"));
+        Assert.assertTrue(explain(AccountDAO.USERNAME_COUNT_SQL).contains("USERNAME = ?1"));
+        Assert.assertFalse(explain(AccountDAO.LOGIN_SQL).contains("tableScan"));
+        assertIndexSorted(AccountDAO.LOAD_ACCOUNTS_SQL);
+    }
+
+    private void assertPlanUses(String sql, String index) throws SQLException {
+        String plan = explain(sql);
+        Assert.assertTrue("expected " + index + " in plan:\n" + plan, plan.contains(index));
+        Assert.assertFalse("unexpected table scan in plan:\n" + plan, plan.contains("tableScan"));
+    }
+
+    private void assertIndexSorted(String sql) throws SQLException {
+        String plan = explain(sql);
+        Assert.assertTrue("expected rows to come out of the index in order:\n" + plan, plan.contains("index sorted"));
+    }
+
+    /**
+     * @return H2's plan for a query, with every parameter bound to 1
+     */
+    private String explain(String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql);
+        int parameters = statement.getParameterMetaData().getParameterCount();
+
+        for(int i = 1; i <= parameters; i++) {
+            statement.setInt(i, 1);
+        }
+
+        ResultSet plan = statement.executeQuery();
+        plan.next();
+        return plan.getString(1);
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class ResponseCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending two http requests to GET localhost:8080/messages with nothing written in between
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, with the same body, the second sent from the response cache
+     */
+    @Test
+    public void getAllMessagesTwiceIsServedFromCache() throws IOException, InterruptedException {
+        long hitsBefore = Metrics.counter("cache_responses_hits", "").sum();
+
+        HttpResponse<String> first = get("http://localhost:8080/messages");
+        HttpResponse<String> second = get("http://localhost:8080/messages");
+
+        Assert.assertEquals(200, second.statusCode());
+        Assert.assertEquals(first.body(), second.body());
+        Assert.assertEquals(hitsBefore + 1, Metrics.counter("cache_responses_hits", "").sum());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=10 before and after posting a message
+     *
+     * Expected Response:
+     *  Status Code: 200, and the second page includes the new message rather than a cached copy of the first
+     */
+    @Test
+    public void getMessagesPageAfterPostIsNotStale() throws IOException, InterruptedException {
+        get("http://localhost:8080/messages?limit=10");
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = get("http://localhost:8080/messages?limit=10");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("hello message"));
+    }
+
+    /**
+     * Sending two http requests to GET localhost:8080/accounts/1/messages that accept gzip, after posting enough messages
+     * for the list to be worth compressing
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, each a gzip-compressed body holding the account's messages
+     */
+    @Test
+    public void getMessagesFromUserGzipFromCache() throws IOException, InterruptedException {
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(1, 1, "test message 1", 1669947792));
+        StringBuilder batch = new StringBuilder("[");
+
+        for(int i = 2; i <= 40; i++) {
+            expected.add(new Message(i, 1, "batch message " + i, 1669947792));
+            batch.append((i > 2) ? "," : "").append("{\"posted_by\":1,\"message_text\":\"batch message ").append(i)
+                    .append("\",\"time_posted_epoch\":1669947792}");
+        }
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+
+        for(int i = 0; i < 2; i++) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                    .header("Accept-Encoding", "gzip")
+                    .build();
+            HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+
+            try(GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+                Assert.assertEquals(expected, objectMapper.readValue(body, new TypeReference<List<Message>>(){}));
+            }
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages, then to POST localhost:8080/messages while another
+     * GET localhost:8080/accounts/1/messages runs after the insert commits but before the sender's timeline shows it, and
+     * then to GET localhost:8080/accounts/1/messages once more
+     *
+     * Expected Response:
+     *  Status Code: 200, and the last list includes the new message rather than a cached copy of what the reader in
+     *  between saw
+     */
+    @Test
+    public void getMessagesFromUserDuringPostIsNotCachedStale() throws IOException, InterruptedException {
+        app.stop();
+        List<HttpResponse<String>> readsDuringInsert = new ArrayList<>();
+        MessageDAO messageDAO = new MessageDAO() {
+            @Override
+            public Message insertMessage(Message message) {
+                Message inserted = super.insertMessage(message);
+
+                try {
+                    readsDuringInsert.add(get("http://localhost:8080/accounts/1/messages"));
+                } catch(IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                return inserted;
+            }
+        };
+        AccountDAO accountDAO = new AccountDAO();
+        socialMediaController = new SocialMediaController(new MessageService(messageDAO, accountDAO), new AccountService(accountDAO));
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        // loads the sender's timeline, which the read during the insert is then answered from
+        get("http://localhost:8080/accounts/1/messages");
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                        "\"message_text\": \"racing message\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> posted = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, posted.statusCode());
+        Assert.assertEquals(1, readsDuringInsert.size());
+
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/messages");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("racing message"));
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
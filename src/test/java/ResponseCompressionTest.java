@@ -0,0 +1,122 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class ResponseCompressionTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, post 40 more messages, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        StringBuilder batch = new StringBuilder("[");
+
+        for(int i = 0; i < 40; i++) {
+            batch.append((i > 0) ? "," : "").append("{\"posted_by\":1,\"message_text\":\"batch message ").append(i)
+                    .append("\",\"time_posted_epoch\":1669947792}");
+        }
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 that accepts gzip
+     *
+     * Expected Response:
+     *  Status Code: 200, and the single message is sent uncompressed since it is below the size threshold
+     */
+    @Test
+    public void getMessageByIdIsNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(request("http://localhost:8080/messages/1", "gzip"),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=41 that accepts gzip
+     *
+     * Expected Response:
+     *  Status Code: 200, a gzip-compressed page of 41 messages, and the endpoint's compression metrics updated
+     */
+    @Test
+    public void getMessagesPageIsCompressed() throws IOException, InterruptedException {
+        long bytesInBefore = Metrics.counter("compression_messages_in_bytes", "").sum();
+
+        HttpResponse<byte[]> response = webClient.send(request("http://localhost:8080/messages?limit=41", "gzip, deflate"),
+                HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+
+        try(GZIPInputStream body = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            Assert.assertEquals(41, objectMapper.readValue(body, MessagePage.class).getMessages().size());
+        }
+
+        Assert.assertTrue(Metrics.counter("compression_messages_in_bytes", "").sum() > bytesInBefore);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages that refuses gzip with a q-value of 0
+     *
+     * Expected Response:
+     *  Status Code: 200, and the full list uncompressed
+     */
+    @Test
+    public void getAllMessagesGzipRefusedIsNotCompressed() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(request("http://localhost:8080/messages", "gzip;q=0, identity"),
+                HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        Assert.assertEquals(41, objectMapper.readValue(response.body(), Message[].class).length);
+    }
+
+    private HttpRequest request(String url, String acceptEncoding) {
+        return HttpRequest.newBuilder().uri(URI.create(url)).header("Accept-Encoding", acceptEncoding).build();
+    }
+}
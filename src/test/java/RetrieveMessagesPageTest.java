@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addMessages();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2 and then following next_cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the first two messages with a cursor, then the last message with no cursor
+     */
+    @Test
+    public void getMessagesPageFollowsCursor() throws IOException, InterruptedException {
+        MessagePage firstPage = getPage("http://localhost:8080/messages?limit=2");
+
+        List<Message> expectedFirst = new ArrayList<>();
+        expectedFirst.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedFirst.add(new Message(2, 1, "test message 2", 1669947793));
+        Assert.assertEquals(new MessagePage(expectedFirst, 2), firstPage);
+
+        MessagePage secondPage = getPage("http://localhost:8080/messages?limit=2&after=" + firstPage.getNext_cursor());
+
+        List<Message> expectedSecond = new ArrayList<>();
+        expectedSecond.add(new Message(3, 1, "test message 3", 1669947794));
+        Assert.assertEquals(new MessagePage(expectedSecond, null), secondPage);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?after=1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the sender's messages after message 1, with no cursor
+     */
+    @Test
+    public void getMessagesFromSenderPageAfterCursor() throws IOException, InterruptedException {
+        MessagePage page = getPage("http://localhost:8080/accounts/1/messages?after=1");
+
+        Assert.assertEquals(2, page.getMessages().size());
+        Assert.assertEquals(2, page.getMessages().get(0).getMessage_id());
+        Assert.assertNull(page.getNext_cursor());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a limit of 0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesPageInvalidLimit() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=0"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private MessagePage getPage(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private void addMessages() {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement("insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            for(int i = 2; i <= 3; i++) {
+                ps.setString(1, "test message " + i);
+                ps.setLong(2, 1669947791L + i);
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
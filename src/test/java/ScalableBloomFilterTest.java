@@ -0,0 +1,49 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ScalableBloomFilter;
+
+public class ScalableBloomFilterTest {
+
+    /**
+     * Every added string should be reported as maybe present, even after the filter has grown past its first stage.
+     */
+    @Test
+    public void noFalseNegativesAcrossStages() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+        for(int i = 0; i < 5_000; i++) {
+            filter.add("user" + i);
+        }
+
+        Assert.assertTrue(filter.getStageCount() > 1);
+        for(int i = 0; i < 5_000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    /**
+     * The measured false-positive rate for strings never added should stay near the configured target, and so should
+     * the filter's own estimate.
+     */
+    @Test
+    public void falsePositiveRateStaysNearTarget() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+
+        for(int i = 0; i < 20_000; i++) {
+            filter.add("user" + i);
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for(int i = 0; i < probes; i++) {
+            if(filter.mightContain("stranger" + i)) {
+                falsePositives++;
+            }
+        }
+
+        double measured = (double) falsePositives / probes;
+        Assert.assertTrue("measured false-positive rate " + measured, measured < 0.02);
+        Assert.assertTrue("estimated false-positive rate " + filter.getExpectedFalsePositiveRate(), filter.getExpectedFalsePositiveRate() < 0.02);
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=hello and ?q=HELLO%20world after posting three
+     * messages
+     *
+     * Expected Response:
+     *  Status Code: 200, every message containing all of the words, ignoring case and punctuation, newest first
+     */
+    @Test
+    public void searchMatchesAllWordsNewestFirst() throws IOException, InterruptedException {
+        postMessage("Hello, world!");
+        postMessage("hello there");
+        postMessage("goodbye world");
+
+        MessagePage hello = search("hello");
+        Assert.assertEquals(List.of(new Message(3, 1, "hello there", 1669947792), new Message(2, 1, "Hello, world!", 1669947792)),
+                hello.getMessages());
+        Assert.assertNull(hello.getNext_cursor());
+
+        Assert.assertEquals(List.of(2), ids(search("HELLO%20world")));
+        Assert.assertEquals(List.of(), ids(search("hello%20goodbye")));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=need*&limit=40, following next_cursor as "before",
+     * after posting 300 messages, every third of which contains a word starting with "need"
+     *
+     * Expected Response:
+     *  Status Code: 200, pages that together hold each of the 100 matches once, in descending message_id order
+     */
+    @Test
+    public void prefixSearchPagesThroughMatches() throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+
+        for(int i = 0; i < 300; i++) {
+            String text = (i % 3 == 0) ? "a needle" + i + " in the stack" : "just hay " + i;
+            batch.append((i > 0) ? "," : "").append("{\"posted_by\":1,\"message_text\":\"").append(text)
+                    .append("\",\"time_posted_epoch\":1669947792}");
+        }
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        List<Integer> found = new ArrayList<>();
+        Integer before = 0;
+
+        while(before != null) {
+            MessagePage page = search("need*&limit=40&before=" + before);
+            Assert.assertTrue(page.getMessages().size() <= 40);
+            found.addAll(ids(page));
+            before = page.getNext_cursor();
+        }
+
+        List<Integer> expected = new ArrayList<>();
+
+        for(int i = 297; i >= 0; i -= 3) {
+            // message 1 is the test message, so the batch starts at message_id 2
+            expected.add(i + 2);
+        }
+
+        Assert.assertEquals(expected, found);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search after updating and then deleting message 1
+     *
+     * Expected Response:
+     *  Status Code: 200, matching the new text and not the old after the update, and nothing after the delete
+     */
+    @Test
+    public void searchFollowsUpdatesAndDeletes() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(1), ids(search("test")));
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"brand new words\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(), ids(search("test")));
+        Assert.assertEquals(List.of(1), ids(search("brand%20wor*")));
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).DELETE().build();
+        Assert.assertEquals(200, webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(), ids(search("brand")));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with no query, a query with no words, and a
+     * malformed cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutWordsIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search?q=%20!%20").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search?q=test&before=abc").statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with a prefix that matches more than 1000 words
+     * (socialmedia.search.maxPrefixTerms), and with a longer prefix that matches fewer
+     *
+     * Expected Response:
+     *  Status Code: 400 for the broad prefix, and 200 with the matches for the longer one
+     */
+    @Test
+    public void tooBroadPrefixIsRejected() throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+
+        for(int i = 0; i <= 1000; i++) {
+            batch.append((i > 0) ? "," : "").append("{\"posted_by\":1,\"message_text\":\"word").append(i)
+                    .append("\",\"time_posted_epoch\":1669947792}");
+        }
+
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search?q=word*").statusCode());
+        // word1, word10 to word19, word100 to word199 and word1000: 112 matches
+        MessagePage page = search("word1*&limit=100");
+        Assert.assertEquals(100, page.getMessages().size());
+        Assert.assertNotNull(page.getNext_cursor());
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"" + text + "\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private MessagePage search(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages/search?q=" + query);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static List<Integer> ids(MessagePage page) {
+        List<Integer> ids = new ArrayList<>();
+
+        for(Message message : page.getMessages()) {
+            ids.add(message.getMessage_id());
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import DAO.AccountDAO;
+import DAO.MemoryAccountStore;
+import DAO.MemoryMessageStore;
+import DAO.MessageDAO;
+import DAO.MessageStore;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import Util.SchemaMigrator;
+
+/**
+ * Compares the two storage engines on the same workload: inserts messages from a thousand accounts in batches, then
+ * times lookups by message_id, pages of all messages and of one sender's messages, and streaming every message,
+ * reporting operations per second for each engine, the time the in-memory engine takes to load from the database, and
+ * the memory it uses. It is not a test; run it with
+ *
+ *     mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *     java -cp target/classes:target/test-classes:$(cat target/cp.txt) StorageEngineBenchmark [messages]
+ */
+public class StorageEngineBenchmark {
+    private static final int ACCOUNTS = 1000;
+    private static final int BATCH = 500;
+    private static final int LOOKUPS = 100_000;
+    private static final int PAGES = 10_000;
+    private static final int PAGE_SIZE = 50;
+
+    private static Object sink;
+
+    public static void main(String[] args) throws IOException {
+        int messages = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+
+        ConnectionUtil.resetTestDatabase();
+        SchemaMigrator.migrate();
+        AccountDAO accountDAO = new AccountDAO();
+
+        for(int i = 2; i <= ACCOUNTS; i++) {
+            accountDAO.registerAccount(new Account("benchmark" + i, "password"));
+        }
+
+        MessageStore memory = new MemoryMessageStore(new MemoryAccountStore());
+        MessageStore h2 = new MessageDAO();
+
+        for(int round = 0; round < 2; round++) {
+            // the first round warms up the JIT on a tenth of the messages
+            int count = (round == 0) ? messages / 10 : messages;
+
+            if(round == 1) {
+                ConnectionUtil.resetTestDatabase();
+                SchemaMigrator.migrate();
+
+                for(int i = 2; i <= ACCOUNTS; i++) {
+                    accountDAO.registerAccount(new Account("benchmark" + i, "password"));
+                }
+
+                memory = new MemoryMessageStore(new MemoryAccountStore());
+                System.out.printf("%-24s %14s %14s%n", "operations per second", "h2", "memory");
+            }
+
+            double[][] results = new double[2][];
+            MessageStore[] stores = { h2, memory };
+
+            for(int s = 0; s < stores.length; s++) {
+                results[s] = run(stores[s], count, new Random(42));
+            }
+
+            if(round == 1) {
+                String[] names = { "insert (batches of " + BATCH + ")", "get by id", "page of all", "page of a sender", "stream all" };
+
+                for(int i = 0; i < names.length; i++) {
+                    System.out.printf("%-24s %,14.0f %,14.0f%n", names[i], results[0][i], results[1][i]);
+                }
+            }
+        }
+
+        // the in-memory engine writes its inserts through, so the database holds both engines' messages
+        long start = System.nanoTime();
+        sink = new MemoryMessageStore(new MemoryAccountStore());
+        System.out.printf("loading %,d messages into memory took %d ms%n", 2 * messages + 1, (System.nanoTime() - start) / 1_000_000);
+
+        for(String line : Metrics.render().split("\n")) {
+            if(line.startsWith("memory_store_")) {
+                System.out.println(line);
+            }
+        }
+    }
+
+    /**
+     * @return operations per second for each of the operations, in the order they are printed
+     */
+    private static double[] run(MessageStore store, int count, Random random) throws IOException {
+        double[] results = new double[5];
+        int firstId = store.getMessagesAfter(0, 1).get(0).getMessage_id();
+
+        long start = System.nanoTime();
+
+        for(int i = 0; i < count; i += BATCH) {
+            List<Message> batch = new ArrayList<>(BATCH);
+
+            for(int j = i; j < Math.min(count, i + BATCH); j++) {
+                batch.add(new Message(1 + random.nextInt(ACCOUNTS), "benchmark message " + j, 1669947793L + j));
+            }
+
+            sink = store.insertMessages(batch);
+        }
+
+        results[0] = perSecond(count, start);
+        int lastId = firstId + count;
+
+        start = System.nanoTime();
+
+        for(int i = 0; i < LOOKUPS; i++) {
+            sink = store.getMessageById(firstId + random.nextInt(count + 1));
+        }
+
+        results[1] = perSecond(LOOKUPS, start);
+        start = System.nanoTime();
+
+        for(int i = 0; i < PAGES; i++) {
+            sink = store.getMessagesAfter(firstId + random.nextInt(lastId - firstId), PAGE_SIZE);
+        }
+
+        results[2] = perSecond(PAGES, start);
+        start = System.nanoTime();
+
+        for(int i = 0; i < PAGES; i++) {
+            sink = store.getMessagesBySenderIdAfter(1 + random.nextInt(ACCOUNTS), firstId + random.nextInt(lastId - firstId), PAGE_SIZE);
+        }
+
+        results[3] = perSecond(PAGES, start);
+        start = System.nanoTime();
+        long[] streamed = new long[1];
+
+        for(int i = 0; i < 5; i++) {
+            store.streamAllMessages((message_id, posted_by, message_text, time_posted_epoch) -> streamed[0] += message_id);
+        }
+
+        results[4] = perSecond(5, start);
+        sink = streamed;
+        return results;
+    }
+
+    private static double perSecond(int operations, long start) {
+        return operations / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages asking for newline-delimited JSON
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one JSON message object per line
+     */
+    @Test
+    public void getAllMessagesAsNdjson() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type").orElse(""));
+
+        String[] lines = response.body().split("\n");
+        Assert.assertEquals(1, lines.length);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(lines[0], Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages asking for newline-delimited JSON, after posting a second
+     * message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one JSON message object per line, each line starting with the object itself
+     */
+    @Test
+    public void getAllMessagesAsNdjsonOnePerLine() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"test message 2\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Accept", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().endsWith("}\n"));
+
+        String[] lines = response.body().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[1].startsWith("{"));
+        Assert.assertEquals(new Message(2, 1, "test message 2", 1669947793), objectMapper.readValue(lines[1], Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/messages asking for newline-delimited JSON, for an
+     * account with no messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: empty
+     */
+    @Test
+    public void getMessagesFromSenderAsNdjsonNoMessages() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/messages"))
+                .header("Accept", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+
+    /**
+     * Streaming more messages than fit in one page should hand over every message once, in order, across the pages, with
+     * no connection held while the rows are handed over, including among messages posted at the same time that span a
+     * page boundary.
+     */
+    @Test
+    public void streamsSpanPagesWithoutHoldingAConnection() throws IOException {
+        MessageDAO messageDAO = new MessageDAO();
+        List<Message> batch = new ArrayList<>();
+
+        for(int i = 0; i < 2 * MessageDAO.STREAM_PAGE_SIZE + 1; i++) {
+            batch.add(new Message(1, "paged message " + i, 1669947793L + i / 3));
+        }
+
+        messageDAO.insertMessages(batch);
+        ConnectionPool pool = ConnectionUtil.getSubPool("stream_test", 1);
+        ConnectionUtil.bindPool(pool);
+
+        try {
+            List<Integer> all = new ArrayList<>();
+            Assert.assertTrue(messageDAO.streamAllMessages((message_id, posted_by, message_text, time_posted_epoch) -> {
+                Assert.assertEquals(0, pool.getActiveCount());
+                all.add(message_id);
+            }));
+            Assert.assertEquals(2 * MessageDAO.STREAM_PAGE_SIZE + 2, all.size());
+
+            for(int i = 0; i < all.size(); i++) {
+                Assert.assertEquals(i + 1, (int) all.get(i));
+            }
+
+            List<Integer> bySender = new ArrayList<>();
+            messageDAO.streamMessagesBySenderId(1, (message_id, posted_by, message_text, time_posted_epoch) -> bySender.add(message_id));
+            Assert.assertEquals(all, bySender);
+
+            List<Integer> byTime = new ArrayList<>();
+            messageDAO.streamMessagesPostedBetween(1669947793L, Long.MAX_VALUE, (message_id, posted_by, message_text, time_posted_epoch) ->
+                    byTime.add(message_id));
+            Assert.assertEquals(all.subList(1, all.size()), byTime);
+
+            List<Integer> bySenderAndTime = new ArrayList<>();
+            messageDAO.streamMessagesBySenderIdPostedBetween(1, 0, Long.MAX_VALUE, (message_id, posted_by, message_text, time_posted_epoch) ->
+                    bySenderAndTime.add(message_id));
+            Assert.assertEquals(all, bySenderAndTime);
+        } finally {
+            ConnectionUtil.bindPool(null);
+        }
+    }
+}
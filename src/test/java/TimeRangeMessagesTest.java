@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimeRangeMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, register a second account, post messages at
+     * several times from both accounts, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"testuser2\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+
+        // message 1 is the test message, posted at 1669947792
+        postMessage(1, "late", 3000);
+        postMessage(2, "early", 1000);
+        postMessage(1, "middle", 2000);
+        postMessage(2, "also middle", 2000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=1000&until=3000
+     *
+     * Expected Response:
+     *  Status Code: 200, and the messages posted from 1000 up to but not including 3000, in time order
+     */
+    @Test
+    public void getMessagesInTimeRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?since=1000&until=3000");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertArrayEquals(new Message[] {
+                new Message(3, 2, "early", 1000), new Message(4, 1, "middle", 2000), new Message(5, 2, "also middle", 2000) },
+                objectMapper.readValue(response.body(), Message[].class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=2000&posted_by=1
+     *
+     * Expected Response:
+     *  Status Code: 200, and sender 1's messages from 2000 on, in time order
+     */
+    @Test
+    public void getSenderMessagesSince() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?since=2000&posted_by=1");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertArrayEquals(new Message[] {
+                new Message(4, 1, "middle", 2000), new Message(2, 1, "late", 3000), new Message(1, 1, "test message 1", 1669947792) },
+                objectMapper.readValue(response.body(), Message[].class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?until=2000, then again after another early post
+     *
+     * Expected Response:
+     *  Status Code: 200 with the early message, and then the new post is included too, not a stale cached copy
+     */
+    @Test
+    public void timeRangeFollowsNewPosts() throws IOException, InterruptedException {
+        Assert.assertEquals(1, objectMapper.readValue(get("http://localhost:8080/messages?until=2000").body(), Message[].class).length);
+
+        postMessage(1, "even earlier", 500);
+
+        Message[] messages = objectMapper.readValue(get("http://localhost:8080/messages?until=2000").body(), Message[].class);
+        Assert.assertEquals(2, messages.length);
+        Assert.assertEquals("even earlier", messages[0].getMessage_text());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with since after until, a malformed bound, or a page
+     * parameter alongside a range
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidTimeRangeIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=3000&until=1000").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=yesterday").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=1000&limit=10").statusCode());
+    }
+
+    private void postMessage(int posted_by, String text, long time) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":" + posted_by + ",\"message_text\":\"" + text
+                        + "\",\"time_posted_epoch\":" + time + "}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
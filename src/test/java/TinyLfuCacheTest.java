@@ -0,0 +1,74 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.TinyLfuCache;
+
+public class TinyLfuCacheTest {
+
+    /**
+     * Keys read often should stay cached through a long scan of keys read only once, which would flush a plain LRU.
+     */
+    @Test
+    public void hotKeysSurviveScan() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>("test_scan", 100, Long.MAX_VALUE, value -> 1);
+
+        for(int round = 0; round < 20; round++) {
+            for(int key = 0; key < 50; key++) {
+                cache.get(key, String::valueOf);
+            }
+        }
+
+        for(int key = 1_000; key < 11_000; key++) {
+            cache.get(key, String::valueOf);
+        }
+
+        int hotKeysCached = 0;
+        for(int key = 0; key < 50; key++) {
+            if(cache.getIfPresent(key) != null) {
+                hotKeysCached++;
+            }
+        }
+
+        Assert.assertTrue("hot keys still cached: " + hotKeysCached, hotKeysCached >= 45);
+        Assert.assertTrue(cache.size() <= 100);
+    }
+
+    /**
+     * The total weight should never exceed the byte bound, and a value heavier than the bound should not be cached.
+     */
+    @Test
+    public void weightStaysWithinBound() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>("test_weight", 1_000, 1_000, String::length);
+
+        for(int key = 0; key < 500; key++) {
+            cache.put(key, "x".repeat(key % 40 + 1));
+            Assert.assertTrue(cache.weight() <= 1_000);
+        }
+
+        cache.put(-1, "x".repeat(2_000));
+        Assert.assertNull(cache.getIfPresent(-1));
+    }
+
+    /**
+     * A load that overlaps an invalidation may have read the value from before the change, so it should not be cached.
+     */
+    @Test
+    public void loadRacingInvalidationIsNotCached() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>("test_race", 100, Long.MAX_VALUE, value -> 1);
+        AtomicInteger loads = new AtomicInteger();
+
+        String loaded = cache.get(1, key -> {
+            loads.incrementAndGet();
+            cache.invalidate(key);
+            return "old";
+        });
+
+        Assert.assertEquals("old", loaded);
+        Assert.assertNull(cache.getIfPresent(1));
+        Assert.assertEquals("new", cache.get(1, key -> "new"));
+        Assert.assertEquals("new", cache.get(1, key -> "newer"));
+        Assert.assertEquals(1, loads.get());
+    }
+}
@@ -139,4 +139,28 @@ public class UpdateMessageTextTest {
         Assert.assertEquals(400, status);        
         Assert.assertTrue(response.body().toString().isEmpty());
     }
+
+    /**
+     * Reading a message caches it, so a read after an update should still see the new text.
+     */
+    @Test
+    public void updateMessageVisibleAfterCachedRead() throws IOException, InterruptedException {
+        HttpRequest getMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        HttpResponse<String> firstRead = webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, firstRead.statusCode());
+
+        HttpRequest patchMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> secondRead = webClient.send(getMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Message actualResult = objectMapper.readValue(secondRead.body(), Message.class);
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792), actualResult);
+    }
 }
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.VirtualThreads;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Load test for the virtual-thread request mode. Starts the app on port 8080, then has many clients at once post
+ * messages and read pages of GET /messages (every post changes the list, so most reads go to the database) for a fixed
+ * time, and reports throughput and latency percentiles. It is not a test; run it once in each mode on Java 21 and
+ * compare:
+ *
+ *     mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *     java -cp target/classes:target/test-classes:$(cat target/cp.txt) VirtualThreadLoadBenchmark [clients] [seconds]
+ *     java -Dsocialmedia.server.virtualThreads=true -cp ... VirtualThreadLoadBenchmark [clients] [seconds]
+ */
+public class VirtualThreadLoadBenchmark {
+    private static final int WARMUP_SECONDS = 5;
+
+    private static final AtomicInteger errors = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI().start(8080);
+        HttpClient webClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        try {
+            run(webClient, clients, WARMUP_SECONDS);
+            long[] latencies = run(webClient, clients, seconds);
+
+            String mode = (SocialMediaController.VIRTUAL_THREADS && VirtualThreads.areSupported()) ? "virtual" : "platform";
+            System.out.printf("%s threads, %d clients: %8.0f requests/s   p50 %6.2f ms   p99 %7.2f ms   errors %d%n",
+                    mode, clients, (double) latencies.length / seconds, percentile(latencies, 0.50) / 1e6,
+                    percentile(latencies, 0.99) / 1e6, errors.get());
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * @return the latency in nanoseconds of every request that completed within the time, sorted
+     */
+    private static long[] run(HttpClient webClient, int clients, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long[][] perClient = new long[clients][];
+        Thread[] threads = new Thread[clients];
+        errors.set(0);
+
+        for(int i = 0; i < clients; i++) {
+            int client = i;
+            threads[i] = new Thread(() -> perClient[client] = client(webClient, deadline));
+            threads[i].start();
+        }
+
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        long[] latencies = Arrays.stream(perClient).flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static long[] client(HttpClient webClient, long deadline) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while(System.nanoTime() < deadline) {
+            HttpRequest request = random.nextBoolean()
+                    ? HttpRequest.newBuilder()
+                            .uri(URI.create("http://localhost:8080/messages"))
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"load test message\",\"time_posted_epoch\":1669947792}"))
+                            .header("Content-Type", "application/json")
+                            .build()
+                    : HttpRequest.newBuilder()
+                            .uri(URI.create("http://localhost:8080/messages?limit=20&after=" + random.nextInt(1000)))
+                            .build();
+
+            long start = System.nanoTime();
+
+            try {
+                if(webClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                    errors.incrementAndGet();
+                }
+            } catch(IOException | InterruptedException e) {
+                errors.incrementAndGet();
+                continue;
+            }
+
+            if(count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+
+            latencies[count++] = System.nanoTime() - start;
+        }
+
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
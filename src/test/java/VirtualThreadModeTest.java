@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.jetty.util.VirtualThreads;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.MessageRowHandler;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+import io.javalin.Javalin;
+
+public class VirtualThreadModeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    List<Boolean> readsOnVirtualThreads = new CopyOnWriteArrayList<>();
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a message store that records whether each
+     * full read of the messages runs on a virtual thread, and create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        SchemaMigrator.migrate();
+        MessageDAO messageDAO = new MessageDAO() {
+            @Override
+            public boolean streamAllMessages(MessageRowHandler handler) throws IOException {
+                readsOnVirtualThreads.add(VirtualThreads.isVirtualThread());
+                return super.streamAllMessages(handler);
+            }
+        };
+        AccountDAO accountDAO = new AccountDAO();
+        socialMediaController = new SocialMediaController(new MessageService(messageDAO, accountDAO), new AccountService(accountDAO));
+        // the service reads every message once to build its search index
+        readsOnVirtualThreads.clear();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages, which runs on the read bulkhead unless bulkheads are disabled
+     *
+     * Expected Response:
+     *  Status Code: 200, with the messages read on a virtual thread with -Dsocialmedia.server.virtualThreads=true on a JVM
+     *  with virtual threads (mvn -Pvirtual-threads test on Java 21), and on a platform thread otherwise
+     */
+    @Test
+    public void getAllMessagesRunsOnVirtualThreadsOnlyInVirtualThreadMode() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages")).build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("test message 1"));
+
+        boolean expected = SocialMediaController.VIRTUAL_THREADS && VirtualThreads.areSupported();
+        Assert.assertEquals(List.of(expected), readsOnVirtualThreads);
+    }
+}
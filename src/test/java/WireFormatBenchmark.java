@@ -0,0 +1,69 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import Model.Message;
+import Util.WireFormat;
+
+/**
+ * Compares JSON and CBOR for the body of GET /messages: encoded size, size after gzip, and the time to encode and to
+ * decode a list of messages. It is not a test; run it with
+ *
+ *     mvn -B -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *     java -cp target/classes:target/test-classes:$(cat target/cp.txt) WireFormatBenchmark
+ */
+public class WireFormatBenchmark {
+    private static final int MESSAGES = 1_000;
+    private static final int WARMUP = 2_000;
+    private static final int MEASURED = 5_000;
+
+    private static final TypeReference<List<Message>> MESSAGE_LIST = new TypeReference<List<Message>>(){};
+
+    private static Object sink;
+
+    public static void main(String[] args) throws IOException {
+        List<Message> messages = new ArrayList<>(MESSAGES);
+
+        for(int i = 1; i <= MESSAGES; i++) {
+            messages.add(new Message(i, i % 50 + 1, "message number " + i + " from the load generator, with some ordinary text", 1669947792L + i));
+        }
+
+        for(WireFormat format : WireFormat.values()) {
+            byte[] body = format.write(messages);
+
+            for(int i = 0; i < WARMUP; i++) {
+                sink = format.write(messages);
+                sink = format.getMapper().readValue(body, MESSAGE_LIST);
+            }
+
+            long start = System.nanoTime();
+            for(int i = 0; i < MEASURED; i++) {
+                sink = format.write(messages);
+            }
+            double encodeMicros = (System.nanoTime() - start) / 1000.0 / MEASURED;
+
+            start = System.nanoTime();
+            for(int i = 0; i < MEASURED; i++) {
+                sink = format.getMapper().readValue(body, MESSAGE_LIST);
+            }
+            double decodeMicros = (System.nanoTime() - start) / 1000.0 / MEASURED;
+
+            System.out.printf("%-5s %d messages: %7d B, %6d B gzipped, encode %7.1f us, decode %7.1f us%n",
+                    format, MESSAGES, body.length, gzip(body).length, encodeMicros, decodeMicros);
+        }
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+
+        return out.toByteArray();
+    }
+}